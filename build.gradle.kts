@@ -2,6 +2,7 @@ plugins {
     id("java")
     id("org.springframework.boot") version("3.0.5")
     id("io.spring.dependency-management")version("1.1.0")
+    id("me.champeau.jmh") version("0.6.8")
 }
 
 group = "com.epam"
@@ -11,9 +12,26 @@ repositories {
     mavenCentral()
 }
 
+// Drives the application against a local Elasticsearch stub, see LoadTest
+sourceSets {
+    create("loadTest") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output
+    }
+}
+
+configurations["loadTestImplementation"].extendsFrom(configurations.implementation.get())
+configurations["loadTestRuntimeOnly"].extendsFrom(configurations.runtimeOnly.get())
+
 dependencies {
     implementation("org.springframework.boot:spring-boot-starter-web")
     implementation("org.springframework.boot:spring-boot-starter-data-elasticsearch")
+    implementation("org.springframework.boot:spring-boot-starter-actuator")
+    runtimeOnly("io.micrometer:micrometer-registry-prometheus")
+    implementation("org.elasticsearch.client:elasticsearch-rest-client-sniffer")
+    implementation("com.github.ben-manes.caffeine:caffeine")
+    implementation("org.roaringbitmap:RoaringBitmap:0.9.44")
+    implementation("com.fasterxml.jackson.dataformat:jackson-dataformat-smile")
 //    implementation("io.springfox:springfox-swagger2:3.0.0")
     implementation("org.springdoc:springdoc-openapi-starter-webmvc-ui:2.0.4")
     implementation("org.springdoc:springdoc-openapi-starter-webmvc-ui:2.0.4")
@@ -28,8 +46,27 @@ dependencies {
     testImplementation("org.springframework.boot:spring-boot-starter-test")
     testImplementation("org.junit.jupiter:junit-jupiter-api:5.9.2")
     testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine:5.9.2")
+
+    "loadTestImplementation"("org.hdrhistogram:HdrHistogram:2.1.12")
 }
 
 tasks.getByName<Test>("test") {
     useJUnitPlatform()
 }
+
+tasks.register<JavaExec>("loadTest") {
+    description = "Runs the load test, options go in --args, e.g. --args=\"--rate=1000 --duration=60s\""
+    group = "verification"
+    classpath = sourceSets["loadTest"].runtimeClasspath
+    mainClass.set("com.epam.elasticsearch.loadtest.LoadTest")
+    jvmArgs("-Xms1g", "-Xmx1g")
+}
+
+jmh {
+    jmhVersion.set("1.36")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    profilers.add("gc")
+    resultFormat.set("JSON")
+}
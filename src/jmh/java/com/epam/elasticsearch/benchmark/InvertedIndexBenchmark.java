@@ -0,0 +1,88 @@
+package com.epam.elasticsearch.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.epam.elasticsearch.dto.Address;
+import com.epam.elasticsearch.dto.Employee;
+import com.epam.elasticsearch.service.EmployeeInvertedIndex;
+
+/**
+ * The local replica answering the frequent skills, address.country and verified search,
+ * with and without a salary range, and the cost of applying a write.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InvertedIndexBenchmark {
+
+    private static final List<String> SKILLS = List.of("java", "go", "rust", "sql", "kotlin", "python", "scala", "c++");
+
+    private static final List<String> COUNTRIES = List.of("Poland", "Spain", "Germany", "Hungary", "Belarus", "Ukraine");
+
+    private static final Map<String, List<String>> TERMS = Map.of(
+            "skills", List.of("java", "go"),
+            "address.country", List.of("Poland"),
+            "verified", List.of("true"));
+
+    private static final Map<String, Map<String, String>> SALARY = Map.of("salary", Map.of("gte", "3000", "lt", "6000"));
+
+    @Param({"10000", "100000"})
+    private int employees;
+
+    private EmployeeInvertedIndex index;
+
+    private Random random;
+
+    private long seqNo;
+
+    @Setup
+    public void setUp() {
+        random = new Random(42);
+        index = new EmployeeInvertedIndex();
+        for (seqNo = 0; seqNo < employees; seqNo++) {
+            index.index(String.valueOf(seqNo), employee(), seqNo, 1);
+        }
+        index.compact();
+    }
+
+    private Employee employee() {
+        return new Employee("name", null,
+                new Address(COUNTRIES.get(random.nextInt(COUNTRIES.size())), "town"),
+                null,
+                List.of(SKILLS.get(random.nextInt(SKILLS.size())), SKILLS.get(random.nextInt(SKILLS.size()))),
+                random.nextInt(30), null, null, random.nextBoolean(), 1000 + random.nextInt(9000));
+    }
+
+    @Benchmark
+    public List<Employee> terms() {
+        return index.search(TERMS, Map.of(), 0, 10);
+    }
+
+    @Benchmark
+    public List<Employee> termsAndRange() {
+        return index.search(TERMS, SALARY, 0, 10);
+    }
+
+    @Benchmark
+    public List<Employee> termsAndRangeLargePage() {
+        return index.search(TERMS, SALARY, 0, 1000);
+    }
+
+    @Benchmark
+    public void write() {
+        index.index(String.valueOf(random.nextInt(employees)), employee(), seqNo++, 1);
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.epam.elasticsearch.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.epam.elasticsearch.dto.AggregationBucket;
+import com.epam.elasticsearch.dto.Employee;
+import com.epam.elasticsearch.dto.EmployeeSummary;
+import com.epam.elasticsearch.service.ElasticsearchMetrics;
+import com.epam.elasticsearch.service.EmployeeResponseDecoder;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResponseDecodingBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    private int hits;
+
+    private byte[] response;
+
+    private byte[] aggregationResponse;
+
+    private ObjectMapper mapper;
+
+    private EmployeeResponseDecoder decoder;
+
+    @Setup
+    public void setUp() {
+        response = SearchResponseFixtures.searchResponse(hits);
+        aggregationResponse = SearchResponseFixtures.aggregationResponse();
+        mapper = new ObjectMapper();
+        decoder = new EmployeeResponseDecoder(mapper, new ElasticsearchMetrics(new SimpleMeterRegistry()));
+    }
+
+    @Benchmark
+    public List<Employee> treeDecoding() throws IOException {
+        // The String + readTree + findValues path EmployeeServiceImpl used before the streaming decoder
+        String responseBody = new String(response, StandardCharsets.UTF_8);
+        List<JsonNode> nodes = mapper.readTree(responseBody)
+                .findValue("hits")
+                .findPath("hits")
+                .findValues("_source");
+
+        return nodes.stream()
+                .map(node -> {
+                    ObjectReader reader = mapper.readerFor(new TypeReference<Employee>() {
+                    });
+                    try {
+                        return reader.<Employee>readValue(node);
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                })
+                .toList();
+    }
+
+    @Benchmark
+    public String aggregationTreeDecoding() throws IOException {
+        // The readTree + findValues + toString path aggregate returned before the typed buckets
+        return mapper.readTree(new String(aggregationResponse, StandardCharsets.UTF_8))
+                .findValues("buckets")
+                .toString();
+    }
+
+    @Benchmark
+    public List<AggregationBucket> aggregationStreamingDecoding() throws IOException {
+        return decoder.decodeAggregation(new ByteArrayInputStream(aggregationResponse));
+    }
+
+    @Benchmark
+    public List<Employee> streamingDecoding() throws IOException {
+        return decoder.decodeSearch(new ByteArrayInputStream(response))
+                .employees();
+    }
+
+    @Benchmark
+    public List<EmployeeSummary> summaryDecoding() throws IOException {
+        // Same unfiltered response, only name, email and address.town are bound
+        return decoder.decodeSummaries(new ByteArrayInputStream(response));
+    }
+
+}
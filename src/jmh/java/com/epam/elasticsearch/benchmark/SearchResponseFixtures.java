@@ -0,0 +1,59 @@
+package com.epam.elasticsearch.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Responses recorded from the employees index. Larger pages repeat the recorded hits
+ * with fresh ids so every size shares the same document shape.
+ */
+public final class SearchResponseFixtures {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private SearchResponseFixtures() {
+    }
+
+    public static byte[] searchResponse(int hits) {
+        ObjectNode response = (ObjectNode) load("search-response.json");
+        ObjectNode hitsNode = (ObjectNode) response.get("hits");
+        ArrayNode recorded = (ArrayNode) hitsNode.get("hits");
+
+        ArrayNode expanded = MAPPER.createArrayNode();
+        for (int i = 0; i < hits; i++) {
+            ObjectNode hit = (ObjectNode) recorded.get(i % recorded.size()).deepCopy();
+            hit.put("_id", String.valueOf(i + 1));
+            expanded.add(hit);
+        }
+        hitsNode.set("hits", expanded);
+        ((ObjectNode) hitsNode.get("total")).put("value", hits);
+        return toBytes(response);
+    }
+
+    public static byte[] aggregationResponse() {
+        return toBytes(load("aggregation-response.json"));
+    }
+
+    private static JsonNode load(String name) {
+        try (InputStream in = SearchResponseFixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            return MAPPER.readTree(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] toBytes(JsonNode node) {
+        try {
+            return MAPPER.writeValueAsBytes(node);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.epam.elasticsearch.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.epam.elasticsearch.dto.Employee;
+import com.epam.elasticsearch.service.ElasticsearchMetrics;
+import com.epam.elasticsearch.service.EmployeeResponseDecoder;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Jackson work the controllers do for every response and request body.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializationBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    private int hits;
+
+    private List<Employee> employees;
+
+    private byte[] employeeJson;
+
+    private ObjectWriter listWriter;
+
+    private ObjectWriter employeeWriter;
+
+    private ObjectReader employeeReader;
+
+    @Setup
+    public void setUp() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        employees = new EmployeeResponseDecoder(mapper, new ElasticsearchMetrics(new SimpleMeterRegistry()))
+                .decodeSearch(new ByteArrayInputStream(SearchResponseFixtures.searchResponse(hits)))
+                .employees();
+        listWriter = mapper.writerFor(new TypeReference<List<Employee>>() {
+        });
+        employeeWriter = mapper.writerFor(Employee.class);
+        employeeReader = mapper.readerFor(Employee.class);
+        employeeJson = employeeWriter.writeValueAsBytes(employees.get(0));
+    }
+
+    @Benchmark
+    public byte[] serializeEmployees() throws IOException {
+        return listWriter.writeValueAsBytes(employees);
+    }
+
+    @Benchmark
+    public byte[] serializeEmployee() throws IOException {
+        return employeeWriter.writeValueAsBytes(employees.get(0));
+    }
+
+    @Benchmark
+    public Employee deserializeEmployee() throws IOException {
+        return employeeReader.readValue(employeeJson);
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.epam.elasticsearch.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+/**
+ * Request bodies the services assemble for search and aggregate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class QueryBuildingBenchmark {
+
+    private MultiValueMap<String, String> singleTerm;
+
+    private MultiValueMap<String, String> severalTerms;
+
+    private Map<String, String> aggregation;
+
+    @Setup
+    public void setUp() {
+        singleTerm = new LinkedMultiValueMap<>();
+        singleTerm.add("skills", "java");
+
+        severalTerms = new LinkedMultiValueMap<>();
+        severalTerms.addAll("skills", List.of("java", "spring", "elasticsearch"));
+        severalTerms.add("address.country", "Poland");
+        severalTerms.add("verified", "true");
+        severalTerms.add("salary_gte", "3000");
+        severalTerms.add("size", "50");
+
+        aggregation = Map.of(
+                "agg_field", "address.country",
+                "metric_type", "avg",
+                "metric_field", "rating",
+                "sort_order", "desc");
+    }
+
+    @Benchmark
+    public String searchSingleTerm() {
+        return EmployeeSearchQuery.parse(singleTerm).toJson();
+    }
+
+    @Benchmark
+    public String searchSeveralTerms() {
+        return EmployeeSearchQuery.parse(severalTerms).toJson();
+    }
+
+    @Benchmark
+    public String aggregation() {
+        return EmployeeAggregation.parse(aggregation).toJson();
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.epam.elasticsearch.loadtest;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Bytes allocated by the application's threads, read from the per-thread allocation counters
+ * of HotSpot. The stub, the driver and the JDK HTTP client share the JVM and are left out.
+ * Threads that end between two readings take their count with them, which is why allocation is
+ * measured in short runs of a single operation while the pools are warm.
+ */
+final class AllocationMeter {
+
+    private static final List<String> EXCLUDED = List.of(
+            ElasticsearchStub.THREAD_PREFIX, LoadDriver.THREAD_PREFIX, "HttpClient-");
+
+    private final com.sun.management.ThreadMXBean threads;
+
+    AllocationMeter() {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean)
+                || !bean.isThreadAllocatedMemorySupported()) {
+            throw new IllegalStateException("This JVM doesn't count allocated bytes per thread");
+        }
+        bean.setThreadAllocatedMemoryEnabled(true);
+        this.threads = bean;
+    }
+
+    long allocatedBytes() {
+        long bytes = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            // The calling thread only takes the readings
+            if (thread != Thread.currentThread() && EXCLUDED.stream().noneMatch(thread.getName()::startsWith)) {
+                // -1 once the thread has ended
+                bytes += Math.max(0, threads.getThreadAllocatedBytes(thread.getId()));
+            }
+        }
+        return bytes;
+    }
+
+}
@@ -0,0 +1,383 @@
+package com.epam.elasticsearch.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Stands in for an Elasticsearch node on a loopback port with just enough of the REST API for
+ * both EmployeeService implementations: the index and alias checks made on startup, _doc,
+ * _update, _search (hits or aggregations), _mget, _bulk and point in time. Every request waits
+ * the configured latency plus a jitter drawn from a seeded sequence, searches return the
+ * configured number of hits from a pool of generated employees. Responses are always JSON.
+ */
+final class ElasticsearchStub implements AutoCloseable {
+
+    static final String THREAD_PREFIX = "es-stub-";
+
+    private static final String INDEX = "employees-1";
+
+    private static final String ALIAS = "employees";
+
+    static {
+        // Headers and body go out in separate writes, Nagle's algorithm would hold the body back
+        // until the client's delayed ACK, some 40ms on Linux
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final ObjectMapper mapper = JsonMapper.builder()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+
+    private final LoadTestOptions options;
+
+    private final List<ObjectNode> sources;
+
+    private final byte[] searchResponse;
+
+    private final byte[] aggregationResponse;
+
+    private final byte[] typedAggregationResponse;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong seqNo = new AtomicLong();
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    ElasticsearchStub(LoadTestOptions options, EmployeeGenerator employees) throws IOException {
+        this.options = options;
+        this.sources = new ArrayList<>(options.documents());
+        for (int document = 0; document < options.documents(); document++) {
+            sources.add(mapper.valueToTree(employees.employee(document)));
+        }
+        this.searchResponse = searchResponse();
+        this.aggregationResponse = aggregationResponse(false);
+        this.typedAggregationResponse = aggregationResponse(true);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        executor = Executors.newFixedThreadPool(options.stubThreads(), new CustomizableThreadFactory(THREAD_PREFIX));
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    long requests() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            byte[] body = readBody(exchange);
+            delay();
+            Reply reply = route(exchange.getRequestMethod(), exchange.getRequestURI().getPath(),
+                    exchange.getRequestURI().getRawQuery(), body);
+            exchange.getResponseHeaders().add("X-Elastic-Product", "Elasticsearch");
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            if (reply.body() == null || "HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(reply.status(), -1);
+                return;
+            }
+            exchange.sendResponseHeaders(reply.status(), reply.body().length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(reply.body());
+            }
+        } catch (RuntimeException e) {
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        boolean gzip = "gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"));
+        try (InputStream in = gzip ? new GZIPInputStream(exchange.getRequestBody()) : exchange.getRequestBody()) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Sleeps latency plus a jitter, and for a stall-rate share of requests the stall, like a shard
+     * copy that is collecting garbage or merging. Both depend only on the request's arrival order,
+     * so a run with the same seed sees the same sequence of service times.
+     */
+    private void delay() {
+        long n = requests.incrementAndGet();
+        long micros = options.latency().toNanos() / 1000;
+        long jitter = options.jitter().toNanos() / 1000;
+        if (jitter > 0) {
+            micros += Math.floorMod(mix(options.seed() + n), jitter + 1);
+        }
+        if (options.stallRate() > 0 && (mix(~(options.seed() + n)) >>> 11) * 0x1.0p-53 < options.stallRate()) {
+            micros += options.stall().toNanos() / 1000;
+        }
+        if (micros > 0) {
+            try {
+                TimeUnit.MICROSECONDS.sleep(micros);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long value) {
+        long z = value * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private Reply route(String method, String path, String query, byte[] body) throws IOException {
+        String[] parts = path.substring(1).split("/");
+        String first = parts[0];
+        String endpoint = parts.length > 1 ? parts[1] : "";
+
+        if (first.isEmpty()) {
+            return ok(info());
+        }
+        if ("_alias".equals(first)) {
+            ObjectNode response = mapper.createObjectNode();
+            response.putObject(INDEX).putObject("aliases").putObject(ALIAS);
+            return ok(response);
+        }
+        if ("_pit".equals(first)) {
+            return ok(mapper.createObjectNode().put("succeeded", true).put("num_freed", 1));
+        }
+        if ("_search".equals(first) || "_search".equals(endpoint)) {
+            return search(query, body);
+        }
+        if ("_bulk".equals(first) || "_bulk".equals(endpoint)) {
+            return ok(bulk(body));
+        }
+        return switch (endpoint) {
+            case "" -> "HEAD".equals(method) ? new Reply(200, null) : ok(mapper.createObjectNode().put("acknowledged", true));
+            case "_mapping" -> {
+                ObjectNode response = mapper.createObjectNode();
+                response.putObject(INDEX).putObject("mappings");
+                yield ok(response);
+            }
+            case "_doc" -> switch (method) {
+                case "GET" -> ok(document(parts[2]));
+                case "DELETE" -> ok(writeResult(parts[2], "deleted"));
+                default -> new Reply(201, mapper.writeValueAsBytes(writeResult(parts[2], "created")));
+            };
+            case "_update" -> ok(writeResult(parts[2], "updated"));
+            case "_mget" -> ok(multiGet(body));
+            case "_pit" -> ok(mapper.createObjectNode().put("id", "stub-pit"));
+            case "_stats" -> {
+                // No index to report keeps the replica, when enabled, on Elasticsearch
+                ObjectNode response = mapper.createObjectNode();
+                response.putObject("indices");
+                yield ok(response);
+            }
+            case "_refresh", "_settings" -> ok(shards(mapper.createObjectNode()));
+            default -> new Reply(404, mapper.writeValueAsBytes(mapper.createObjectNode()
+                    .put("error", "no handler for " + method + " " + path)
+                    .put("status", 404)));
+        };
+    }
+
+    private Reply ok(JsonNode body) throws IOException {
+        return new Reply(200, mapper.writeValueAsBytes(body));
+    }
+
+    private Reply search(String query, byte[] body) throws IOException {
+        String request = new String(body);
+        if (request.contains("\"aggs\"")) {
+            boolean typedKeys = query != null && query.contains("typed_keys=true");
+            return new Reply(200, typedKeys ? typedAggregationResponse : aggregationResponse);
+        }
+        if (request.contains("\"ids\"")) {
+            // Routed multi-get and routing lookups go through an ids query
+            ObjectNode response = searchEnvelope();
+            ArrayNode hits = response.putObject("hits").putArray("hits");
+            for (JsonNode id : mapper.readTree(body).findPath("values")) {
+                hits.add(hit(id.asText()));
+            }
+            return ok(response);
+        }
+        return new Reply(200, searchResponse);
+    }
+
+    private byte[] searchResponse() throws IOException {
+        ObjectNode response = searchEnvelope();
+        ObjectNode hits = response.putObject("hits");
+        hits.putObject("total")
+                .put("value", options.documents())
+                .put("relation", "eq");
+        hits.put("max_score", 1.0);
+        ArrayNode array = hits.putArray("hits");
+        for (int hit = 0; hit < options.hits(); hit++) {
+            array.add(hit(EmployeeGenerator.id(hit % options.documents())).put("_score", 1.0));
+        }
+        return mapper.writeValueAsBytes(response);
+    }
+
+    private byte[] aggregationResponse(boolean typedKeys) throws IOException {
+        ObjectNode response = searchEnvelope();
+        ObjectNode hits = response.putObject("hits");
+        hits.putObject("total")
+                .put("value", options.documents())
+                .put("relation", "eq");
+        hits.putNull("max_score");
+        hits.putArray("hits");
+        ObjectNode group = response.putObject("aggregations").putObject(typedKeys ? "sterms#group" : "group");
+        group.put("doc_count_error_upper_bound", 0);
+        group.put("sum_other_doc_count", 0);
+        ArrayNode buckets = group.putArray("buckets");
+        List<String> countries = EmployeeGenerator.COUNTRIES;
+        for (int bucket = 0; bucket < countries.size(); bucket++) {
+            long count = options.documents() / countries.size();
+            ObjectNode node = buckets.addObject()
+                    .put("key", countries.get(bucket))
+                    .put("doc_count", count);
+            node.putObject(typedKeys ? "stats#stats" : "stats")
+                    .put("count", count)
+                    .put("min", 1.0)
+                    .put("max", 5.0)
+                    .put("avg", 3.0 + bucket / 10.0)
+                    .put("sum", count * (3.0 + bucket / 10.0));
+        }
+        return mapper.writeValueAsBytes(response);
+    }
+
+    private ObjectNode searchEnvelope() {
+        ObjectNode response = mapper.createObjectNode();
+        response.put("took", 1);
+        response.put("timed_out", false);
+        return shards(response);
+    }
+
+    private ObjectNode shards(ObjectNode response) {
+        response.putObject("_shards")
+                .put("total", 1)
+                .put("successful", 1)
+                .put("skipped", 0)
+                .put("failed", 0);
+        return response;
+    }
+
+    private ObjectNode hit(String id) {
+        ObjectNode hit = mapper.createObjectNode();
+        hit.put("_index", INDEX);
+        hit.put("_id", id);
+        hit.set("_source", source(id));
+        return hit;
+    }
+
+    private ObjectNode document(String id) {
+        ObjectNode document = mapper.createObjectNode();
+        document.put("_index", INDEX);
+        document.put("_id", id);
+        document.put("_version", 1);
+        document.put("_seq_no", 0);
+        document.put("_primary_term", 1);
+        document.put("found", true);
+        document.set("_source", source(id));
+        return document;
+    }
+
+    /**
+     * The pooled employee behind an id the generator made, the last one for any other id.
+     */
+    private ObjectNode source(String id) {
+        return sources.get(Math.floorMod(EmployeeGenerator.index(id), sources.size()));
+    }
+
+    private JsonNode multiGet(byte[] body) throws IOException {
+        ObjectNode response = mapper.createObjectNode();
+        ArrayNode docs = response.putArray("docs");
+        for (JsonNode id : mapper.readTree(body).path("ids")) {
+            docs.add(document(id.asText()));
+        }
+        return response;
+    }
+
+    private ObjectNode writeResult(String id, String result) {
+        ObjectNode response = mapper.createObjectNode();
+        response.put("_index", INDEX);
+        response.put("_id", id);
+        response.put("_version", 1);
+        response.put("result", result);
+        shards(response);
+        response.put("_seq_no", seqNo.getAndIncrement());
+        response.put("_primary_term", 1);
+        return response;
+    }
+
+    private JsonNode bulk(byte[] body) throws IOException {
+        ObjectNode response = mapper.createObjectNode();
+        response.put("took", 1);
+        response.put("errors", false);
+        ArrayNode items = response.putArray("items");
+        String[] lines = new String(body).split("\n");
+        // Action and source lines alternate, deletes have no source
+        for (int line = 0; line < lines.length; line++) {
+            if (lines[line].isBlank()) {
+                continue;
+            }
+            JsonNode action = mapper.readTree(lines[line]);
+            String type = action.fieldNames().next();
+            String id = action.path(type).path("_id").asText();
+            ObjectNode result = writeResult(id, "delete".equals(type) ? "deleted" : "created");
+            result.put("status", "delete".equals(type) ? 200 : 201);
+            items.addObject().set(type, result);
+            if (!"delete".equals(type)) {
+                line++;
+            }
+        }
+        return response;
+    }
+
+    private JsonNode info() {
+        ObjectNode info = mapper.createObjectNode();
+        info.put("name", "stub");
+        info.put("cluster_name", "load-test");
+        info.put("cluster_uuid", "load-test");
+        info.putObject("version")
+                .put("number", "8.5.3")
+                .put("build_flavor", "default")
+                .put("lucene_version", "9.4.2")
+                .put("minimum_wire_compatibility_version", "7.17.0")
+                .put("minimum_index_compatibility_version", "7.0.0");
+        info.put("tagline", "You Know, for Search");
+        return info;
+    }
+
+    private record Reply(int status, byte[] body) {
+    }
+
+}
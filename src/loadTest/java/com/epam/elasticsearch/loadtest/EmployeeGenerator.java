@@ -0,0 +1,61 @@
+package com.epam.elasticsearch.loadtest;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import com.epam.elasticsearch.dto.Address;
+import com.epam.elasticsearch.dto.Employee;
+
+/**
+ * Employees derived from the seed and their number alone, the stub serves them and the
+ * workload writes them, so every run with the same seed moves the same documents.
+ */
+final class EmployeeGenerator {
+
+    static final List<String> COUNTRIES = List.of("Poland", "Spain", "Germany", "Hungary", "Belarus", "Ukraine");
+
+    static final List<String> SKILLS = List.of("java", "go", "rust", "sql", "kotlin", "python", "scala", "c++");
+
+    private static final String ID_PREFIX = "emp-";
+
+    private final long seed;
+
+    EmployeeGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    static String id(int number) {
+        return ID_PREFIX + number;
+    }
+
+    /**
+     * Number of an id made by id(int), -1 for any other id.
+     */
+    static int index(String id) {
+        if (!id.startsWith(ID_PREFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(id.substring(ID_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    Employee employee(int number) {
+        SplittableRandom random = new SplittableRandom(seed * 31 + number);
+        String name = "Employee " + number;
+        return new Employee(name,
+                LocalDate.of(1960 + random.nextInt(45), 1 + random.nextInt(12), 1 + random.nextInt(28)),
+                new Address(COUNTRIES.get(random.nextInt(COUNTRIES.size())), "Town " + random.nextInt(50)),
+                "employee" + number + "@example.com",
+                List.of(SKILLS.get(random.nextInt(SKILLS.size())), SKILLS.get(random.nextInt(SKILLS.size()))),
+                random.nextInt(30),
+                1 + random.nextInt(40) / 10f,
+                name + " works on " + SKILLS.get(random.nextInt(SKILLS.size())) + " services",
+                random.nextBoolean(),
+                1000 + random.nextInt(9000));
+    }
+
+}
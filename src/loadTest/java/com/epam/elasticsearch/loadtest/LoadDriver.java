@@ -0,0 +1,137 @@
+package com.epam.elasticsearch.loadtest;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Open-loop driver: request n of a run is due at start + n / rate whether or not the earlier
+ * ones were answered, and its latency is taken from that due time rather than from when it was
+ * sent. A stalled application then shows in the percentiles instead of quietly slowing the
+ * driver down (coordinated omission). Requests due while max-in-flight are outstanding are
+ * dropped and counted, the driver never queues behind the application.
+ */
+final class LoadDriver implements AutoCloseable {
+
+    static final String THREAD_PREFIX = "load-driver-";
+
+    private static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(5);
+
+    private final LoadTestOptions options;
+
+    private final ExecutorService scheduler = Executors.newSingleThreadExecutor(
+            new CustomizableThreadFactory(THREAD_PREFIX + "scheduler-"));
+
+    private final ExecutorService clientExecutor = Executors.newFixedThreadPool(4,
+            new CustomizableThreadFactory(THREAD_PREFIX + "client-"));
+
+    private final HttpClient client;
+
+    LoadDriver(LoadTestOptions options) {
+        this.options = options;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(clientExecutor)
+                .build();
+    }
+
+    /**
+     * Drives the workload at the configured rate for the duration and waits for the requests
+     * still in flight.
+     */
+    Result run(Workload workload, Duration duration) throws InterruptedException {
+        try {
+            return scheduler.submit(() -> drive(workload, duration)).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Load run failed", e.getCause());
+        }
+    }
+
+    private Result drive(Workload workload, Duration duration) throws InterruptedException {
+        Map<Operation, OperationStats> stats = Collections.synchronizedMap(new EnumMap<>(Operation.class));
+        Semaphore inFlight = new Semaphore(options.maxInFlight());
+        double interval = 1e9 / options.rate();
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        for (long n = 0; ; n++) {
+            long due = start + (long) (n * interval);
+            if (due >= end) {
+                break;
+            }
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            Workload.Call call = workload.next();
+            OperationStats operation = stats.computeIfAbsent(call.operation(), key -> new OperationStats());
+            if (!inFlight.tryAcquire()) {
+                operation.dropped.increment();
+                continue;
+            }
+            client.sendAsync(call.request(), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        long latency = System.nanoTime() - due;
+                        operation.record(latency, error == null && response.statusCode() < 400);
+                        inFlight.release();
+                    });
+        }
+        long timeout = options.requestTimeout().plusSeconds(5).toMillis();
+        if (!inFlight.tryAcquire(options.maxInFlight(), timeout, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("Requests still in flight " + timeout + "ms after the run");
+        }
+        inFlight.release(options.maxInFlight());
+        return new Result(Map.copyOf(stats), duration);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        clientExecutor.shutdownNow();
+    }
+
+    static final class OperationStats {
+
+        final Histogram latencies = new ConcurrentHistogram(HIGHEST_LATENCY_MICROS, 3);
+
+        final LongAdder errors = new LongAdder();
+
+        final LongAdder dropped = new LongAdder();
+
+        void record(long latencyNanos, boolean success) {
+            latencies.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), HIGHEST_LATENCY_MICROS));
+            if (!success) {
+                errors.increment();
+            }
+        }
+
+        long completed() {
+            return latencies.getTotalCount();
+        }
+
+    }
+
+    record Result(Map<Operation, OperationStats> operations, Duration duration) {
+
+        long completed() {
+            return operations.values().stream().mapToLong(OperationStats::completed).sum();
+        }
+
+    }
+
+}
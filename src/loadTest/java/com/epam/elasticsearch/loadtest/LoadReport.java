@@ -0,0 +1,108 @@
+package com.epam.elasticsearch.loadtest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * One row per implementation and operation plus a row for the whole mix: throughput, latency
+ * percentiles in milliseconds and bytes allocated per request. With an output directory the
+ * table is also written to summary.txt, next to an HdrHistogram percentile log per row.
+ */
+final class LoadReport {
+
+    private static final String HEADER = String.format("%-4s %-7s %9s %7s %7s %9s %9s %9s %9s %9s %12s",
+            "api", "op", "requests", "errors", "dropped", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "alloc/req");
+
+    private final LoadTestOptions options;
+
+    private final List<Row> rows = new ArrayList<>();
+
+    LoadReport(LoadTestOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * Adds the rows of one implementation's measured run, allocation holds bytes per request of
+     * the operations that were measured alone.
+     */
+    void add(String api, LoadDriver.Result result, Map<Operation, Long> allocation) {
+        Histogram all = new Histogram(3);
+        long errors = 0;
+        long dropped = 0;
+        for (Operation operation : Operation.values()) {
+            LoadDriver.OperationStats stats = result.operations().get(operation);
+            if (stats == null) {
+                continue;
+            }
+            Histogram latencies = stats.latencies.copy();
+            rows.add(new Row(api, operation.label(), latencies, stats.errors.sum(), stats.dropped.sum(),
+                    result.duration().toNanos(), allocation.get(operation)));
+            all.add(latencies);
+            errors += stats.errors.sum();
+            dropped += stats.dropped.sum();
+        }
+        rows.add(new Row(api, "all", all, errors, dropped, result.duration().toNanos(), null));
+    }
+
+    void print(PrintStream out) {
+        out.println(HEADER);
+        for (Row row : rows) {
+            out.println(row.format());
+        }
+    }
+
+    void write() throws IOException {
+        if (options.output() == null) {
+            return;
+        }
+        Files.createDirectories(options.output());
+        try (PrintStream summary = new PrintStream(Files.newOutputStream(options.output().resolve("summary.txt")))) {
+            summary.println(options);
+            print(summary);
+        }
+        for (Row row : rows) {
+            Path log = options.output().resolve(row.api() + "-" + row.operation() + ".hgrm");
+            try (PrintStream out = new PrintStream(Files.newOutputStream(log))) {
+                // Recorded in microseconds, written in milliseconds
+                row.latencies().outputPercentileDistribution(out, 1000.0);
+            }
+        }
+    }
+
+    private record Row(String api,
+                       String operation,
+                       Histogram latencies,
+                       long errors,
+                       long dropped,
+                       long durationNanos,
+                       Long allocatedBytes) {
+
+        String format() {
+            return String.format("%-4s %-7s %9d %7d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %12s",
+                    api, operation, latencies.getTotalCount(), errors, dropped,
+                    latencies.getTotalCount() * 1e9 / durationNanos,
+                    millis(latencies.getValueAtPercentile(50)),
+                    millis(latencies.getValueAtPercentile(99)),
+                    millis(latencies.getValueAtPercentile(99.9)),
+                    millis(latencies.getMaxValue()),
+                    allocatedBytes == null ? "-" : bytes(allocatedBytes));
+        }
+
+        private static double millis(long micros) {
+            return micros / 1000.0;
+        }
+
+        private static String bytes(long bytes) {
+            return bytes < 10 * 1024 ? bytes + " B" : (bytes / 1024) + " KB";
+        }
+
+    }
+
+}
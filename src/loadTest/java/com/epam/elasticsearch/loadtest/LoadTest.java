@@ -0,0 +1,120 @@
+package com.epam.elasticsearch.loadtest;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.epam.elasticsearch.ElasticSearchEngine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Starts the application in process against an Elasticsearch stub on a loopback port and drives
+ * the same seeded mix of searches, gets, writes and aggregations through /api/v1/employees
+ * (EmployeeServiceImpl) and /api/v2/employees (EmployeeApiServiceImpl) in turn. Each
+ * implementation gets a warmup, a measured run of the mix and then a short run of every operation
+ * alone to measure allocation. Nothing leaves the machine, e.g.
+ * <pre>
+ * ./gradlew loadTest --args="--rate=1000 --duration=60s --latency=5ms --hits=100 --output=build/load-test"
+ * </pre>
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String... args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        EmployeeGenerator employees = new EmployeeGenerator(options.seed());
+        LoadReport report = new LoadReport(options);
+        List<String> hedges;
+        try (ElasticsearchStub stub = new ElasticsearchStub(options, employees);
+             ConfigurableApplicationContext application = start(options, stub.port());
+             LoadDriver driver = new LoadDriver(options)) {
+            int port = application.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            AllocationMeter allocation = options.allocationDuration().isZero() ? null : new AllocationMeter();
+            for (String api : options.apis()) {
+                URI base = URI.create("http://localhost:" + port + "/api/" + api + "/employees");
+                System.out.println("Warming up " + api + " for " + options.warmup());
+                driver.run(new Workload(base, options.mix(), options, employees), options.warmup());
+                System.out.println("Measuring " + api + " at " + options.rate() + " requests/s for " + options.duration());
+                LoadDriver.Result result = driver.run(new Workload(base, options.mix(), options, employees),
+                        options.duration());
+                report.add(api, result, allocation == null ? Map.of() : allocationPerRequest(driver, allocation, base,
+                        options, employees));
+            }
+            System.out.println("Stub served " + stub.requests() + " Elasticsearch requests");
+            hedges = hedges(application.getBean(MeterRegistry.class));
+        }
+        report.print(System.out);
+        hedges.forEach(System.out::println);
+        report.write();
+    }
+
+    /**
+     * Hedged reads of the whole run, when application.elasticsearch.hedging.enabled is set.
+     */
+    private static List<String> hedges(MeterRegistry registry) {
+        List<String> hedges = new ArrayList<>();
+        for (Counter fired : registry.find("es.hedge.fired").counters()) {
+            String impl = fired.getId().getTag("impl");
+            String operation = fired.getId().getTag("operation");
+            hedges.add(String.format("Hedged %s %s after %.1f ms: %.0f sent, %.0f won, %.0f denied by the budget",
+                    impl, operation,
+                    registry.get("es.hedge.delay").tags("impl", impl, "operation", operation).gauge().value() * 1000,
+                    fired.count(),
+                    registry.get("es.hedge.won").tags("impl", impl, "operation", operation).counter().count(),
+                    registry.get("es.hedge.denied").tags("impl", impl, "operation", operation).counter().count()));
+        }
+        return hedges;
+    }
+
+    private static ConfigurableApplicationContext start(LoadTestOptions options, int stubPort) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        properties.put("application.elasticsearch.server", "localhost");
+        properties.put("application.elasticsearch.port", String.valueOf(stubPort));
+        properties.put("application.elasticsearch.protocol", "http");
+        properties.put("application.elasticsearch.hosts", "");
+        properties.put("application.elasticsearch.sniff.enabled", "false");
+        // The stub only speaks JSON
+        properties.put("application.elasticsearch.smile", "false");
+        properties.put("logging.level.root", "WARN");
+        properties.putAll(options.properties());
+        // Command line arguments take precedence over application.yaml
+        String[] args = properties.entrySet().stream()
+                .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                .toArray(String[]::new);
+        return new SpringApplicationBuilder(ElasticSearchEngine.class).run(args);
+    }
+
+    /**
+     * Runs each operation of the mix alone and divides the bytes the application allocated by the
+     * requests it answered.
+     */
+    private static Map<Operation, Long> allocationPerRequest(LoadDriver driver,
+                                                             AllocationMeter allocation,
+                                                             URI base,
+                                                             LoadTestOptions options,
+                                                             EmployeeGenerator employees) throws InterruptedException {
+        Map<Operation, Long> bytes = new EnumMap<>(Operation.class);
+        for (Operation operation : options.mix().keySet()) {
+            Workload workload = new Workload(base, Map.of(operation, 1), options, employees);
+            long before = allocation.allocatedBytes();
+            LoadDriver.Result result = driver.run(workload, options.allocationDuration());
+            long allocated = allocation.allocatedBytes() - before;
+            if (result.completed() > 0) {
+                bytes.put(operation, allocated / result.completed());
+            }
+        }
+        return bytes;
+    }
+
+}
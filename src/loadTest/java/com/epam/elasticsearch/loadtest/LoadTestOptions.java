@@ -0,0 +1,133 @@
+package com.epam.elasticsearch.loadtest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.convert.DurationStyle;
+
+/**
+ * Command line of the load test, every option is --name=value. Options with a dot in the name,
+ * such as --application.cache.employee.enabled=false, are passed on to the application.
+ *
+ * @param rate               requests per second the driver sends, whatever the response times
+ * @param duration           measured run of the mix per implementation
+ * @param warmup             unmeasured run of the mix before it
+ * @param allocationDuration run of each operation alone to measure allocation, 0s skips it
+ * @param latency            stub service time of every Elasticsearch request
+ * @param jitter             upper bound of the extra service time drawn per request
+ * @param stallRate          share of Elasticsearch requests that also wait the stall, 0 to 1
+ * @param hits               employees in each stub search response
+ * @param documents          employee ids the workload draws from
+ * @param mix                relative weight of each operation, e.g. search:40,get:25,put:15
+ * @param apis               implementations to run, v1 (low-level client) and v2 (Java API client)
+ * @param output             directory for the summary and the HdrHistogram logs, none when null
+ */
+record LoadTestOptions(int rate,
+                       Duration duration,
+                       Duration warmup,
+                       Duration allocationDuration,
+                       Duration latency,
+                       Duration jitter,
+                       double stallRate,
+                       Duration stall,
+                       int hits,
+                       int documents,
+                       int mgetSize,
+                       int bulkSize,
+                       Map<Operation, Integer> mix,
+                       List<String> apis,
+                       long seed,
+                       int stubThreads,
+                       int maxInFlight,
+                       Duration requestTimeout,
+                       Path output,
+                       Map<String, String> properties) {
+
+    static final List<String> APIS = List.of("v1", "v2");
+
+    private static final String DEFAULT_MIX = "search:40,get:25,put:15,agg:10,mget:5,bulk:5";
+
+    static LoadTestOptions parse(String... args) {
+        Map<String, String> values = new LinkedHashMap<>();
+        Map<String, String> properties = new LinkedHashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got " + arg);
+            }
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+            (name.contains(".") ? properties : values).put(name, value);
+        }
+
+        LoadTestOptions options = new LoadTestOptions(
+                integer(values.remove("rate"), 500),
+                duration(values.remove("duration"), "30s"),
+                duration(values.remove("warmup"), "10s"),
+                duration(values.remove("allocation-duration"), "5s"),
+                duration(values.remove("latency"), "2ms"),
+                duration(values.remove("jitter"), "3ms"),
+                Double.parseDouble(string(values.remove("stall-rate"), "0")),
+                duration(values.remove("stall"), "200ms"),
+                integer(values.remove("hits"), 10),
+                integer(values.remove("documents"), 10_000),
+                integer(values.remove("mget-size"), 10),
+                integer(values.remove("bulk-size"), 20),
+                mix(string(values.remove("mix"), DEFAULT_MIX)),
+                apis(string(values.remove("apis"), String.join(",", APIS))),
+                Long.parseLong(string(values.remove("seed"), "42")),
+                integer(values.remove("stub-threads"), 64),
+                integer(values.remove("max-in-flight"), 2000),
+                duration(values.remove("request-timeout"), "30s"),
+                values.containsKey("output") ? Path.of(values.remove("output")) : null,
+                properties);
+        if (!values.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options " + values.keySet());
+        }
+        if (options.rate() <= 0 || options.documents() <= 0 || options.maxInFlight() <= 0) {
+            throw new IllegalArgumentException("rate, documents and max-in-flight must be positive");
+        }
+        return options;
+    }
+
+    private static String string(String value, String defaultValue) {
+        return value == null ? defaultValue : value;
+    }
+
+    private static int integer(String value, int defaultValue) {
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static Duration duration(String value, String defaultValue) {
+        return DurationStyle.detectAndParse(value == null ? defaultValue : value);
+    }
+
+    private static Map<Operation, Integer> mix(String value) {
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        for (String entry : value.split(",")) {
+            String[] parts = entry.split(":", 2);
+            int weight = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+            if (weight < 0) {
+                throw new IllegalArgumentException("Negative weight for " + parts[0]);
+            }
+            if (weight > 0) {
+                mix.put(Operation.of(parts[0].trim()), weight);
+            }
+        }
+        return mix;
+    }
+
+    private static List<String> apis(String value) {
+        List<String> apis = Arrays.stream(value.split(",")).map(String::trim).toList();
+        if (!APIS.containsAll(apis)) {
+            throw new IllegalArgumentException("Unknown implementation in " + value + ", use " + APIS);
+        }
+        return apis;
+    }
+
+}
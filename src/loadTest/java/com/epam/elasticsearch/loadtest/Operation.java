@@ -0,0 +1,37 @@
+package com.epam.elasticsearch.loadtest;
+
+/**
+ * Employee endpoints the load test drives, named as they appear in --mix and in the report.
+ * The v1 and v2 controllers expose the same paths under their own prefix.
+ */
+enum Operation {
+
+    SEARCH("search"),
+    GET("get"),
+    MGET("mget"),
+    AGGREGATE("agg"),
+    PUT("put"),
+    UPDATE("update"),
+    DELETE("delete"),
+    BULK("bulk");
+
+    private final String label;
+
+    Operation(String label) {
+        this.label = label;
+    }
+
+    String label() {
+        return label;
+    }
+
+    static Operation of(String label) {
+        for (Operation operation : values()) {
+            if (operation.label.equals(label)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation " + label);
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.epam.elasticsearch.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.epam.elasticsearch.dto.EmployeeEntry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Sequence of requests drawn from the mix with a seeded Random, the same seed gives every
+ * implementation the same requests in the same order. Only the driver thread calls next().
+ */
+final class Workload {
+
+    private final ObjectMapper mapper = JsonMapper.builder()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+
+    private final String base;
+
+    private final LoadTestOptions options;
+
+    private final EmployeeGenerator employees;
+
+    private final Random random;
+
+    private final Operation[] operations;
+
+    private final int[] cumulativeWeights;
+
+    Workload(URI base, Map<Operation, Integer> mix, LoadTestOptions options, EmployeeGenerator employees) {
+        this.base = base.toString();
+        this.options = options;
+        this.employees = employees;
+        this.random = new Random(options.seed());
+        this.operations = mix.keySet().toArray(Operation[]::new);
+        this.cumulativeWeights = new int[operations.length];
+        int total = 0;
+        for (int operation = 0; operation < operations.length; operation++) {
+            total += mix.get(operations[operation]);
+            cumulativeWeights[operation] = total;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("The mix has no operation with a positive weight");
+        }
+    }
+
+    Call next() {
+        int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int operation = 0;
+        while (cumulativeWeights[operation] <= pick) {
+            operation++;
+        }
+        try {
+            return new Call(operations[operation], request(operations[operation]));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private HttpRequest request(Operation operation) throws IOException {
+        return switch (operation) {
+            case SEARCH -> builder("/search?skills=" + encoded(pick(EmployeeGenerator.SKILLS))
+                    + "&address.country=" + pick(EmployeeGenerator.COUNTRIES)
+                    + (random.nextBoolean() ? "&salary_gte=" + (1000 + random.nextInt(5000)) : ""))
+                    .POST(HttpRequest.BodyPublishers.noBody())
+                    .build();
+            case GET -> builder("/" + randomId())
+                    .GET()
+                    .build();
+            case MGET -> {
+                ObjectNode body = mapper.createObjectNode();
+                ArrayNode ids = body.putArray("ids");
+                for (int id = 0; id < options.mgetSize(); id++) {
+                    ids.add(randomId());
+                }
+                yield builder("/_mget")
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(body)))
+                        .build();
+            }
+            case AGGREGATE -> builder("/agg?agg_field=address.country"
+                    + (random.nextInt(4) == 0 ? "&skills=" + encoded(pick(EmployeeGenerator.SKILLS)) : ""))
+                    .POST(HttpRequest.BodyPublishers.noBody())
+                    .build();
+            case PUT -> {
+                int number = random.nextInt(options.documents());
+                yield builder("/" + EmployeeGenerator.id(number))
+                        .header("Content-Type", "application/json")
+                        .PUT(HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(employees.employee(number))))
+                        .build();
+            }
+            case UPDATE -> {
+                ObjectNode body = mapper.createObjectNode();
+                body.putObject("doc").put("rating", 1 + random.nextInt(40) / 10f);
+                body.putArray("add_skills").add(pick(EmployeeGenerator.SKILLS));
+                yield builder("/" + randomId())
+                        .header("Content-Type", "application/json")
+                        .method("PATCH", HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(body)))
+                        .build();
+            }
+            case DELETE -> builder("/" + randomId())
+                    .DELETE()
+                    .build();
+            case BULK -> {
+                ByteArrayOutputStream body = new ByteArrayOutputStream(options.bulkSize() * 512);
+                for (int entry = 0; entry < options.bulkSize(); entry++) {
+                    int number = random.nextInt(options.documents());
+                    mapper.writeValue(body, new EmployeeEntry(EmployeeGenerator.id(number), employees.employee(number)));
+                    body.write('\n');
+                }
+                yield builder("/_bulk")
+                        .header("Content-Type", "application/x-ndjson")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                        .build();
+            }
+        };
+    }
+
+    private HttpRequest.Builder builder(String path) {
+        return HttpRequest.newBuilder(URI.create(base + path))
+                .header("Accept", "application/json")
+                .timeout(options.requestTimeout());
+    }
+
+    private String randomId() {
+        return EmployeeGenerator.id(random.nextInt(options.documents()));
+    }
+
+    private String pick(List<String> values) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    private static String encoded(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    record Call(Operation operation, HttpRequest request) {
+    }
+
+}
@@ -3,8 +3,10 @@ package com.epam.elasticsearch;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.elasticsearch.ElasticsearchRestClientAutoConfiguration;
 
-@SpringBootApplication
+// RestClient and Sniffer are built by ElasticSearchConfiguration
+@SpringBootApplication(exclude = ElasticsearchRestClientAutoConfiguration.class)
 public class ElasticSearchEngine {
 
     public static void main(String... args) {
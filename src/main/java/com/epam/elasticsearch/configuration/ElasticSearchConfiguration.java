@@ -1,18 +1,49 @@
 package com.epam.elasticsearch.configuration;
 
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import co.elastic.clients.json.jackson.JacksonJsonpMapper;
 import co.elastic.clients.transport.ElasticsearchTransport;
+import co.elastic.clients.transport.rest_client.RestClientOptions;
 import co.elastic.clients.transport.rest_client.RestClientTransport;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.http.HttpHost;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.elasticsearch.client.Node;
+import org.elasticsearch.client.NodeSelector;
+import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestClient;
+import org.elasticsearch.client.sniff.ElasticsearchNodesSniffer;
+import org.elasticsearch.client.sniff.SniffOnFailureListener;
+import org.elasticsearch.client.sniff.Sniffer;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
 
 @Configuration
+@Slf4j
 public class ElasticSearchConfiguration {
 
     @Value("${application.elasticsearch.server}")
@@ -24,19 +55,178 @@ public class ElasticSearchConfiguration {
     @Value("${application.elasticsearch.protocol}")
     private String elasticServerProtocol;
 
+    @Value("${application.elasticsearch.hosts:}")
+    private List<String> elasticServerHosts;
+
+    @Value("${application.elasticsearch.sniff.enabled:false}")
+    private Boolean sniffEnabled;
+
+    @Value("${application.elasticsearch.sniff.interval:5m}")
+    private Duration sniffInterval;
+
+    @Value("${application.elasticsearch.sniff.delay-after-failure:1m}")
+    private Duration sniffDelayAfterFailure;
+
+    @Value("${application.elasticsearch.max-connections-per-route:50}")
+    private Integer maxConnectionsPerRoute;
+
+    @Value("${application.elasticsearch.max-connections-total:200}")
+    private Integer maxConnectionsTotal;
+
+    @Value("${application.elasticsearch.io-thread-count:0}")
+    private Integer ioThreadCount;
+
+    @Value("${application.elasticsearch.connect-timeout:1s}")
+    private Duration connectTimeout;
+
+    @Value("${application.elasticsearch.socket-timeout:30s}")
+    private Duration socketTimeout;
+
+    @Value("${application.elasticsearch.keep-alive:1m}")
+    private Duration keepAlive;
+
+    @Value("${application.elasticsearch.compression:true}")
+    private Boolean compression;
+
+    private final SniffOnFailureListener sniffOnFailureListener = new SniffOnFailureListener() {
+        @Override
+        public void onFailure(Node node) {
+            log.warn("Elasticsearch node failed, sniffing cluster nodes: " + node.getHost());
+            super.onFailure(node);
+        }
+    };
+
+    // Created explicitly so the pool can be observed, closing the RestClient shuts it down
+    @Bean(destroyMethod = "")
+    PoolingNHttpClientConnectionManager connectionManager() throws IOReactorException {
+        IOReactorConfig.Builder ioReactorConfig = IOReactorConfig.custom()
+                .setSoKeepAlive(true);
+        if (ioThreadCount > 0) {
+            ioReactorConfig.setIoThreadCount(ioThreadCount);
+        }
+
+        Registry<SchemeIOSessionStrategy> sessionStrategies = RegistryBuilder.<SchemeIOSessionStrategy>create()
+                .register("http", NoopIOSessionStrategy.INSTANCE)
+                .register("https", SSLIOSessionStrategy.getSystemDefaultStrategy())
+                .build();
+        PoolingNHttpClientConnectionManager connectionManager = new PoolingNHttpClientConnectionManager(
+                new DefaultConnectingIOReactor(ioReactorConfig.build()), sessionStrategies);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        connectionManager.setMaxTotal(maxConnectionsTotal);
+        return connectionManager;
+    }
+
+    @Bean
+    MeterBinder connectionPoolMetrics(PoolingNHttpClientConnectionManager connectionManager) {
+        return registry -> {
+            Gauge.builder("es.client.pool.leased", connectionManager, pool -> pool.getTotalStats().getLeased())
+                    .description("Connections to Elasticsearch currently in use")
+                    .register(registry);
+            Gauge.builder("es.client.pool.pending", connectionManager, pool -> pool.getTotalStats().getPending())
+                    .description("Requests waiting for a connection to Elasticsearch")
+                    .register(registry);
+            Gauge.builder("es.client.pool.available", connectionManager, pool -> pool.getTotalStats().getAvailable())
+                    .description("Idle connections to Elasticsearch kept alive for reuse")
+                    .register(registry);
+            Gauge.builder("es.client.pool.max", connectionManager, pool -> pool.getTotalStats().getMax())
+                    .description("Maximum connections to Elasticsearch")
+                    .register(registry);
+        };
+    }
+
+    // Also the response consumer factory of employee requests, which counts response sizes
     @Bean
-    RestClient restClient() throws IOException {
-        return RestClient.builder(
-                        new HttpHost(elasticServerUrl, elasticServerPort, elasticServerProtocol))
+    ElasticsearchRequestMetrics elasticsearchRequestMetrics(MeterRegistry registry) {
+        return new ElasticsearchRequestMetrics(registry);
+    }
+
+    @Bean(destroyMethod = "close")
+    RestClient restClient(PoolingNHttpClientConnectionManager connectionManager, ElasticsearchRequestMetrics requestMetrics) {
+        return RestClient.builder(hosts())
+                .setNodeSelector(NodeSelector.SKIP_DEDICATED_MASTERS)
+                .setFailureListener(failureListener())
+                .setCompressionEnabled(compression)
+                .setRequestConfigCallback(requestConfig -> requestConfig
+                        .setConnectTimeout((int) connectTimeout.toMillis())
+                        .setSocketTimeout((int) socketTimeout.toMillis()))
+                .setHttpClientConfigCallback(httpClient -> httpClient
+                        .setConnectionManager(connectionManager)
+                        .setKeepAliveStrategy(keepAliveStrategy())
+                        .addInterceptorFirst((HttpRequestInterceptor) requestMetrics)
+                        .addInterceptorLast((HttpResponseInterceptor) requestMetrics))
                 .build();
     }
 
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "application.elasticsearch.sniff.enabled", havingValue = "true")
+    Sniffer sniffer(RestClient restClient) {
+        ElasticsearchNodesSniffer.Scheme scheme = "https".equals(elasticServerProtocol)
+                ? ElasticsearchNodesSniffer.Scheme.HTTPS
+                : ElasticsearchNodesSniffer.Scheme.HTTP;
+
+        Sniffer sniffer = Sniffer.builder(restClient)
+                .setSniffIntervalMillis((int) sniffInterval.toMillis())
+                .setSniffAfterFailureDelayMillis((int) sniffDelayAfterFailure.toMillis())
+                .setNodesSniffer(new ElasticsearchNodesSniffer(
+                        restClient, ElasticsearchNodesSniffer.DEFAULT_SNIFF_REQUEST_TIMEOUT, scheme))
+                .build();
+        sniffOnFailureListener.setSniffer(sniffer);
+        return sniffer;
+    }
+
     @Bean
-    ElasticsearchClient elasticsearchClient() throws IOException {
-        ElasticsearchTransport transport = new RestClientTransport(
-                restClient(), new JacksonJsonpMapper());
+    ElasticsearchTransport elasticsearchTransport(RestClient restClient, ElasticsearchRequestMetrics requestMetrics) {
+        // Dates as yyyy-MM-dd like the low-level client writes them, the mapping only accepts strict_date
+        ObjectMapper mapper = new ObjectMapper()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        RequestOptions options = RequestOptions.DEFAULT.toBuilder()
+                .setHttpAsyncResponseConsumerFactory(requestMetrics)
+                .build();
+        return new RestClientTransport(
+                restClient, new JacksonJsonpMapper(mapper), new RestClientOptions(options));
+    }
 
+    @Bean
+    ElasticsearchClient elasticsearchClient(ElasticsearchTransport transport) {
         return new ElasticsearchClient(transport);
     }
 
+    @Bean
+    ElasticsearchAsyncClient elasticsearchAsyncClient(ElasticsearchTransport transport) {
+        return new ElasticsearchAsyncClient(transport);
+    }
+
+    private HttpHost[] hosts() {
+        if (elasticServerHosts.isEmpty()) {
+            return new HttpHost[]{new HttpHost(elasticServerUrl, elasticServerPort, elasticServerProtocol)};
+        }
+        return elasticServerHosts.stream()
+                .map(String::trim)
+                .map(HttpHost::create)
+                .toArray(HttpHost[]::new);
+    }
+
+    private RestClient.FailureListener failureListener() {
+        // The client itself skips failed nodes and retries them with backoff, sniffing also refreshes the node list
+        if (sniffEnabled) {
+            return sniffOnFailureListener;
+        }
+        return new RestClient.FailureListener() {
+            @Override
+            public void onFailure(Node node) {
+                log.warn("Elasticsearch node failed: " + node.getHost());
+            }
+        };
+    }
+
+    private ConnectionKeepAliveStrategy keepAliveStrategy() {
+        long maxKeepAlive = keepAlive.toMillis();
+        // Honour a shorter Keep-Alive from the server, otherwise reuse idle connections up to the configured limit
+        return (response, context) -> {
+            long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return serverKeepAlive > 0 ? Math.min(serverKeepAlive, maxKeepAlive) : maxKeepAlive;
+        };
+    }
+
 }
@@ -0,0 +1,173 @@
+package com.epam.elasticsearch.configuration;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+import org.elasticsearch.client.HttpAsyncResponseConsumerFactory;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Client observed time of every request from the moment it is written to a leased connection
+ * until the response headers arrive, and the response size on the wire. Shared by both clients
+ * since the typed client runs on the same RestClient. The size is counted while the body is read,
+ * still compressed and without chunk framing, so only requests whose options carry this factory
+ * as their response consumer factory report it.
+ */
+class ElasticsearchRequestMetrics implements HttpRequestInterceptor, HttpResponseInterceptor,
+        HttpAsyncResponseConsumerFactory {
+
+    private static final String START = ElasticsearchRequestMetrics.class.getName() + ".start";
+
+    private static final String ENDPOINT = ElasticsearchRequestMetrics.class.getName() + ".endpoint";
+
+    private final MeterRegistry registry;
+
+    ElasticsearchRequestMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void process(HttpRequest request, HttpContext context) {
+        context.setAttribute(START, registry.config().clock().monotonicTime());
+        context.setAttribute(ENDPOINT, request.getRequestLine().getMethod() + " "
+                + endpointOf(request.getRequestLine().getUri()));
+    }
+
+    @Override
+    public void process(HttpResponse response, HttpContext context) {
+        if (!(context.getAttribute(START) instanceof Long start)) {
+            return;
+        }
+        String endpoint = (String) context.getAttribute(ENDPOINT);
+        String status = String.valueOf(response.getStatusLine().getStatusCode());
+
+        Timer.builder("es.client.requests")
+                .description("Time from sending a request to Elasticsearch until its response headers arrive")
+                .tag("endpoint", endpoint)
+                .tag("status", status)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(registry.config().clock().monotonicTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public HttpAsyncResponseConsumer<HttpResponse> createHttpAsyncResponseConsumer() {
+        return new CountingConsumer(HttpAsyncResponseConsumerFactory.DEFAULT.createHttpAsyncResponseConsumer());
+    }
+
+    private void recordSize(HttpContext context, long bytes) {
+        if (!(context.getAttribute(ENDPOINT) instanceof String endpoint)) {
+            return;
+        }
+        DistributionSummary.builder("es.client.response.size")
+                .description("Elasticsearch response body size as sent over the wire")
+                .baseUnit("bytes")
+                .tag("endpoint", endpoint)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(bytes);
+    }
+
+    /**
+     * Reduces a path to its API name, /employees/_doc/42 becomes _doc, to keep tag cardinality bounded.
+     */
+    private static String endpointOf(String uri) {
+        int query = uri.indexOf('?');
+        String path = query >= 0 ? uri.substring(0, query) : uri;
+        for (String segment : path.split("/")) {
+            if (segment.startsWith("_")) {
+                return segment;
+            }
+        }
+        return "/";
+    }
+
+    /**
+     * Buffers the response like the default consumer and counts the body bytes it reads.
+     */
+    private final class CountingConsumer implements HttpAsyncResponseConsumer<HttpResponse> {
+
+        private final HttpAsyncResponseConsumer<HttpResponse> delegate;
+
+        private long bytes;
+
+        private CountingConsumer(HttpAsyncResponseConsumer<HttpResponse> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void responseReceived(HttpResponse response) throws IOException, HttpException {
+            delegate.responseReceived(response);
+        }
+
+        @Override
+        public void consumeContent(ContentDecoder decoder, IOControl control) throws IOException {
+            delegate.consumeContent(new ContentDecoder() {
+                @Override
+                public int read(ByteBuffer destination) throws IOException {
+                    int read = decoder.read(destination);
+                    if (read > 0) {
+                        bytes += read;
+                    }
+                    return read;
+                }
+
+                @Override
+                public boolean isCompleted() {
+                    return decoder.isCompleted();
+                }
+            }, control);
+        }
+
+        @Override
+        public void responseCompleted(HttpContext context) {
+            recordSize(context, bytes);
+            delegate.responseCompleted(context);
+        }
+
+        @Override
+        public void failed(Exception e) {
+            delegate.failed(e);
+        }
+
+        @Override
+        public Exception getException() {
+            return delegate.getException();
+        }
+
+        @Override
+        public HttpResponse getResult() {
+            return delegate.getResult();
+        }
+
+        @Override
+        public boolean isDone() {
+            return delegate.isDone();
+        }
+
+        @Override
+        public boolean cancel() {
+            return delegate.cancel();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+    }
+
+}
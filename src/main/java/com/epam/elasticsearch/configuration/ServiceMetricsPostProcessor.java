@@ -0,0 +1,91 @@
+package com.epam.elasticsearch.configuration;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import com.epam.elasticsearch.service.AsyncEmployeeService;
+import com.epam.elasticsearch.service.EmployeeService;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Times every EmployeeService and AsyncEmployeeService call, tagged with the bean name
+ * (service or api-service) so both implementations can be compared operation by operation.
+ * Asynchronous operations are timed until their future completes.
+ */
+@Component
+class ServiceMetricsPostProcessor implements BeanPostProcessor {
+
+    private final ObjectProvider<MeterRegistry> registry;
+
+    ServiceMetricsPostProcessor(ObjectProvider<MeterRegistry> registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof EmployeeService) && !(bean instanceof AsyncEmployeeService)) {
+            return bean;
+        }
+        // Class based proxy, EmployeeApiController injects the implementation type
+        ProxyFactory proxyFactory = new ProxyFactory(bean);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(new TimingInterceptor(beanName));
+        return proxyFactory.getProxy();
+    }
+
+    private final class TimingInterceptor implements MethodInterceptor {
+
+        private final String impl;
+
+        private TimingInterceptor(String impl) {
+            this.impl = impl;
+        }
+
+        @Override
+        public Object invoke(MethodInvocation invocation) throws Throwable {
+            Method method = invocation.getMethod();
+            if (!ClassUtils.hasMethod(EmployeeService.class, method)
+                    && !ClassUtils.hasMethod(AsyncEmployeeService.class, method)) {
+                return invocation.proceed();
+            }
+            MeterRegistry meterRegistry = registry.getObject();
+            Timer.Sample sample = Timer.start(meterRegistry);
+            Object result;
+            try {
+                result = invocation.proceed();
+            } catch (Throwable e) {
+                stop(meterRegistry, sample, method, e);
+                throw e;
+            }
+            if (result instanceof CompletableFuture<?> future) {
+                // The caller keeps the original future so cancelling it still reaches the request
+                future.whenComplete((value, e) -> stop(meterRegistry, sample, method, e));
+                return result;
+            }
+            stop(meterRegistry, sample, method, null);
+            return result;
+        }
+
+        private void stop(MeterRegistry meterRegistry, Timer.Sample sample, Method method, Throwable error) {
+            sample.stop(Timer.builder("employee.service")
+                    .description("Time spent in EmployeeService operations including Elasticsearch calls")
+                    .tag("impl", impl)
+                    .tag("operation", method.getName())
+                    .tag("outcome", error == null ? "success" : "error")
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.epam.elasticsearch.configuration;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+@Configuration
+public class WebConfiguration {
+
+    public static final String SMILE = "application/x-jackson-smile";
+
+    // Replaces the default Smile converter so its mapper gets the same Boot customizations as the JSON one
+    @Bean
+    MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder
+                .factory(new SmileFactory())
+                .build());
+    }
+
+}
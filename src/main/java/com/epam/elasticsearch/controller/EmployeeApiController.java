@@ -1,16 +1,20 @@
 package com.epam.elasticsearch.controller;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
@@ -18,84 +22,261 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.epam.elasticsearch.configuration.WebConfiguration;
+import com.epam.elasticsearch.dto.AggregationBucket;
+import com.epam.elasticsearch.dto.BulkResult;
 import com.epam.elasticsearch.dto.Employee;
+import com.epam.elasticsearch.dto.EmployeeEntry;
+import com.epam.elasticsearch.dto.EmployeeIds;
+import com.epam.elasticsearch.dto.EmployeeLookup;
+import com.epam.elasticsearch.dto.EmployeePage;
+import com.epam.elasticsearch.dto.EmployeePatch;
+import com.epam.elasticsearch.dto.EmployeeSummary;
+import com.epam.elasticsearch.dto.UpdateResult;
 import com.epam.elasticsearch.service.EmployeeApiServiceImpl;
+import com.epam.elasticsearch.service.EmployeeProjection;
+import com.epam.elasticsearch.service.Futures;
+import com.epam.elasticsearch.service.TooManyEmployeesException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import lombok.extern.slf4j.Slf4j;
 
 @RestController
-@RequestMapping(value = "/api/v2/employees", produces = "application/json")
+@Slf4j
+@RequestMapping(value = "/api/v2/employees", produces = {"application/json", WebConfiguration.SMILE})
 public class EmployeeApiController {
 
     @Qualifier("api-service")
     private final EmployeeApiServiceImpl service;
 
-    public EmployeeApiController(EmployeeApiServiceImpl service) {
+    private final ObjectReader entryReader;
+
+    private final ObjectWriter employeeWriter;
+
+    private final int getAllMaxSize;
+
+    public EmployeeApiController(EmployeeApiServiceImpl service,
+                                 ObjectMapper mapper,
+                                 @Value("${application.get-all.max-size:10000}") int getAllMaxSize) {
         this.service = service;
+        this.getAllMaxSize = getAllMaxSize;
+        this.entryReader = mapper.readerFor(EmployeeEntry.class);
+        this.employeeWriter = mapper.writerFor(Employee.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
 
     @GetMapping
-    ResponseEntity<List<Employee>> getAll() {
+    ResponseEntity<List<Employee>> getAll(
+            @RequestParam(required = false)
+            String fields) {
         try {
-            List<Employee> employees = service.getAll();
+            List<Employee> employees = service.getAll(EmployeeProjection.parse(fields), getAllMaxSize);
             return new ResponseEntity<>(employees, HttpStatus.OK);
-        } catch (IOException e) {
+        } catch (TooManyEmployeesException e) {
+            log.info(e.getMessage());
+            return ResponseEntity.status(HttpStatus.SEE_OTHER)
+                    .location(EmployeeExportBody.jsonArrayLocation(fields))
+                    .build();
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Employees can't be read", e);
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    @GetMapping(path = "/export", produces = {EmployeeExportBody.NDJSON, MediaType.APPLICATION_JSON_VALUE})
+    ResponseEntity<StreamingResponseBody> export(
+            @RequestParam(defaultValue = "ndjson")
+            String format,
+            @RequestParam(name = "page_size", defaultValue = "1000")
+            int pageSize,
+            @RequestParam(required = false)
+            String fields) {
+        // Checked before streaming starts, a failed page can no longer change the status
+        if (pageSize < 1 || pageSize > EmployeeExportBody.MAX_PAGE_SIZE) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        EmployeeProjection projection;
+        try {
+            projection = EmployeeProjection.parse(fields);
+        } catch (IllegalArgumentException e) {
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
+        boolean jsonArray = "json".equals(format);
+        MediaType contentType = jsonArray ? MediaType.APPLICATION_JSON : MediaType.parseMediaType(EmployeeExportBody.NDJSON);
+        StreamingResponseBody body = new EmployeeExportBody(employeeWriter, service, pageSize, projection, jsonArray);
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .body(body);
     }
 
     @GetMapping("/{id}")
-    ResponseEntity<Employee> getById(
+    CompletableFuture<ResponseEntity<Employee>> getById(
             @PathVariable
-            String id) throws IOException {
-        Optional<Employee> employee = service.getById(id);
-        return employee.map(value -> new ResponseEntity<>(value, HttpStatus.OK))
-                .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+            String id,
+            @RequestParam(required = false)
+            String routing) {
+        return service.getByIdAsync(id, routing)
+                .thenApply(employee -> employee.map(value -> new ResponseEntity<>(value, HttpStatus.OK))
+                        .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND)));
+    }
+
+    @PostMapping("/_mget")
+    ResponseEntity<List<EmployeeLookup>> getByIds(
+            @RequestBody
+            EmployeeIds request,
+            @RequestParam(required = false)
+            String fields) {
+        if (request.ids() == null || request.ids().isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        try {
+            List<EmployeeLookup> employees = service.getByIds(request.ids(), EmployeeProjection.parse(fields));
+            return new ResponseEntity<>(employees, HttpStatus.OK);
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Employees can't be read by ids", e);
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
     }
 
     @PutMapping("/{id}")
-    ResponseEntity<Void> createWithId(
+    CompletableFuture<ResponseEntity<Void>> createWithId(
             @RequestBody
             Employee employee,
             @PathVariable
             String id) {
-        try {
-            service.createWithId(employee, id);
-            return new ResponseEntity<>(HttpStatus.CREATED);
-        } catch (IOException e) {
-            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
-        }
+        return service.createWithIdAsync(employee, id)
+                .thenApply(created -> new ResponseEntity<Void>(HttpStatus.CREATED))
+                .exceptionally(e -> {
+                    OverloadExceptionHandler.rethrowIfOverloaded(e);
+                    log.warn("Employee can't be created: " + id, e);
+                    return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+                });
+    }
+
+    @PatchMapping("/{id}")
+    CompletableFuture<ResponseEntity<UpdateResult>> update(
+            @RequestBody
+            EmployeePatch patch,
+            @PathVariable
+            String id,
+            @RequestParam(required = false)
+            String routing) {
+        return service.updateAsync(id, routing, patch)
+                .thenApply(result -> result.map(value -> new ResponseEntity<>(value, HttpStatus.OK))
+                        .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND)))
+                .exceptionally(e -> {
+                    OverloadExceptionHandler.rethrowIfOverloaded(e);
+                    if (Futures.unwrap(e) instanceof IllegalStateException) {
+                        log.warn("Employee was updated concurrently: " + id);
+                        return new ResponseEntity<>(HttpStatus.CONFLICT);
+                    }
+                    log.warn("Employee can't be updated: " + id, e);
+                    return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+                });
     }
 
     @DeleteMapping("/{id}")
-    ResponseEntity<Void> deleteById(
+    CompletableFuture<ResponseEntity<Void>> deleteById(
             @PathVariable
-            String id) {
+            String id,
+            @RequestParam(required = false)
+            String routing) {
+        return service.deleteByIdAsync(id, routing)
+                .thenApply(deleted -> new ResponseEntity<Void>(HttpStatus.NO_CONTENT))
+                .exceptionally(e -> {
+                    OverloadExceptionHandler.rethrowIfOverloaded(e);
+                    log.warn("Employee can't be deleted: " + id, e);
+                    return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+                });
+    }
+
+    @PostMapping(path = "/_bulk", consumes = {"application/x-ndjson", "application/json"})
+    ResponseEntity<BulkResult> bulkCreate(
+            InputStream body,
+            @RequestParam(name = "initial_load", defaultValue = "false")
+            boolean initialLoad) {
         try {
-            service.deleteById(id);
-            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
-        } catch (IOException e) {
+            MappingIterator<EmployeeEntry> entries = entryReader.readValues(body);
+            BulkResult result = initialLoad ? service.bulkCreate(entries) : service.bulkIndex(entries);
+            return new ResponseEntity<>(result, HttpStatus.OK);
+        } catch (IOException | RuntimeJsonMappingException | IllegalArgumentException e) {
+            log.warn("Bulk request failed", e);
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
     }
 
     @PostMapping("/search")
-    ResponseEntity<List<Employee>> search(
+    CompletableFuture<ResponseEntity<List<Employee>>> search(
             @RequestParam
-            MultiValueMap<String, String> params) throws IOException {
-        List<Employee> employees = service.search(params);
-        return new ResponseEntity<>(employees, HttpStatus.OK);
+            MultiValueMap<String, String> params) {
+        return service.searchAsync(params)
+                .thenApply(employees -> new ResponseEntity<>(employees, HttpStatus.OK))
+                .exceptionally(e -> {
+                    OverloadExceptionHandler.rethrowIfOverloaded(e);
+                    log.warn("Search failed", e);
+                    return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+                });
     }
 
-    @PostMapping("/agg")
-    ResponseEntity<String> aggregation(
+    @PostMapping("/search/page")
+    ResponseEntity<EmployeePage> searchPage(
             @RequestParam
-            Map<String, String> params) {
+            MultiValueMap<String, String> params) {
         try {
-            String response = service.aggregate(params);
-            return new ResponseEntity<>(response, HttpStatus.OK);
-        } catch (IOException e) {
+            EmployeePage page = service.searchPage(params);
+            return new ResponseEntity<>(page, HttpStatus.OK);
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Search page failed", e);
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
     }
 
+    @PostMapping("/search/summary")
+    CompletableFuture<ResponseEntity<List<EmployeeSummary>>> searchSummaries(
+            @RequestParam
+            MultiValueMap<String, String> params) {
+        return service.searchSummariesAsync(params)
+                .thenApply(summaries -> new ResponseEntity<>(summaries, HttpStatus.OK))
+                .exceptionally(e -> {
+                    OverloadExceptionHandler.rethrowIfOverloaded(e);
+                    log.warn("Summary search failed", e);
+                    return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+                });
+    }
+
+    @GetMapping("/_suggest")
+    CompletableFuture<ResponseEntity<List<EmployeeSummary>>> suggest(
+            @RequestParam
+            String prefix,
+            @RequestParam(required = false)
+            Integer size) {
+        return service.suggestAsync(prefix, size)
+                .thenApply(suggestions -> new ResponseEntity<>(suggestions, HttpStatus.OK))
+                .exceptionally(e -> {
+                    OverloadExceptionHandler.rethrowIfOverloaded(e);
+                    log.warn("Suggestions failed for " + prefix, e);
+                    return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+                });
+    }
+
+    @PostMapping("/agg")
+    CompletableFuture<ResponseEntity<List<AggregationBucket>>> aggregation(
+            @RequestParam
+            Map<String, String> params) {
+        return service.aggregateAsync(params)
+                .thenApply(buckets -> new ResponseEntity<>(buckets, HttpStatus.OK))
+                .exceptionally(e -> {
+                    OverloadExceptionHandler.rethrowIfOverloaded(e);
+                    log.warn("Aggregation failed", e);
+                    return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+                });
+    }
+
 }
@@ -1,17 +1,22 @@
 package com.epam.elasticsearch.controller;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import org.elasticsearch.client.ResponseException;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
@@ -19,86 +24,289 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.epam.elasticsearch.configuration.WebConfiguration;
+import com.epam.elasticsearch.dto.AggregationBucket;
+import com.epam.elasticsearch.dto.BulkResult;
 import com.epam.elasticsearch.dto.Employee;
+import com.epam.elasticsearch.dto.EmployeeEntry;
+import com.epam.elasticsearch.dto.EmployeeIds;
+import com.epam.elasticsearch.dto.EmployeeLookup;
+import com.epam.elasticsearch.dto.EmployeePage;
+import com.epam.elasticsearch.dto.EmployeePatch;
+import com.epam.elasticsearch.dto.EmployeeSummary;
+import com.epam.elasticsearch.dto.UpdateResult;
+import com.epam.elasticsearch.service.AsyncEmployeeService;
+import com.epam.elasticsearch.service.EmployeeProjection;
 import com.epam.elasticsearch.service.EmployeeService;
+import com.epam.elasticsearch.service.Futures;
+import com.epam.elasticsearch.service.TooManyEmployeesException;
+import com.epam.elasticsearch.service.WriteBehindQueue;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import lombok.extern.slf4j.Slf4j;
 
 @RestController
-@RequestMapping(path = "/api/v1/employees", produces = "application/json")
+@Slf4j
+@RequestMapping(path = "/api/v1/employees", produces = {"application/json", WebConfiguration.SMILE})
 public class EmployeeController {
 
     @Qualifier("service")
     private final EmployeeService service;
 
-    public EmployeeController(EmployeeService service) {
+    @Qualifier("service")
+    private final AsyncEmployeeService asyncService;
+
+    private final WriteBehindQueue writeBehind;
+
+    private final ObjectReader entryReader;
+
+    private final ObjectWriter employeeWriter;
+
+    private final int getAllMaxSize;
+
+    public EmployeeController(@Qualifier("service") EmployeeService service,
+                              @Qualifier("service") AsyncEmployeeService asyncService,
+                              WriteBehindQueue writeBehind,
+                              ObjectMapper mapper,
+                              @Value("${application.get-all.max-size:10000}") int getAllMaxSize) {
         this.service = service;
+        this.getAllMaxSize = getAllMaxSize;
+        this.asyncService = asyncService;
+        this.writeBehind = writeBehind;
+        this.entryReader = mapper.readerFor(EmployeeEntry.class);
+        this.employeeWriter = mapper.writerFor(Employee.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
 
     @GetMapping
-    public ResponseEntity<List<Employee>> getAll() {
+    public ResponseEntity<List<Employee>> getAll(
+            @RequestParam(required = false)
+            String fields) {
         try {
-            List<Employee> employees = service.getAll();
+            List<Employee> employees = service.getAll(EmployeeProjection.parse(fields), getAllMaxSize);
             return new ResponseEntity<>(employees, HttpStatus.OK);
-        } catch (IOException e) {
+        } catch (TooManyEmployeesException e) {
+            log.info(e.getMessage());
+            return ResponseEntity.status(HttpStatus.SEE_OTHER)
+                    .location(EmployeeExportBody.jsonArrayLocation(fields))
+                    .build();
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Employees can't be read", e);
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    @GetMapping(path = "/export", produces = {EmployeeExportBody.NDJSON, MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestParam(defaultValue = "ndjson")
+            String format,
+            @RequestParam(name = "page_size", defaultValue = "1000")
+            int pageSize,
+            @RequestParam(required = false)
+            String fields) {
+        // Checked before streaming starts, a failed page can no longer change the status
+        if (pageSize < 1 || pageSize > EmployeeExportBody.MAX_PAGE_SIZE) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        EmployeeProjection projection;
+        try {
+            projection = EmployeeProjection.parse(fields);
+        } catch (IllegalArgumentException e) {
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
+        boolean jsonArray = "json".equals(format);
+        MediaType contentType = jsonArray ? MediaType.APPLICATION_JSON : MediaType.parseMediaType(EmployeeExportBody.NDJSON);
+        StreamingResponseBody body = new EmployeeExportBody(employeeWriter, service, pageSize, projection, jsonArray);
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .body(body);
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Employee> getById(
+    public CompletableFuture<ResponseEntity<Employee>> getById(
             @PathVariable
-            String id) throws IOException {
-        Optional<Employee> employee = service.getById(id);
-        return employee.map(value -> new ResponseEntity<>(value, HttpStatus.OK))
-                .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND));
+            String id,
+            @RequestParam(required = false)
+            String routing) {
+        Optional<Employee> pending = writeBehind.pending(id);
+        if (pending.isPresent()) {
+            return CompletableFuture.completedFuture(new ResponseEntity<>(pending.get(), HttpStatus.OK));
+        }
+        return asyncService.getByIdAsync(id, routing)
+                .thenApply(employee -> employee.map(value -> new ResponseEntity<>(value, HttpStatus.OK))
+                        .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND)));
+    }
+
+    @PostMapping("/_mget")
+    public ResponseEntity<List<EmployeeLookup>> getByIds(
+            @RequestBody
+            EmployeeIds request,
+            @RequestParam(required = false)
+            String fields) {
+        if (request.ids() == null || request.ids().isEmpty()) {
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
+        try {
+            List<EmployeeLookup> employees = service.getByIds(request.ids(), EmployeeProjection.parse(fields));
+            return new ResponseEntity<>(employees, HttpStatus.OK);
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Employees can't be read by ids", e);
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        }
     }
 
     @PutMapping("/{id}")
-    public ResponseEntity<Void> createWithId(
+    public CompletableFuture<ResponseEntity<Void>> createWithId(
             @RequestBody
             Employee employee,
             @PathVariable
-            String id) throws IOException {
-        service.createWithId(employee, id);
-        return new ResponseEntity<>(HttpStatus.CREATED);
+            String id) {
+        if (writeBehind.isEnabled()) {
+            try {
+                writeBehind.enqueue(id, employee);
+                return CompletableFuture.completedFuture(new ResponseEntity<>(HttpStatus.ACCEPTED));
+            } catch (IOException e) {
+                log.warn("Employee can't be queued: " + id, e);
+                return CompletableFuture.completedFuture(new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE));
+            }
+        }
+        return asyncService.createWithIdAsync(employee, id)
+                .thenApply(created -> new ResponseEntity<Void>(HttpStatus.CREATED));
+    }
+
+    @PatchMapping("/{id}")
+    public CompletableFuture<ResponseEntity<UpdateResult>> update(
+            @RequestBody
+            EmployeePatch patch,
+            @PathVariable
+            String id,
+            @RequestParam(required = false)
+            String routing) {
+        // The queued write would land after the update and overwrite it
+        if (writeBehind.pending(id).isPresent()) {
+            log.warn("Employee has a queued write, update it once flushed: " + id);
+            return CompletableFuture.completedFuture(new ResponseEntity<>(HttpStatus.CONFLICT));
+        }
+        return asyncService.updateAsync(id, routing, patch)
+                .thenApply(result -> result.map(value -> new ResponseEntity<>(value, HttpStatus.OK))
+                        .orElseGet(() -> new ResponseEntity<>(HttpStatus.NOT_FOUND)))
+                .exceptionally(e -> {
+                    OverloadExceptionHandler.rethrowIfOverloaded(e);
+                    if (Futures.unwrap(e) instanceof IllegalStateException) {
+                        log.warn("Employee was updated concurrently: " + id);
+                        return new ResponseEntity<>(HttpStatus.CONFLICT);
+                    }
+                    log.warn("Employee can't be updated: " + id, e);
+                    return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+                });
     }
 
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteById(
+    public CompletableFuture<ResponseEntity<Void>> deleteById(
             @PathVariable
-            String id) {
+            String id,
+            @RequestParam(required = false)
+            String routing) {
+        return writeBehind.discard(id)
+                .thenCompose(discarded -> asyncService.deleteByIdAsync(id, routing))
+                .thenApply(deleted -> new ResponseEntity<Void>(HttpStatus.NO_CONTENT))
+                .exceptionally(e -> {
+                    OverloadExceptionHandler.rethrowIfOverloaded(e);
+                    if (Futures.unwrap(e) instanceof ResponseException) {
+                        return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+                    }
+                    log.warn("Employee can't be deleted: " + id, e);
+                    return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+                });
+    }
+
+    @PostMapping(path = "/_bulk", consumes = {"application/x-ndjson", "application/json"})
+    public ResponseEntity<BulkResult> bulkCreate(
+            InputStream body,
+            @RequestParam(name = "initial_load", defaultValue = "false")
+            boolean initialLoad) {
         try {
-            service.deleteById(id);
-            return new ResponseEntity<>(HttpStatus.NO_CONTENT);
-        } catch (ResponseException e) {
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
-        } catch (IOException e) {
+            MappingIterator<EmployeeEntry> entries = entryReader.readValues(body);
+            BulkResult result = initialLoad ? service.bulkCreate(entries) : service.bulkIndex(entries);
+            return new ResponseEntity<>(result, HttpStatus.OK);
+        } catch (IOException | RuntimeJsonMappingException | IllegalArgumentException e) {
+            log.warn("Bulk request failed", e);
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
     }
 
     @PostMapping("/search")
-    public ResponseEntity<List<Employee>> search(
+    public CompletableFuture<ResponseEntity<List<Employee>>> search(
+            @RequestParam
+            MultiValueMap<String, String> params) {
+        return asyncService.searchAsync(params)
+                .thenApply(employees -> new ResponseEntity<>(employees, HttpStatus.OK))
+                .exceptionally(e -> {
+                    OverloadExceptionHandler.rethrowIfOverloaded(e);
+                    log.warn("Search failed", e);
+                    return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+                });
+    }
+
+    @PostMapping("/search/page")
+    public ResponseEntity<EmployeePage> searchPage(
             @RequestParam
             MultiValueMap<String, String> params) {
         try {
-            List<Employee> employees = service.search(params);
-            return new ResponseEntity<>(employees, HttpStatus.OK);
+            EmployeePage page = service.searchPage(params);
+            return new ResponseEntity<>(page, HttpStatus.OK);
         } catch (IOException | IllegalArgumentException e) {
+            log.warn("Search page failed", e);
             return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
         }
     }
 
+    @PostMapping("/search/summary")
+    public CompletableFuture<ResponseEntity<List<EmployeeSummary>>> searchSummaries(
+            @RequestParam
+            MultiValueMap<String, String> params) {
+        return asyncService.searchSummariesAsync(params)
+                .thenApply(summaries -> new ResponseEntity<>(summaries, HttpStatus.OK))
+                .exceptionally(e -> {
+                    OverloadExceptionHandler.rethrowIfOverloaded(e);
+                    log.warn("Summary search failed", e);
+                    return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+                });
+    }
+
+    @GetMapping("/_suggest")
+    public CompletableFuture<ResponseEntity<List<EmployeeSummary>>> suggest(
+            @RequestParam
+            String prefix,
+            @RequestParam(required = false)
+            Integer size) {
+        return asyncService.suggestAsync(prefix, size)
+                .thenApply(suggestions -> new ResponseEntity<>(suggestions, HttpStatus.OK))
+                .exceptionally(e -> {
+                    OverloadExceptionHandler.rethrowIfOverloaded(e);
+                    log.warn("Suggestions failed for " + prefix, e);
+                    return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+                });
+    }
+
     @PostMapping("/agg")
-    public ResponseEntity<String> aggregation(
+    public CompletableFuture<ResponseEntity<List<AggregationBucket>>> aggregation(
             @RequestParam
             Map<String, String> params) {
-        try {
-            String response = service.aggregate(params);
-            return new ResponseEntity<>(response, HttpStatus.OK);
-        } catch (IOException e) {
-            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
-        }
+        return asyncService.aggregateAsync(params)
+                .thenApply(buckets -> new ResponseEntity<>(buckets, HttpStatus.OK))
+                .exceptionally(e -> {
+                    OverloadExceptionHandler.rethrowIfOverloaded(e);
+                    log.warn("Aggregation failed", e);
+                    return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+                });
     }
 
 }
@@ -0,0 +1,87 @@
+package com.epam.elasticsearch.controller;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Optional;
+
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import com.epam.elasticsearch.dto.Employee;
+import com.epam.elasticsearch.service.EmployeeProjection;
+import com.epam.elasticsearch.service.EmployeeService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Writes every employee page to the client as soon as Elasticsearch returns it,
+ * either as NDJSON or as a single JSON array.
+ */
+class EmployeeExportBody implements StreamingResponseBody {
+
+    static final String NDJSON = "application/x-ndjson";
+
+    /**
+     * Largest page a search returns, the index's default max_result_window.
+     */
+    static final int MAX_PAGE_SIZE = 10_000;
+
+    private final ObjectWriter writer;
+
+    private final EmployeeService service;
+
+    private final int pageSize;
+
+    private final EmployeeProjection projection;
+
+    private final boolean jsonArray;
+
+    EmployeeExportBody(ObjectWriter writer, EmployeeService service, int pageSize,
+                       EmployeeProjection projection, boolean jsonArray) {
+        this.writer = writer;
+        this.service = service;
+        this.pageSize = pageSize;
+        this.projection = projection;
+        this.jsonArray = jsonArray;
+    }
+
+    /**
+     * Export of the collection the current request reads, as one JSON array like getAll returns.
+     */
+    static URI jsonArrayLocation(String fields) {
+        return ServletUriComponentsBuilder.fromCurrentRequestUri()
+                .path("/export")
+                .queryParam("format", "json")
+                .queryParamIfPresent("fields", Optional.ofNullable(fields))
+                .build()
+                .toUri();
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        try (JsonGenerator generator = writer.createGenerator(outputStream)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            if (jsonArray) {
+                generator.writeStartArray();
+            }
+            generator.flush();
+
+            service.exportAll(pageSize, projection, employees -> {
+                for (Employee employee : employees) {
+                    writer.writeValue(generator, employee);
+                    if (!jsonArray) {
+                        generator.writeRaw('\n');
+                    }
+                }
+                generator.flush();
+            });
+
+            if (jsonArray) {
+                generator.writeEndArray();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.epam.elasticsearch.controller;
+
+import java.io.IOException;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.epam.elasticsearch.dto.ReindexResult;
+import com.epam.elasticsearch.service.EmployeeIndexManager;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+@RestController
+@RequiredArgsConstructor
+@Slf4j
+@RequestMapping(path = "/api/v1/index", produces = "application/json")
+public class IndexController {
+
+    private final EmployeeIndexManager indexManager;
+
+    @PostMapping("/reindex")
+    public ResponseEntity<ReindexResult> reindex() {
+        try {
+            return new ResponseEntity<>(indexManager.reindex(), HttpStatus.OK);
+        } catch (IOException e) {
+            log.warn("Employees can't be reindexed", e);
+            return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+        } catch (IllegalStateException e) {
+            log.warn("Employees can't be reindexed", e);
+            return new ResponseEntity<>(HttpStatus.CONFLICT);
+        }
+    }
+
+}
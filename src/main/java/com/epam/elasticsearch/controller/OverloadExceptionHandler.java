@@ -0,0 +1,34 @@
+package com.epam.elasticsearch.controller;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import com.epam.elasticsearch.service.ElasticsearchOverloadedException;
+import com.epam.elasticsearch.service.Futures;
+
+/**
+ * Turns shed requests into 503 with Retry-After so clients back off instead of retrying at once.
+ */
+@RestControllerAdvice
+class OverloadExceptionHandler {
+
+    @ExceptionHandler(ElasticsearchOverloadedException.class)
+    ResponseEntity<Void> overloaded(ElasticsearchOverloadedException e) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfter().toSeconds())));
+        return new ResponseEntity<>(headers, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    /**
+     * Lets exceptionally handlers that map failures to 400 pass overload through to this handler.
+     */
+    static void rethrowIfOverloaded(Throwable e) {
+        if (Futures.unwrap(e) instanceof ElasticsearchOverloadedException overloaded) {
+            throw overloaded;
+        }
+    }
+
+}
@@ -1,4 +1,8 @@
 package com.epam.elasticsearch.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// A partial update names only the address fields it changes
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public record Address(String country, String town) {
 }
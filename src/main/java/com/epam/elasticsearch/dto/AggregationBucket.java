@@ -0,0 +1,19 @@
+package com.epam.elasticsearch.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+import java.util.List;
+
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+@JsonPropertyOrder({"key", "doc_count"})
+public record AggregationBucket(String key,
+                                @JsonProperty("doc_count")
+                                long docCount,
+                                Double min,
+                                Double max,
+                                Double avg,
+                                Double sum,
+                                List<AggregationBucket> buckets) {
+}
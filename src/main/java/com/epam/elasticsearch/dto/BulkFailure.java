@@ -0,0 +1,4 @@
+package com.epam.elasticsearch.dto;
+
+public record BulkFailure(String id, int status, String reason) {
+}
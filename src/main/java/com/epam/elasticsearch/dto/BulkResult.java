@@ -0,0 +1,6 @@
+package com.epam.elasticsearch.dto;
+
+import java.util.List;
+
+public record BulkResult(int total, int indexed, int retried, List<BulkFailure> failures) {
+}
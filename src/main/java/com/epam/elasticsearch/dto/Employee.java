@@ -1,5 +1,6 @@
 package com.epam.elasticsearch.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import com.fasterxml.jackson.datatype.jsr310.deser.LocalDateDeserializer;
@@ -8,6 +9,8 @@ import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateSerializer;
 import java.time.LocalDate;
 import java.util.List;
 
+// Fields left out by a projection are omitted rather than written as null
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public record Employee(String name,
                        @JsonDeserialize(using = LocalDateDeserializer.class)
                        @JsonSerialize(using = LocalDateSerializer.class)
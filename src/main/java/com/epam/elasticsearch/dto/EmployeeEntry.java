@@ -0,0 +1,4 @@
+package com.epam.elasticsearch.dto;
+
+public record EmployeeEntry(String id, Employee employee) {
+}
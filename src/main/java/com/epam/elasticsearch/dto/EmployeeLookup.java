@@ -0,0 +1,9 @@
+package com.epam.elasticsearch.dto;
+
+public record EmployeeLookup(String id, boolean found, Employee employee) {
+
+    public static EmployeeLookup missing(String id) {
+        return new EmployeeLookup(id, false, null);
+    }
+
+}
@@ -0,0 +1,17 @@
+package com.epam.elasticsearch.dto;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One page of search results. total is only present when hits were counted,
+ * total_relation is gte when counting stopped early. cursor is absent after the last page.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record EmployeePage(List<Employee> employees,
+                           Long total,
+                           @JsonProperty("total_relation") String totalRelation,
+                           String cursor) {
+}
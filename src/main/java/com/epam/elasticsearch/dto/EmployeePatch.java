@@ -0,0 +1,16 @@
+package com.epam.elasticsearch.dto;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Partial update of an employee: the fields given in doc, skills added or removed without
+ * re-sending the list, and optionally the seq_no and primary_term of the version it is based on.
+ */
+public record EmployeePatch(Employee doc,
+                            @JsonProperty("add_skills") List<String> addSkills,
+                            @JsonProperty("remove_skills") List<String> removeSkills,
+                            @JsonProperty("if_seq_no") Long ifSeqNo,
+                            @JsonProperty("if_primary_term") Long ifPrimaryTerm) {
+}
@@ -0,0 +1,7 @@
+package com.epam.elasticsearch.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record EmployeeSummary(String id, String name, String email, String town) {
+}
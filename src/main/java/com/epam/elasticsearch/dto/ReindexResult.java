@@ -0,0 +1,9 @@
+package com.epam.elasticsearch.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public record ReindexResult(String alias,
+                            @JsonProperty("previous_index") String previousIndex,
+                            @JsonProperty("current_index") String currentIndex,
+                            long copied) {
+}
@@ -0,0 +1,13 @@
+package com.epam.elasticsearch.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Outcome of a partial update, result is updated or noop. seq_no and primary_term
+ * identify the version written and guard the next update of the same employee.
+ */
+public record UpdateResult(String id,
+                           String result,
+                           @JsonProperty("seq_no") long seqNo,
+                           @JsonProperty("primary_term") long primaryTerm) {
+}
@@ -0,0 +1,121 @@
+package com.epam.elasticsearch.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.epam.elasticsearch.dto.AggregationBucket;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Aggregation results by request shape, served for at most the staleness window
+ * and dropped as soon as this instance writes to the index.
+ * Also carries the request_cache and preference settings so the shard request cache
+ * of the same copies keeps serving repeated aggregations.
+ */
+@Component
+public class AggregationCache {
+
+    private static final int BUCKET_WEIGHT = 96;
+
+    private final boolean enabled;
+
+    private final boolean requestCache;
+
+    private final String preference;
+
+    private final AsyncCache<EmployeeAggregation, List<AggregationBucket>> cache;
+
+    public AggregationCache(MeterRegistry registry,
+                            @Value("${application.cache.aggregation.enabled:true}") boolean enabled,
+                            @Value("${application.cache.aggregation.max-bytes:4194304}") long maxBytes,
+                            @Value("${application.cache.aggregation.staleness:10s}") Duration staleness,
+                            @Value("${application.elasticsearch.aggregation.request-cache:true}") boolean requestCache,
+                            @Value("${application.elasticsearch.aggregation.preference:}") String preference) {
+        this.enabled = enabled;
+        this.requestCache = requestCache;
+        this.preference = preference;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((EmployeeAggregation aggregation, List<AggregationBucket> buckets) -> weigh(buckets))
+                .expireAfterWrite(staleness)
+                .executor(Runnable::run)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(registry, cache.synchronous(), "aggregations");
+    }
+
+    public List<AggregationBucket> get(EmployeeAggregation aggregation, Loader loader) throws IOException {
+        if (!enabled) {
+            return loader.load(aggregation);
+        }
+        try {
+            return cache.get(aggregation, key -> {
+                try {
+                    return loader.load(key);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException unchecked) {
+                throw unchecked.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public CompletableFuture<List<AggregationBucket>> getAsync(
+            EmployeeAggregation aggregation,
+            Function<EmployeeAggregation, CompletableFuture<List<AggregationBucket>>> loader) {
+        if (!enabled) {
+            return loader.apply(aggregation);
+        }
+        return cache.get(aggregation, (key, executor) -> loader.apply(key));
+    }
+
+    /**
+     * Any write may move every bucket, in-flight loads are discarded as well.
+     */
+    public void invalidate() {
+        cache.synchronous().invalidateAll();
+    }
+
+    public boolean requestCache() {
+        return requestCache;
+    }
+
+    public String preference() {
+        return preference;
+    }
+
+    private static int weigh(List<AggregationBucket> buckets) {
+        int weight = 0;
+        for (AggregationBucket bucket : buckets) {
+            weight += BUCKET_WEIGHT + 2 * bucket.key().length();
+            if (bucket.buckets() != null) {
+                weight += weigh(bucket.buckets());
+            }
+        }
+        return weight;
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+
+        List<AggregationBucket> load(EmployeeAggregation aggregation) throws IOException;
+
+    }
+
+}
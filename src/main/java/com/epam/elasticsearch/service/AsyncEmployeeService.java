@@ -0,0 +1,33 @@
+package com.epam.elasticsearch.service;
+
+import com.epam.elasticsearch.dto.AggregationBucket;
+import com.epam.elasticsearch.dto.Employee;
+import com.epam.elasticsearch.dto.EmployeePatch;
+import com.epam.elasticsearch.dto.EmployeeSummary;
+import com.epam.elasticsearch.dto.UpdateResult;
+import org.springframework.util.MultiValueMap;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+public interface AsyncEmployeeService {
+
+    CompletableFuture<Optional<Employee>> getByIdAsync(String id, String routing);
+
+    CompletableFuture<Void> createWithIdAsync(Employee employee, String id);
+
+    CompletableFuture<Optional<UpdateResult>> updateAsync(String id, String routing, EmployeePatch patch);
+
+    CompletableFuture<Void> deleteByIdAsync(String id, String routing);
+
+    CompletableFuture<List<Employee>> searchAsync(MultiValueMap<String, String> params);
+
+    CompletableFuture<List<EmployeeSummary>> searchSummariesAsync(MultiValueMap<String, String> params);
+
+    CompletableFuture<List<EmployeeSummary>> suggestAsync(String prefix, Integer size);
+
+    CompletableFuture<List<AggregationBucket>> aggregateAsync(Map<String, String> params);
+
+}
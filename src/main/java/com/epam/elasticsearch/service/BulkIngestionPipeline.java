@@ -0,0 +1,277 @@
+package com.epam.elasticsearch.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.epam.elasticsearch.dto.BulkFailure;
+import com.epam.elasticsearch.dto.BulkResult;
+import com.epam.elasticsearch.dto.EmployeeEntry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Splits a stream of employees into _bulk batches bounded by document count and size,
+ * keeps several batches in flight and retries the items rejected with 429. Bad entries don't fail
+ * the ingestion, they are reported next to the items Elasticsearch rejected, and a body that stops
+ * parsing ends it with what was read before.
+ */
+@Component
+@Slf4j
+public class BulkIngestionPipeline {
+
+    private static final int BAD_REQUEST = 400;
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final ObjectMapper mapper;
+
+    private final EmployeeRouting routing;
+
+    private final int maxDocuments;
+
+    private final long maxBytes;
+
+    private final int concurrency;
+
+    private final int maxRetries;
+
+    private final long backoffMillis;
+
+    private final ExecutorService executor;
+
+    public BulkIngestionPipeline(ObjectMapper mapper,
+                                 EmployeeRouting routing,
+                                 @Value("${application.elasticsearch.bulk.max-documents:1000}") int maxDocuments,
+                                 @Value("${application.elasticsearch.bulk.max-bytes:5242880}") long maxBytes,
+                                 @Value("${application.elasticsearch.bulk.concurrency:4}") int concurrency,
+                                 @Value("${application.elasticsearch.bulk.max-retries:3}") int maxRetries,
+                                 @Value("${application.elasticsearch.bulk.backoff-millis:200}") long backoffMillis) {
+        this.mapper = mapper;
+        this.routing = routing;
+        this.maxDocuments = maxDocuments;
+        this.maxBytes = maxBytes;
+        this.concurrency = concurrency;
+        this.maxRetries = maxRetries;
+        this.backoffMillis = backoffMillis;
+        this.executor = Executors.newFixedThreadPool(concurrency, new CustomizableThreadFactory("es-bulk-"));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    public BulkResult ingest(Iterator<EmployeeEntry> entries, Sender sender) throws IOException {
+        Semaphore inFlight = new Semaphore(concurrency);
+        List<Future<BatchOutcome>> pending = new ArrayList<>();
+        List<BulkFailure> failures = new ArrayList<>();
+        List<Document> documents = new ArrayList<>();
+        long bytes = 0;
+        int total = 0;
+
+        while (true) {
+            EmployeeEntry entry;
+            try {
+                if (!entries.hasNext()) {
+                    break;
+                }
+                entry = entries.next();
+            } catch (RuntimeException e) {
+                // The parser can't find the next entry after a syntax error, the batches read so far still go out
+                log.warn("Bulk body unreadable after {} entries", total, e);
+                failures.add(new BulkFailure(null, BAD_REQUEST, "Unreadable entry, the rest of the body was skipped: "
+                        + e.getMessage()));
+                total++;
+                break;
+            }
+            total++;
+            if (entry.id() == null || entry.id().isEmpty() || entry.employee() == null) {
+                log.warn("Bulk entry {} without id or employee", total);
+                failures.add(new BulkFailure(entry.id(), BAD_REQUEST, "Entry without id or employee"));
+                continue;
+            }
+            Document document = new Document(entry, toBulkLines(entry));
+            if (!documents.isEmpty() && bytes + document.lines().length > maxBytes) {
+                pending.add(submit(documents, sender, inFlight));
+                documents = new ArrayList<>();
+                bytes = 0;
+            }
+            documents.add(document);
+            bytes += document.lines().length;
+            if (documents.size() >= maxDocuments) {
+                pending.add(submit(documents, sender, inFlight));
+                documents = new ArrayList<>();
+                bytes = 0;
+            }
+        }
+        if (!documents.isEmpty()) {
+            pending.add(submit(documents, sender, inFlight));
+        }
+
+        int retried = 0;
+        for (Future<BatchOutcome> future : pending) {
+            BatchOutcome outcome = await(future);
+            retried += outcome.retried();
+            failures.addAll(outcome.failures());
+        }
+        return new BulkResult(total, total - failures.size(), retried, failures);
+    }
+
+    private Future<BatchOutcome> submit(List<Document> documents, Sender sender, Semaphore inFlight)
+            throws IOException {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Bulk ingestion interrupted");
+        }
+        try {
+            return executor.submit(() -> {
+                try {
+                    return send(documents, sender);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            throw new IOException("Bulk ingestion is shutting down", e);
+        }
+    }
+
+    private BatchOutcome send(List<Document> documents, Sender sender) throws InterruptedException {
+        List<Document> batch = documents;
+        List<BulkFailure> failures = new ArrayList<>();
+        int retried = 0;
+        for (int attempt = 0; ; attempt++) {
+            List<Document> rejected = new ArrayList<>();
+            for (ItemFailure failure : sendOnce(new Batch(batch), sender)) {
+                Document document = batch.get(failure.position());
+                if (failure.status() == TOO_MANY_REQUESTS && attempt < maxRetries) {
+                    rejected.add(document);
+                } else {
+                    failures.add(new BulkFailure(document.entry().id(), failure.status(), failure.reason()));
+                }
+            }
+            if (rejected.isEmpty()) {
+                return new BatchOutcome(retried, failures);
+            }
+            retried += rejected.size();
+            log.warn("Retrying {} bulk items rejected with 429, attempt {}", rejected.size(), attempt + 1);
+            Thread.sleep((backoffMillis << attempt) + ThreadLocalRandom.current().nextLong(backoffMillis + 1));
+            batch = rejected;
+        }
+    }
+
+    private List<ItemFailure> sendOnce(Batch batch, Sender sender) {
+        try {
+            return sender.send(batch);
+        } catch (Exception e) {
+            int status = ElasticsearchLimiter.statusOf(e);
+            log.error("Bulk request of {} items failed with status {}", batch.size(), status, e);
+            List<ItemFailure> failures = new ArrayList<>(batch.size());
+            for (int position = 0; position < batch.size(); position++) {
+                failures.add(new ItemFailure(position, status, e.getMessage()));
+            }
+            return failures;
+        }
+    }
+
+    private static BatchOutcome await(Future<BatchOutcome> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Bulk ingestion interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Bulk batch failed", e.getCause());
+        }
+    }
+
+    private byte[] toBulkLines(EmployeeEntry entry) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+        String route = routing.of(entry.employee());
+        mapper.writeValue(out, Map.of("index", route == null
+                ? Map.of("_id", entry.id())
+                : Map.of("_id", entry.id(), "routing", route)));
+        out.write('\n');
+        mapper.writeValue(out, entry.employee());
+        out.write('\n');
+        return out.toByteArray();
+    }
+
+    @FunctionalInterface
+    public interface Sender {
+
+        /**
+         * Sends one batch and returns the items that were not indexed.
+         */
+        List<ItemFailure> send(Batch batch) throws IOException;
+
+    }
+
+    public record ItemFailure(int position, int status, String reason) {
+    }
+
+    public static final class Batch {
+
+        private final List<Document> documents;
+
+        private Batch(List<Document> documents) {
+            this.documents = documents;
+        }
+
+        public int size() {
+            return documents.size();
+        }
+
+        public List<EmployeeEntry> entries() {
+            return documents.stream()
+                    .map(Document::entry)
+                    .toList();
+        }
+
+        /**
+         * NDJSON body of the batch, ready for the _bulk endpoint.
+         */
+        public byte[] payload() {
+            int length = 0;
+            for (Document document : documents) {
+                length += document.lines().length;
+            }
+            byte[] payload = new byte[length];
+            int offset = 0;
+            for (Document document : documents) {
+                System.arraycopy(document.lines(), 0, payload, offset, document.lines().length);
+                offset += document.lines().length;
+            }
+            return payload;
+        }
+
+    }
+
+    private record Document(EmployeeEntry entry, byte[] lines) {
+    }
+
+    private record BatchOutcome(int retried, List<BulkFailure> failures) {
+    }
+
+}
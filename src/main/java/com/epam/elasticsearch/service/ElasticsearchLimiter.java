@@ -0,0 +1,355 @@
+package com.epam.elasticsearch.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.elasticsearch.client.ResponseException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Adaptive concurrency limit in front of Elasticsearch with separate budgets for reads,
+ * writes and aggregations. Each budget grows by 1/limit per response, about one per round trip,
+ * while it is in use and no request is rejected or slow, and shrinks multiplicatively on 429/503,
+ * timeouts and slow responses.
+ * Requests over the limit wait in a bounded queue until a deadline and are shed afterwards,
+ * 429/503 answers are retried with jittered exponential backoff.
+ */
+@Component
+@Slf4j
+public class ElasticsearchLimiter {
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private static final int SERVICE_UNAVAILABLE = 503;
+
+    private static final int INTERNAL_ERROR = 500;
+
+    private static final CompletableFuture<?> CANCELLED = new CompletableFuture<>();
+
+    private final boolean enabled;
+
+    private final double backoffRatio;
+
+    private final long latencyThresholdNanos;
+
+    private final Duration queueTimeout;
+
+    private final int maxQueue;
+
+    private final int maxRetries;
+
+    private final long backoffMillis;
+
+    private final Duration retryAfter;
+
+    private final Map<Budget, Limit> limits = new EnumMap<>(Budget.class);
+
+    public ElasticsearchLimiter(MeterRegistry registry,
+                                @Value("${application.elasticsearch.limiter.enabled:true}") boolean enabled,
+                                @Value("${application.elasticsearch.limiter.read.initial-limit:50}") int readInitial,
+                                @Value("${application.elasticsearch.limiter.read.max-limit:200}") int readMax,
+                                @Value("${application.elasticsearch.limiter.write.initial-limit:20}") int writeInitial,
+                                @Value("${application.elasticsearch.limiter.write.max-limit:100}") int writeMax,
+                                @Value("${application.elasticsearch.limiter.aggregation.initial-limit:8}") int aggregationInitial,
+                                @Value("${application.elasticsearch.limiter.aggregation.max-limit:32}") int aggregationMax,
+                                @Value("${application.elasticsearch.limiter.backoff-ratio:0.9}") double backoffRatio,
+                                @Value("${application.elasticsearch.limiter.latency-threshold:2s}") Duration latencyThreshold,
+                                @Value("${application.elasticsearch.limiter.queue-timeout:1s}") Duration queueTimeout,
+                                @Value("${application.elasticsearch.limiter.max-queue:100}") int maxQueue,
+                                @Value("${application.elasticsearch.limiter.max-retries:2}") int maxRetries,
+                                @Value("${application.elasticsearch.limiter.backoff-millis:100}") long backoffMillis,
+                                @Value("${application.elasticsearch.limiter.retry-after:1s}") Duration retryAfter) {
+        this.enabled = enabled;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+        this.queueTimeout = queueTimeout;
+        this.maxQueue = maxQueue;
+        this.maxRetries = maxRetries;
+        this.backoffMillis = backoffMillis;
+        this.retryAfter = retryAfter;
+        register(registry, Budget.READ, readInitial, readMax);
+        register(registry, Budget.WRITE, writeInitial, writeMax);
+        register(registry, Budget.AGGREGATION, aggregationInitial, aggregationMax);
+    }
+
+    private void register(MeterRegistry registry, Budget budget, int initial, int max) {
+        String name = budget.name().toLowerCase();
+        Counter rejected = Counter.builder("es.limiter.rejected")
+                .description("Requests shed because no permit became free in time or retries ran out")
+                .tag("budget", name)
+                .register(registry);
+        Limit limit = new Limit(budget, initial, max, rejected);
+        limits.put(budget, limit);
+        Gauge.builder("es.limiter.limit", limit, value -> value.limit)
+                .description("Current concurrency limit toward Elasticsearch")
+                .tag("budget", name)
+                .register(registry);
+        Gauge.builder("es.limiter.in.flight", limit, value -> value.inFlight)
+                .description("Requests to Elasticsearch holding a permit")
+                .tag("budget", name)
+                .register(registry);
+        Gauge.builder("es.limiter.queued", limit, value -> value.waiters.size())
+                .description("Requests waiting for a permit")
+                .tag("budget", name)
+                .register(registry);
+    }
+
+    public <T> T execute(Budget budget, Call<T> call) throws IOException {
+        if (!enabled) {
+            return call.call();
+        }
+        Limit limit = limits.get(budget);
+        for (int attempt = 0; ; attempt++) {
+            acquire(limit);
+            long start = System.nanoTime();
+            boolean dropped = false;
+            try {
+                return call.call();
+            } catch (IOException | RuntimeException e) {
+                dropped = isDropped(e);
+                if (!isRetryable(e)) {
+                    throw e;
+                }
+                if (attempt >= maxRetries) {
+                    throw overloaded(limit, "Elasticsearch rejected " + budget + " after " + (attempt + 1) + " attempts", e);
+                }
+            } finally {
+                release(limit, dropped || System.nanoTime() - start > latencyThresholdNanos);
+            }
+            sleep(attempt);
+        }
+    }
+
+    /**
+     * Cancelling the returned future cancels the call in flight, e.g. the losing side of a hedged read.
+     */
+    public <T> CompletableFuture<T> executeAsync(Budget budget, Supplier<CompletableFuture<T>> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        AtomicReference<CompletableFuture<?>> inFlight = new AtomicReference<>();
+        CompletableFuture<T> result = attempt(limits.get(budget), call, 0, inFlight);
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                CompletableFuture<?> current = inFlight.getAndSet(CANCELLED);
+                if (current != null) {
+                    current.cancel(true);
+                }
+            }
+        });
+        return result;
+    }
+
+    private <T> CompletableFuture<T> attempt(Limit limit,
+                                             Supplier<CompletableFuture<T>> call,
+                                             int retry,
+                                             AtomicReference<CompletableFuture<?>> inFlight) {
+        return acquireAsync(limit).thenCompose(permit -> {
+            long start = System.nanoTime();
+            CompletableFuture<T> result;
+            if (inFlight.get() == CANCELLED) {
+                result = CompletableFuture.failedFuture(new CancellationException());
+            } else {
+                try {
+                    result = call.get();
+                } catch (RuntimeException e) {
+                    result = CompletableFuture.failedFuture(e);
+                }
+                // Cancelled while the call was being made
+                if (inFlight.getAndSet(result) == CANCELLED) {
+                    result.cancel(true);
+                }
+            }
+            return result.handle((value, error) -> {
+                Throwable cause = error != null ? Futures.unwrap(error) : null;
+                release(limit, isDropped(cause) || System.nanoTime() - start > latencyThresholdNanos);
+                if (cause == null) {
+                    return CompletableFuture.completedFuture(value);
+                }
+                if (!isRetryable(cause)) {
+                    return CompletableFuture.<T>failedFuture(cause);
+                }
+                if (retry >= maxRetries) {
+                    return CompletableFuture.<T>failedFuture(overloaded(limit,
+                            "Elasticsearch rejected " + limit.budget + " after " + (retry + 1) + " attempts", cause));
+                }
+                Executor delayed = CompletableFuture.delayedExecutor(backoff(retry), TimeUnit.MILLISECONDS);
+                return CompletableFuture.runAsync(() -> {
+                }, delayed).thenCompose(ignored -> attempt(limit, call, retry + 1, inFlight));
+            }).thenCompose(future -> future);
+        });
+    }
+
+    private void acquire(Limit limit) throws InterruptedIOException {
+        try {
+            acquireAsync(limit).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an Elasticsearch permit");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    private CompletableFuture<Limit> acquireAsync(Limit limit) {
+        CompletableFuture<Limit> waiter;
+        synchronized (limit) {
+            if (limit.inFlight < (int) limit.limit) {
+                limit.inFlight++;
+                return CompletableFuture.completedFuture(limit);
+            }
+            if (limit.waiters.size() >= maxQueue) {
+                return CompletableFuture.failedFuture(
+                        overloaded(limit, "Too many " + limit.budget + " requests queued for Elasticsearch", null));
+            }
+            waiter = new CompletableFuture<>();
+            limit.waiters.add(waiter);
+        }
+        return waiter.orTimeout(queueTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .exceptionally(e -> {
+                    synchronized (limit) {
+                        limit.waiters.remove(waiter);
+                    }
+                    throw overloaded(limit, "No " + limit.budget + " permit for Elasticsearch within " + queueTimeout, e);
+                });
+    }
+
+    private void release(Limit limit, boolean dropped) {
+        List<CompletableFuture<Limit>> granted;
+        synchronized (limit) {
+            if (dropped) {
+                limit.limit = Math.max(1, limit.limit * backoffRatio);
+            } else if (limit.inFlight * 2 >= limit.limit) {
+                // A full window of responses adds one permit, additive rather than doubling per round trip
+                limit.limit = Math.min(limit.max, limit.limit + 1 / limit.limit);
+            }
+            limit.inFlight--;
+            granted = grant(limit);
+        }
+        handOver(limit, granted);
+    }
+
+    private static List<CompletableFuture<Limit>> grant(Limit limit) {
+        List<CompletableFuture<Limit>> granted = new ArrayList<>();
+        while (limit.inFlight < (int) limit.limit && !limit.waiters.isEmpty()) {
+            granted.add(limit.waiters.poll());
+            limit.inFlight++;
+        }
+        return granted;
+    }
+
+    // Completed outside the lock since waiters continue with their request on this thread
+    private static void handOver(Limit limit, List<CompletableFuture<Limit>> granted) {
+        for (CompletableFuture<Limit> waiter : granted) {
+            if (!waiter.complete(limit)) {
+                List<CompletableFuture<Limit>> next;
+                synchronized (limit) {
+                    limit.inFlight--;
+                    next = grant(limit);
+                }
+                handOver(limit, next);
+            }
+        }
+    }
+
+    private ElasticsearchOverloadedException overloaded(Limit limit, String message, Throwable cause) {
+        limit.rejected.increment();
+        log.warn(message);
+        return new ElasticsearchOverloadedException(message, retryAfter, cause);
+    }
+
+    private void sleep(int attempt) throws InterruptedIOException {
+        try {
+            Thread.sleep(backoff(attempt));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off from Elasticsearch");
+        }
+    }
+
+    private long backoff(int attempt) {
+        return (backoffMillis << attempt) + ThreadLocalRandom.current().nextLong(backoffMillis + 1);
+    }
+
+    private static boolean isRetryable(Throwable e) {
+        int status = statusOf(e);
+        return status == TOO_MANY_REQUESTS || status == SERVICE_UNAVAILABLE;
+    }
+
+    private static boolean isDropped(Throwable e) {
+        return e != null && (isRetryable(e) || e instanceof SocketTimeoutException);
+    }
+
+    static int statusOf(Throwable e) {
+        if (e instanceof ResponseException responseException) {
+            return responseException.getResponse().getStatusLine().getStatusCode();
+        }
+        if (e instanceof ElasticsearchException elasticsearchException) {
+            return elasticsearchException.status();
+        }
+        return INTERNAL_ERROR;
+    }
+
+    public enum Budget {
+
+        READ, WRITE, AGGREGATION
+
+    }
+
+    @FunctionalInterface
+    public interface Call<T> {
+
+        T call() throws IOException;
+
+    }
+
+    private static final class Limit {
+
+        private final Budget budget;
+
+        private final int max;
+
+        private final Counter rejected;
+
+        private final ArrayDeque<CompletableFuture<Limit>> waiters = new ArrayDeque<>();
+
+        private double limit;
+
+        private int inFlight;
+
+        private Limit(Budget budget, int initial, int max, Counter rejected) {
+            this.budget = budget;
+            this.limit = initial;
+            this.max = max;
+            this.rejected = rejected;
+        }
+
+    }
+
+}
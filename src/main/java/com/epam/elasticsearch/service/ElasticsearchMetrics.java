@@ -0,0 +1,46 @@
+package com.epam.elasticsearch.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Time spent inside the cluster as reported by took, and time spent binding responses.
+ * Together with es.client.requests and employee.service this splits latency into
+ * cluster, network and our own JSON handling.
+ */
+@Component
+public class ElasticsearchMetrics {
+
+    private final MeterRegistry registry;
+
+    public ElasticsearchMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void took(String impl, String operation, long tookMillis) {
+        Timer.builder("es.took")
+                .description("Time Elasticsearch reports it spent executing the request")
+                .tag("impl", impl)
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(tookMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public Timer.Sample start() {
+        return Timer.start(registry);
+    }
+
+    public void deserialized(String operation, Timer.Sample sample) {
+        sample.stop(Timer.builder("es.client.deserialization")
+                .description("Time spent decoding Elasticsearch responses")
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.epam.elasticsearch.service;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a request is shed: no permit became free before the queue deadline,
+ * or Elasticsearch kept answering 429/503 after all retries.
+ */
+public class ElasticsearchOverloadedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Duration retryAfter;
+
+    public ElasticsearchOverloadedException(String message, Duration retryAfter, Throwable cause) {
+        super(message, cause);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.epam.elasticsearch.service;
+
+import java.io.IOException;
+
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.elasticsearch.client.Request;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Body format of the low-level client. With smile enabled, documents are sent and the responses
+ * carrying employees are read as Smile, the binary JSON Elasticsearch speaks natively, which
+ * skips number and string escaping and writes repeated field names once. Query bodies stay JSON
+ * and so do responses only read for a few fields, Elasticsearch accepts either per request.
+ */
+@Component
+public class ElasticsearchWireFormat {
+
+    public static final ContentType SMILE = ContentType.create("application/smile");
+
+    private final boolean smile;
+
+    private final ObjectMapper mapper;
+
+    private final ObjectWriter smileWriter;
+
+    public ElasticsearchWireFormat(ObjectMapper mapper,
+                                   @Value("${application.elasticsearch.smile:false}") boolean smile) {
+        this.mapper = mapper;
+        this.smile = smile;
+        this.smileWriter = mapper.copyWith(new SmileFactory()).writer();
+    }
+
+    /**
+     * Asks for the response in Smile, EmployeeResponseDecoder reads either format.
+     */
+    public Request accept(Request request) {
+        if (smile) {
+            request.setOptions(request.getOptions().toBuilder()
+                    .addHeader("Accept", SMILE.getMimeType()));
+        }
+        return request;
+    }
+
+    public void setDocument(Request request, Object document) throws IOException {
+        if (smile) {
+            request.setEntity(new ByteArrayEntity(smileWriter.writeValueAsBytes(document), SMILE));
+        } else {
+            request.setJsonEntity(mapper.writeValueAsString(document));
+        }
+    }
+
+}
@@ -0,0 +1,218 @@
+package com.epam.elasticsearch.service;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Shape of an aggregation request: buckets by terms, histogram or date_histogram,
+ * optionally split again by a nested terms field, with stats on a numeric field in every bucket,
+ * over the employees matching optional term filters such as address.country=Germany.
+ * The request body only depends on the shape and filters, so it is rendered once per shape and reused.
+ */
+@Slf4j
+public record EmployeeAggregation(String type,
+                                  String field,
+                                  String interval,
+                                  String subField,
+                                  String metricType,
+                                  String metricField,
+                                  String sortOrder,
+                                  Map<String, String> filters) {
+
+    public static final String GROUP = "group";
+
+    public static final String STATS = "stats";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final Cache<EmployeeAggregation, String> TEMPLATES = Caffeine.newBuilder()
+            .maximumSize(256)
+            .build();
+
+    private static final Set<String> PARAMETERS = Set.of(
+            "agg_field", "agg_type", "interval", "sub_agg_field", "metric_field", "metric_type", "sort_order");
+
+    private static final Set<String> TERM_FIELDS = Set.of(
+            "name", "email", "skills", "address.country", "address.town",
+            "experience", "salary", "rating", "verified");
+
+    private static final Map<String, String> HISTOGRAM_FIELDS = Map.of(
+            "histogram", "salary",
+            "date_histogram", "dob");
+
+    private static final Set<String> CALENDAR_INTERVALS = Set.of("day", "week", "month", "quarter", "year");
+
+    private static final Set<String> METRIC_FIELDS = Set.of("experience", "rating", "salary");
+
+    private static final Set<String> METRIC_TYPES = Set.of("min", "max", "avg", "sum");
+
+    /**
+     * Parses agg_field, agg_type (terms, histogram on salary, date_histogram on dob), interval,
+     * sub_agg_field, metric_field, metric_type (the stat terms buckets are ordered by), sort_order
+     * and a term filter per keyword field.
+     */
+    public static EmployeeAggregation parse(Map<String, String> params) {
+        Map<String, String> filters = new LinkedHashMap<>();
+        for (Map.Entry<String, String> param : params.entrySet()) {
+            String key = param.getKey();
+            if (TERM_FIELDS.contains(key)) {
+                if (param.getValue() == null || param.getValue().isEmpty()) {
+                    throw badRequest("Value is empty for " + key);
+                }
+                filters.put(key, param.getValue());
+            } else if (!PARAMETERS.contains(key)) {
+                throw badRequest("Unsupported aggregation parameter " + key);
+            }
+        }
+        String field = params.get("agg_field");
+        String type = params.getOrDefault("agg_type", "terms");
+        String interval = params.get("interval");
+        String subField = params.get("sub_agg_field");
+        String metricField = params.getOrDefault("metric_field", "rating");
+        String metricType = params.getOrDefault("metric_type", "avg");
+        String sortOrder = params.getOrDefault("sort_order", "desc");
+
+        if ("terms".equals(type)) {
+            if (!TERM_FIELDS.contains(field)) {
+                throw badRequest("Unsupported aggregation field " + field);
+            }
+            if (interval != null) {
+                throw badRequest("interval is only supported by histograms");
+            }
+        } else if (HISTOGRAM_FIELDS.containsKey(type)) {
+            if (!HISTOGRAM_FIELDS.get(type).equals(field)) {
+                throw badRequest(type + " is only supported on " + HISTOGRAM_FIELDS.get(type));
+            }
+            if (!validInterval(type, interval)) {
+                throw badRequest("Unsupported interval " + interval + " for " + type);
+            }
+        } else {
+            throw badRequest("Unsupported aggregation type " + type);
+        }
+        if (subField != null && !TERM_FIELDS.contains(subField)) {
+            throw badRequest("Unsupported nested aggregation field " + subField);
+        }
+        if (!METRIC_FIELDS.contains(metricField) || !METRIC_TYPES.contains(metricType)) {
+            throw badRequest("Unsupported metric " + metricType + " on " + metricField);
+        }
+        if (!"asc".equals(sortOrder) && !"desc".equals(sortOrder)) {
+            throw badRequest("Unsupported sort order " + sortOrder);
+        }
+        return new EmployeeAggregation(type, field, interval, subField, metricType, metricField, sortOrder,
+                Map.copyOf(filters));
+    }
+
+    private static boolean validInterval(String type, String interval) {
+        if (interval == null) {
+            return false;
+        }
+        if ("date_histogram".equals(type)) {
+            return CALENDAR_INTERVALS.contains(interval);
+        }
+        try {
+            return Integer.parseInt(interval) > 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public String toJson() {
+        return TEMPLATES.get(this, EmployeeAggregation::render);
+    }
+
+    private static String render(EmployeeAggregation aggregation) {
+        StringWriter writer = new StringWriter(512);
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+            aggregation.writeTo(generator);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    private void writeTo(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("size", 0);
+        if (!filters.isEmpty()) {
+            writeFilters(generator);
+        }
+        generator.writeObjectFieldStart("aggs");
+        generator.writeObjectFieldStart(GROUP);
+        if ("terms".equals(type)) {
+            writeTerms(generator, field);
+        } else {
+            generator.writeObjectFieldStart(type);
+            generator.writeStringField("field", field);
+            if ("date_histogram".equals(type)) {
+                generator.writeStringField("calendar_interval", interval);
+            } else {
+                generator.writeNumberField("interval", Integer.parseInt(interval));
+            }
+            generator.writeEndObject();
+        }
+        generator.writeObjectFieldStart("aggs");
+        writeStats(generator);
+        if (subField != null) {
+            generator.writeObjectFieldStart(GROUP);
+            writeTerms(generator, subField);
+            generator.writeObjectFieldStart("aggs");
+            writeStats(generator);
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    private void writeFilters(JsonGenerator generator) throws IOException {
+        generator.writeObjectFieldStart("query");
+        generator.writeObjectFieldStart("bool");
+        generator.writeArrayFieldStart("filter");
+        for (Map.Entry<String, String> filter : filters.entrySet()) {
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("term");
+            generator.writeStringField(filter.getKey(), filter.getValue());
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    private void writeTerms(JsonGenerator generator, String termsField) throws IOException {
+        generator.writeObjectFieldStart("terms");
+        generator.writeStringField("field", termsField);
+        generator.writeObjectFieldStart("order");
+        generator.writeStringField(STATS + "." + metricType, sortOrder);
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    private void writeStats(JsonGenerator generator) throws IOException {
+        generator.writeObjectFieldStart(STATS);
+        generator.writeObjectFieldStart("stats");
+        generator.writeStringField("field", metricField);
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    private static IllegalArgumentException badRequest(String message) {
+        log.error("Bad request: " + message);
+        return new IllegalArgumentException("Bad request: " + message);
+    }
+
+}
@@ -1,60 +1,320 @@
 package com.epam.elasticsearch.service;
 
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
-import co.elastic.clients.elasticsearch._types.aggregations.Aggregation;
-import co.elastic.clients.elasticsearch._types.aggregations.AggregationBuilders;
-import co.elastic.clients.elasticsearch._types.aggregations.AverageAggregation;
-import co.elastic.clients.elasticsearch._types.aggregations.HistogramBucket;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregate;
 import co.elastic.clients.elasticsearch._types.aggregations.MultiBucketBase;
-import co.elastic.clients.elasticsearch._types.aggregations.StringTermsBucket;
-import co.elastic.clients.elasticsearch._types.aggregations.TermsAggregation;
+import co.elastic.clients.elasticsearch._types.aggregations.StatsAggregate;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
 import co.elastic.clients.elasticsearch.core.DeleteRequest;
+import co.elastic.clients.elasticsearch.core.DeleteResponse;
+import co.elastic.clients.elasticsearch.core.GetRequest;
 import co.elastic.clients.elasticsearch.core.GetResponse;
 import co.elastic.clients.elasticsearch.core.IndexRequest;
+import co.elastic.clients.elasticsearch.core.IndexResponse;
+import co.elastic.clients.elasticsearch.core.MgetResponse;
 import co.elastic.clients.elasticsearch.core.SearchRequest;
 import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.UpdateRequest;
+import co.elastic.clients.elasticsearch.core.UpdateResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import co.elastic.clients.elasticsearch.core.mget.MultiGetResponseItem;
 import co.elastic.clients.elasticsearch.core.search.Hit;
 import co.elastic.clients.elasticsearch.core.search.TotalHits;
+import co.elastic.clients.json.JsonData;
+import co.elastic.clients.json.JsonpMapper;
+import com.epam.elasticsearch.dto.AggregationBucket;
+import com.epam.elasticsearch.dto.BulkResult;
 import com.epam.elasticsearch.dto.Employee;
+import com.epam.elasticsearch.dto.EmployeeEntry;
+import com.epam.elasticsearch.dto.EmployeeLookup;
+import com.epam.elasticsearch.dto.EmployeePage;
+import com.epam.elasticsearch.dto.EmployeePatch;
+import com.epam.elasticsearch.dto.EmployeeSummary;
+import com.epam.elasticsearch.dto.UpdateResult;
+import com.epam.elasticsearch.service.ElasticsearchLimiter.Budget;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.json.stream.JsonParser;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
 import org.springframework.stereotype.Service;
 import org.springframework.util.MultiValueMap;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 @Service("api-service")
 @RequiredArgsConstructor
 @Slf4j
-public class EmployeeApiServiceImpl implements EmployeeService {
+public class EmployeeApiServiceImpl implements EmployeeService, AsyncEmployeeService {
+
+    private static final ContentType NDJSON = ContentType.create("application/x-ndjson");
+
+    private static final int PAGE_SIZE = 1000;
+
+    private static final String PIT_KEEP_ALIVE = "1m";
+
+    private static final String IMPL = "api-service";
+
+    private static final int NOT_FOUND = 404;
+
+    private static final int CONFLICT = 409;
+
 
     private final ElasticsearchClient client;
 
+    private final ElasticsearchAsyncClient asyncClient;
+
+    private final RestClient restClient;
+
+    private final BulkIngestionPipeline bulkPipeline;
+
+    private final EmployeeCache cache;
+
+    private final AggregationCache aggregationCache;
+
+    private final SuggestionCache suggestionCache;
+
+    private final MultiGetSplitter multiGetSplitter;
+
+    private final ElasticsearchMetrics metrics;
+
+    private final ElasticsearchLimiter limiter;
+
+    private final EmployeeIndexManager indexManager;
+
+    private final EmployeeRouting employeeRouting;
+
+    private final HedgedReads hedgedReads;
+
+    private final EmployeeReplica replica;
+
+    private final Cache<EmployeeAggregation, SearchRequest> aggregationRequests = Caffeine.newBuilder()
+            .maximumSize(256)
+            .build();
+
     @Override
-    public List<Employee> getAll() throws IOException {
-        SearchResponse<Employee> searchResponse = client.search(s -> s
-                        .index("employees"),
-                Employee.class);
+    public List<Employee> getAll(EmployeeProjection projection, int maxSize) throws IOException {
+        List<Employee> employees = new ArrayList<>();
+        // One more than maxSize is enough to tell that the index holds too many
+        exportAll(Math.min(PAGE_SIZE, maxSize + 1), projection, page -> {
+            if (employees.size() + page.size() > maxSize) {
+                throw new TooManyEmployeesException(maxSize);
+            }
+            employees.addAll(page);
+        });
+        return employees;
+    }
 
-        return searchResponse.hits().hits().stream()
-                .map(Hit::source)
-                .collect(Collectors.toList());
+    @Override
+    public void exportAll(int pageSize, EmployeeProjection projection, EmployeePageHandler handler) throws IOException {
+        String pitId = limiter.execute(Budget.READ, () -> client.openPointInTime(p -> p
+                        .index(indexManager.alias())
+                        .keepAlive(k -> k.time(PIT_KEEP_ALIVE))))
+                .id();
+        try {
+            List<FieldValue> searchAfter = null;
+            while (true) {
+                String currentPitId = pitId;
+                List<FieldValue> currentSearchAfter = searchAfter;
+                SearchResponse<Employee> response = limiter.execute(Budget.READ, () -> client.search(s -> {
+                    s.size(pageSize)
+                            .pit(p -> p
+                                    .id(currentPitId)
+                                    .keepAlive(k -> k.time(PIT_KEEP_ALIVE)))
+                            .sort(o -> o
+                                    .field(f -> f
+                                            .field("_shard_doc")
+                                            .order(SortOrder.Asc)));
+                    if (currentSearchAfter != null) {
+                        s.searchAfter(currentSearchAfter);
+                    }
+                    if (!projection.isAll()) {
+                        s.source(src -> src
+                                .filter(f -> f
+                                        .includes(projection.fields())));
+                    }
+                    return s;
+                }, Employee.class));
+                metrics.took(IMPL, "search", response.took());
+                if (response.pitId() != null) {
+                    pitId = response.pitId();
+                }
+
+                List<Hit<Employee>> hits = response.hits().hits();
+                if (hits.isEmpty()) {
+                    return;
+                }
+                handler.onPage(hits.stream()
+                        .map(Hit::source)
+                        .toList());
+                if (hits.size() < pageSize) {
+                    return;
+                }
+                searchAfter = hits.get(hits.size() - 1).sort();
+            }
+        } finally {
+            closePointInTime(pitId);
+        }
     }
 
     @Override
-    public Optional<Employee> getById(String id) throws IOException {
-        GetResponse<Employee> response = client.get(g -> g
-                        .index("employees")
-                        .id(id),
-                Employee.class);
+    public Optional<Employee> getById(String id, String routing) throws IOException {
+        return cache.get(id, routing, key -> loadById(key, routing));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Employee>> getByIdAsync(String id, String routing) {
+        return cache.getAsync(id, routing, key -> resolveRoutingAsync(key, routing)
+                .thenCompose(route -> hedgedReads.execute(IMPL, "get",
+                        preference -> limiter.executeAsync(Budget.READ,
+                                () -> asyncClient.get(getRequest(key, route, preference), Employee.class))))
+                .thenApply(EmployeeApiServiceImpl::getEmployee));
+    }
+
+    private Optional<Employee> loadById(String id, String routing) throws IOException {
+        GetRequest request = getRequest(id, resolveRouting(id, routing), null);
+        GetResponse<Employee> response = limiter.execute(Budget.READ, () -> client.get(request, Employee.class));
+        return getEmployee(response);
+    }
+
+    private GetRequest getRequest(String id, String routing, String preference) {
+        return GetRequest.of(g -> g
+                .index(indexManager.alias())
+                .id(id)
+                .routing(routing)
+                .preference(preference));
+    }
+
+    /**
+     * The routing an employee was indexed with: the given one, or when routing is active and none
+     * was given, the one found by asking every shard for the id. Null for an unknown id, the request
+     * then goes unrouted and reports the id as missing.
+     */
+    private String resolveRouting(String id, String routing) throws IOException {
+        if (routing != null || !employeeRouting.isActive()) {
+            return routing;
+        }
+        return routingOf(limiter.execute(Budget.READ, () -> client.search(locateRequest(List.of(id)), Void.class)));
+    }
 
+    private CompletableFuture<String> resolveRoutingAsync(String id, String routing) {
+        if (routing != null || !employeeRouting.isActive()) {
+            return CompletableFuture.completedFuture(routing);
+        }
+        return limiter.executeAsync(Budget.READ, () -> asyncClient.search(locateRequest(List.of(id)), Void.class))
+                .thenApply(EmployeeApiServiceImpl::routingOf);
+    }
+
+    /**
+     * Deletes the copies of written employees that were indexed under another routing value, see
+     * EmployeeRouting.moved. Deleting before the write keeps the new copy when both values route
+     * to the same shard. Only copies visible to search are found.
+     */
+    private void deleteMoved(List<EmployeeEntry> entries) throws IOException {
+        if (!employeeRouting.isActive()) {
+            return;
+        }
+        SearchResponse<Void> located = limiter.execute(Budget.READ,
+                () -> client.search(locateRequest(idsOf(entries)), Void.class));
+        BulkRequest deletes = movedDeletes(entries, located);
+        if (deletes != null) {
+            checkMovedDeletes(limiter.execute(Budget.WRITE, () -> client.bulk(deletes)));
+        }
+    }
+
+    private CompletableFuture<Void> deleteMovedAsync(List<EmployeeEntry> entries) {
+        if (!employeeRouting.isActive()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return limiter.executeAsync(Budget.READ, () -> asyncClient.search(locateRequest(idsOf(entries)), Void.class))
+                .thenApply(located -> movedDeletes(entries, located))
+                .thenCompose(deletes -> deletes == null
+                        ? CompletableFuture.completedFuture(null)
+                        : limiter.executeAsync(Budget.WRITE, () -> asyncClient.bulk(deletes))
+                        .thenAccept(response -> Futures.uncheck(EmployeeApiServiceImpl::checkMovedDeletes, response)));
+    }
+
+    private BulkRequest movedDeletes(List<EmployeeEntry> entries, SearchResponse<Void> located) {
+        Map<String, String> routings = new HashMap<>();
+        for (Hit<Void> hit : located.hits().hits()) {
+            routings.put(hit.id(), hit.routing());
+        }
+        Map<String, String> moved = employeeRouting.moved(entries, routings);
+        if (moved.isEmpty()) {
+            return null;
+        }
+        BulkRequest.Builder request = new BulkRequest.Builder()
+                .index(indexManager.alias());
+        moved.forEach((id, routing) -> {
+            log.info("Employee " + id + " moves away from routing " + routing);
+            request.operations(o -> o
+                    .delete(d -> d
+                            .id(id)
+                            .routing(routing)));
+        });
+        return request.build();
+    }
+
+    // Not finding an old copy is fine, failing to delete one would leave it duplicated
+    private static BulkResponse checkMovedDeletes(BulkResponse response) throws IOException {
+        for (BulkResponseItem item : response.items()) {
+            if (item.error() != null && item.status() != NOT_FOUND) {
+                throw new IOException("Old copy of moved employee " + item.id() + " can't be deleted: "
+                        + item.error().reason());
+            }
+        }
+        return response;
+    }
+
+    private static List<String> idsOf(List<EmployeeEntry> entries) {
+        return entries.stream()
+                .map(EmployeeEntry::id)
+                .distinct()
+                .toList();
+    }
+
+    private SearchRequest locateRequest(List<String> ids) {
+        return SearchRequest.of(s -> s
+                .index(indexManager.alias())
+                .size(ids.size())
+                .source(src -> src.fetch(false))
+                .query(q -> q
+                        .ids(i -> i
+                                .values(ids))));
+    }
+
+    private static String routingOf(SearchResponse<Void> response) {
+        List<Hit<Void>> hits = response.hits().hits();
+        return hits.isEmpty() ? null : hits.get(0).routing();
+    }
+
+    private static Optional<Employee> getEmployee(GetResponse<Employee> response) {
         if (response.found()) {
             Employee employee = response.source();
             assert employee != null;
@@ -64,45 +324,431 @@ public class EmployeeApiServiceImpl implements EmployeeService {
         }
     }
 
+    @Override
+    public List<EmployeeLookup> getByIds(List<String> ids, EmployeeProjection projection) throws IOException {
+        return multiGetSplitter.getByIds(ids, batch -> multiGet(batch, projection));
+    }
+
+    private List<EmployeeLookup> multiGet(List<String> ids, EmployeeProjection projection) throws IOException {
+        if (employeeRouting.isActive()) {
+            return routedMultiGet(ids, projection);
+        }
+        MgetResponse<Employee> response = limiter.execute(Budget.READ, () -> client.mget(m -> {
+            m.index(indexManager.alias())
+                    .ids(ids);
+            if (!projection.isAll()) {
+                m.sourceIncludes(projection.fields());
+            }
+            return m;
+        }, Employee.class));
+
+        List<EmployeeLookup> lookups = new ArrayList<>(ids.size());
+        for (int position = 0; position < ids.size(); position++) {
+            MultiGetResponseItem<Employee> item = response.docs().get(position);
+            if (item.isResult() && item.result().found()) {
+                lookups.add(new EmployeeLookup(item.result().id(), true, item.result().source()));
+            } else {
+                lookups.add(EmployeeLookup.missing(ids.get(position)));
+            }
+        }
+        return lookups;
+    }
+
+    /**
+     * _mget only finds routed documents with their routing, an ids query asks every shard instead.
+     * Like every search it sees writes after the next refresh.
+     */
+    private List<EmployeeLookup> routedMultiGet(List<String> ids, EmployeeProjection projection) throws IOException {
+        SearchResponse<Employee> response = limiter.execute(Budget.READ, () -> client.search(s -> {
+            s.index(indexManager.alias())
+                    .size(ids.size())
+                    .query(q -> q
+                            .ids(i -> i
+                                    .values(ids)));
+            if (!projection.isAll()) {
+                s.source(src -> src
+                        .filter(f -> f
+                                .includes(projection.fields())));
+            }
+            return s;
+        }, Employee.class));
+        metrics.took(IMPL, "mget", response.took());
+
+        Map<String, Employee> found = new HashMap<>();
+        for (Hit<Employee> hit : response.hits().hits()) {
+            found.put(hit.id(), hit.source());
+        }
+        List<EmployeeLookup> lookups = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            lookups.add(found.containsKey(id) ? new EmployeeLookup(id, true, found.get(id)) : EmployeeLookup.missing(id));
+        }
+        return lookups;
+    }
+
     @Override
     public void createWithId(Employee employee, String id) throws IOException {
-        IndexRequest<Employee> request = IndexRequest.of(i -> i
-                .index("employees")
+        try {
+            deleteMoved(List.of(new EmployeeEntry(id, employee)));
+            IndexResponse response = limiter.execute(Budget.WRITE, () -> client.index(indexRequest(employee, id)));
+            replicateIndexed(id, employee, response);
+        } finally {
+            cache.evict(id);
+            aggregationCache.invalidate();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> createWithIdAsync(Employee employee, String id) {
+        return deleteMovedAsync(List.of(new EmployeeEntry(id, employee)))
+                .thenCompose(deleted -> limiter.executeAsync(Budget.WRITE, () -> asyncClient.index(indexRequest(employee, id))))
+                .whenComplete((response, e) -> {
+                    cache.evict(id);
+                    aggregationCache.invalidate();
+                })
+                .thenAccept(response -> replicateIndexed(id, employee, response));
+    }
+
+    @Override
+    public Optional<UpdateResult> update(String id, String routing, EmployeePatch patch) throws IOException {
+        EmployeeUpdate update = EmployeeUpdate.parse(patch);
+        employeeRouting.checkUpdate(update.doc());
+        UpdateRequest<Employee, Employee> request = updateRequest(id, resolveRouting(id, routing), update);
+        try {
+            UpdateResponse<Employee> response = limiter.execute(Budget.WRITE, () -> client.update(request, Employee.class));
+            return Optional.of(updateResult(response));
+        } catch (ElasticsearchException e) {
+            return updateFailure(id, e);
+        } finally {
+            cache.evict(id);
+            aggregationCache.invalidate();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Optional<UpdateResult>> updateAsync(String id, String routing, EmployeePatch patch) {
+        return Futures.supply(() -> {
+                    EmployeeUpdate update = EmployeeUpdate.parse(patch);
+                    employeeRouting.checkUpdate(update.doc());
+                    return update;
+                })
+                .thenCompose(update -> resolveRoutingAsync(id, routing)
+                        .thenApply(route -> updateRequest(id, route, update)))
+                .thenCompose(request -> limiter.executeAsync(Budget.WRITE, () -> asyncClient.update(request, Employee.class)))
+                .whenComplete((response, e) -> {
+                    cache.evict(id);
+                    aggregationCache.invalidate();
+                })
+                .thenApply(response -> Optional.of(updateResult(response)))
+                .exceptionally(e -> {
+                    if (Futures.unwrap(e) instanceof ElasticsearchException elasticsearchException) {
+                        return updateFailure(id, elasticsearchException);
+                    }
+                    throw e instanceof CompletionException completion ? completion : new CompletionException(e);
+                });
+    }
+
+    private UpdateRequest<Employee, Employee> updateRequest(String id, String routing, EmployeeUpdate update) {
+        return UpdateRequest.of(u -> {
+            u.index(indexManager.alias())
+                    .id(id)
+                    .routing(routing)
+                    .ifSeqNo(update.ifSeqNo())
+                    .ifPrimaryTerm(update.ifPrimaryTerm())
+                    .retryOnConflict(update.retryOnConflict());
+            if (replica.isEnabled()) {
+                u.source(src -> src.fetch(true));
+            }
+            if (update.isScripted()) {
+                Map<String, JsonData> params = new LinkedHashMap<>();
+                update.scriptParams().forEach((name, value) -> params.put(name, JsonData.of(value)));
+                u.script(s -> s.inline(i -> i
+                        .lang("painless")
+                        .source(EmployeeUpdate.SCRIPT)
+                        .params(params)));
+            } else {
+                u.doc(update.doc());
+            }
+            return u;
+        });
+    }
+
+    private UpdateResult updateResult(UpdateResponse<Employee> response) {
+        // Asked for with source fetching when the replica is enabled
+        if (response.get() != null && response.get().source() != null) {
+            replica.indexed(response.id(), response.get().source(), response.seqNo(), response.primaryTerm());
+        }
+        return new UpdateResult(response.id(), response.result().jsonValue(), response.seqNo(), response.primaryTerm());
+    }
+
+    private static Optional<UpdateResult> updateFailure(String id, ElasticsearchException e) {
+        if (e.status() == NOT_FOUND) {
+            log.warn("Employee not found for update: " + id);
+            return Optional.empty();
+        }
+        if (e.status() == CONFLICT) {
+            throw new IllegalStateException("Employee " + id + " was changed since if_seq_no and if_primary_term were read", e);
+        }
+        throw e;
+    }
+
+    @Override
+    public void deleteById(String id, String routing) throws IOException {
+        DeleteRequest request = deleteRequest(id, resolveRouting(id, routing));
+        try {
+            DeleteResponse response = limiter.execute(Budget.WRITE, () -> client.delete(request));
+            replicateDeleted(id, response);
+        } finally {
+            cache.evict(id);
+            aggregationCache.invalidate();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteByIdAsync(String id, String routing) {
+        return resolveRoutingAsync(id, routing)
+                .thenCompose(route -> limiter.executeAsync(Budget.WRITE, () -> asyncClient.delete(deleteRequest(id, route))))
+                .whenComplete((response, e) -> {
+                    cache.evict(id);
+                    aggregationCache.invalidate();
+                })
+                .thenAccept(response -> replicateDeleted(id, response));
+    }
+
+    /**
+     * Hands an acknowledged write to the local replica, one it misses is repaired by the replica's catch-up.
+     */
+    private void replicateIndexed(String id, Employee employee, IndexResponse response) {
+        if (replica.isEnabled()) {
+            replica.indexed(id, employee, response.seqNo(), response.primaryTerm());
+        }
+    }
+
+    private void replicateDeleted(String id, DeleteResponse response) {
+        if (replica.isEnabled()) {
+            replica.deleted(id, response.seqNo(), response.primaryTerm());
+        }
+    }
+
+    private IndexRequest<Employee> indexRequest(Employee employee, String id) {
+        return IndexRequest.of(i -> i
+                .index(indexManager.alias())
                 .id(id)
+                .routing(employeeRouting.of(employee))
                 .document(employee));
+    }
+
+    private DeleteRequest deleteRequest(String id, String routing) {
+        return DeleteRequest.of(i -> i
+                .index(indexManager.alias())
+                .id(id)
+                .routing(routing));
+    }
 
-        client.index(request);
+    @Override
+    public BulkResult bulkCreate(Iterator<EmployeeEntry> entries) throws IOException {
+        return indexManager.bulkLoad(() -> bulkIndex(entries));
     }
 
     @Override
-    public void deleteById(String id) throws IOException {
-        DeleteRequest request = DeleteRequest.of(i -> i
-                .index("employees")
-                .id(id));
+    public BulkResult bulkIndex(Iterator<EmployeeEntry> entries) throws IOException {
+        return bulkPipeline.ingest(entries, batch -> {
+            // The pipeline already serialized the batch, a typed BulkRequest would do it again
+            Request request = new Request(
+                    "POST",
+                    "/" + indexManager.alias() + "/_bulk"
+            );
+            request.setEntity(new ByteArrayEntity(batch.payload(), NDJSON));
+
+            BulkResponse response;
+            try {
+                deleteMoved(batch.entries());
+                response = limiter.execute(Budget.WRITE, () -> readBulkResponse(restClient.performRequest(request)));
+            } finally {
+                batch.entries().forEach(entry -> cache.evict(entry.id()));
+                aggregationCache.invalidate();
+            }
 
-        client.delete(request);
+            List<BulkIngestionPipeline.ItemFailure> failures = new ArrayList<>();
+            List<BulkResponseItem> items = response.items();
+            for (int position = 0; position < items.size(); position++) {
+                BulkResponseItem item = items.get(position);
+                if (item.error() == null) {
+                    if (replica.isEnabled() && item.seqNo() != null && item.primaryTerm() != null
+                            && position < batch.entries().size()) {
+                        EmployeeEntry entry = batch.entries().get(position);
+                        replica.indexed(entry.id(), entry.employee(), item.seqNo(), item.primaryTerm());
+                    }
+                } else {
+                    failures.add(new BulkIngestionPipeline.ItemFailure(
+                            position, item.status(), item.error().reason()));
+                }
+            }
+            return failures;
+        });
+    }
+
+    private BulkResponse readBulkResponse(Response response) throws IOException {
+        JsonpMapper jsonpMapper = client._transport().jsonpMapper();
+        try (InputStream content = response.getEntity().getContent();
+             JsonParser parser = jsonpMapper.jsonProvider().createParser(content)) {
+            return BulkResponse._DESERIALIZER.deserialize(parser, jsonpMapper);
+        }
     }
 
     @Override
     public List<Employee> search(MultiValueMap<String, String> params) throws IOException {
-        Iterator<Map.Entry<String, List<String>>> keyIterator = params.entrySet().iterator();
-        if (!keyIterator.hasNext()) {
-            throw new IllegalArgumentException("Bad request");
+        SearchRequest request = searchRequest(EmployeeSearchQuery.parse(params), null);
+        SearchResponse<Employee> response = limiter.execute(Budget.READ, () -> client.search(request, Employee.class));
+        return getEmployees(response);
+    }
+
+    @Override
+    public CompletableFuture<List<Employee>> searchAsync(MultiValueMap<String, String> params) {
+        return Futures.supply(() -> EmployeeSearchQuery.parse(params))
+                .thenCompose(query -> hedgedReads.execute(IMPL, "search",
+                        preference -> limiter.executeAsync(Budget.READ,
+                                () -> asyncClient.search(searchRequest(query, preference), Employee.class))))
+                .thenApply(this::getEmployees);
+    }
+
+    @Override
+    public EmployeePage searchPage(MultiValueMap<String, String> params) throws IOException {
+        EmployeePageQuery query = EmployeePageQuery.parse(params);
+        String pitId = query.opensPointInTime()
+                ? limiter.execute(Budget.READ, () -> client.openPointInTime(p -> p
+                        .index(indexManager.alias())
+                        .keepAlive(k -> k.time(query.keepAlive()))))
+                .id()
+                : query.pitId();
+
+        String body = query.toJson(pitId);
+        // Point-in-time searches must not name the index, this client can't route opening one
+        SearchRequest request = SearchRequest.of(s -> s.withJson(new StringReader(body)));
+        SearchResponse<Employee> response = limiter.execute(Budget.READ, () -> client.search(request, Employee.class));
+        metrics.took(IMPL, "search", response.took());
+        if (response.pitId() != null) {
+            pitId = response.pitId();
         }
-        Map.Entry<String, List<String>> map = keyIterator.next();
-        if (!map.getValue().iterator().hasNext()) {
-            throw new IllegalArgumentException("Bad request");
+
+        List<Hit<Employee>> hits = response.hits().hits();
+        ArrayNode lastSort = null;
+        if (!hits.isEmpty()) {
+            lastSort = JsonNodeFactory.instance.arrayNode();
+            for (FieldValue value : hits.get(hits.size() - 1).sort()) {
+                lastSort.add(toJsonNode(value));
+            }
         }
-        String value = map.getValue().iterator().next();
+        String cursor = query.next(hits.size(), lastSort, pitId);
+        if (cursor == null && pitId != null) {
+            closePointInTime(pitId);
+        }
+
+        TotalHits total = response.hits().total();
+        return new EmployeePage(hits.stream().map(Hit::source).toList(),
+                total != null ? total.value() : null,
+                total != null ? total.relation().jsonValue() : null,
+                cursor);
+    }
+
+    private static JsonNode toJsonNode(FieldValue value) {
+        return switch (value._kind()) {
+            case Long -> JsonNodeFactory.instance.numberNode(value.longValue());
+            case Double -> JsonNodeFactory.instance.numberNode(value.doubleValue());
+            case Boolean -> JsonNodeFactory.instance.booleanNode(value.booleanValue());
+            case String -> JsonNodeFactory.instance.textNode(value.stringValue());
+            case Null -> JsonNodeFactory.instance.nullNode();
+            default -> throw new IllegalStateException("Unsupported sort value " + value._kind());
+        };
+    }
 
-        SearchResponse<Employee> response = client.search(s -> s
-                        .index("employees")
-                        .query(q -> q
-                                .term(t -> t
-                                        .field(map.getKey())
-                                        .value(value))),
-                Employee.class);
+    @Override
+    public List<EmployeeSummary> searchSummaries(MultiValueMap<String, String> params) throws IOException {
+        SearchRequest request = summaryRequest(params);
+        SearchResponse<Employee> response = limiter.execute(Budget.READ, () -> client.search(request, Employee.class));
+        return getSummaries(response);
+    }
+
+    @Override
+    public CompletableFuture<List<EmployeeSummary>> searchSummariesAsync(MultiValueMap<String, String> params) {
+        return Futures.supply(() -> summaryRequest(params))
+                .thenCompose(request -> limiter.executeAsync(Budget.READ,
+                        () -> asyncClient.search(request, Employee.class)))
+                .thenApply(this::getSummaries);
+    }
+
+    @Override
+    public List<EmployeeSummary> suggest(String prefix, Integer size) throws IOException {
+        return suggestionCache.get(EmployeeSuggestion.parse(prefix, size),
+                suggestion -> getSummaries(limiter.execute(Budget.READ,
+                        () -> client.search(suggestionRequest(suggestion), Employee.class))));
+    }
+
+    @Override
+    public CompletableFuture<List<EmployeeSummary>> suggestAsync(String prefix, Integer size) {
+        return Futures.supply(() -> EmployeeSuggestion.parse(prefix, size))
+                .thenCompose(suggestion -> suggestionCache.getAsync(suggestion,
+                        key -> limiter.executeAsync(Budget.READ,
+                                        () -> asyncClient.search(suggestionRequest(key), Employee.class))
+                                .thenApply(this::getSummaries)));
+    }
+
+    @Override
+    public List<AggregationBucket> aggregate(Map<String, String> params) throws IOException {
+        return aggregationCache.get(EmployeeAggregation.parse(params),
+                aggregation -> getBuckets(limiter.execute(Budget.AGGREGATION,
+                        () -> client.search(aggregationRequest(aggregation), Void.class))));
+    }
+
+    @Override
+    public CompletableFuture<List<AggregationBucket>> aggregateAsync(Map<String, String> params) {
+        return Futures.supply(() -> EmployeeAggregation.parse(params))
+                .thenCompose(aggregation -> aggregationCache.getAsync(aggregation,
+                        key -> limiter.executeAsync(Budget.AGGREGATION,
+                                        () -> asyncClient.search(aggregationRequest(key), Void.class))
+                                .thenApply(this::getBuckets)));
+    }
+
+    private SearchRequest searchRequest(EmployeeSearchQuery query, String preference) {
+        String body = query.toJson();
+
+        return SearchRequest.of(s -> s
+                .withJson(new StringReader(body))
+                .index(indexManager.alias())
+                .routing(employeeRouting.of(query))
+                .preference(preference));
+    }
+
+    private SearchRequest summaryRequest(MultiValueMap<String, String> params) {
+        EmployeeSearchQuery query = EmployeeSearchQuery.parse(params);
+        String body = query
+                .projection(EmployeeProjection.SUMMARY)
+                .toJson();
+
+        return SearchRequest.of(s -> s
+                .withJson(new StringReader(body))
+                .index(indexManager.alias())
+                .routing(employeeRouting.of(query)));
+    }
+
+    private SearchRequest suggestionRequest(EmployeeSuggestion suggestion) {
+        return SearchRequest.of(s -> s
+                .withJson(new StringReader(suggestion.toJson()))
+                .index(indexManager.alias()));
+    }
+
+    private List<EmployeeSummary> getSummaries(SearchResponse<Employee> response) {
+        metrics.took(IMPL, "summary", response.took());
+        return response.hits().hits().stream()
+                .map(hit -> {
+                    Employee employee = Objects.requireNonNull(hit.source());
+                    return new EmployeeSummary(hit.id(), employee.name(), employee.email(),
+                            employee.address() != null ? employee.address().town() : null);
+                })
+                .toList();
+    }
 
+    private List<Employee> getEmployees(SearchResponse<Employee> response) {
+        metrics.took(IMPL, "search", response.took());
         TotalHits totalHits = response.hits().total();
         assert totalHits != null;
 
@@ -111,41 +757,84 @@ public class EmployeeApiServiceImpl implements EmployeeService {
                 .collect(Collectors.toList());
     }
 
-    @Override
-    public String aggregate(Map<String, String> params) throws IOException {
-        String aggField = params.get("agg_field");
-        String metricType = params.get("metric_type");
-        String metricField = params.get("metric_field");
-
-        Map<String, Aggregation> map = new HashMap<>();
-        Aggregation subAggregation = new Aggregation.Builder()
-                .avg(new AverageAggregation.Builder().field(metricField).build())
-                .build();
+    private SearchRequest aggregationRequest(EmployeeAggregation aggregation) {
+        // Routed requests aren't cached, they would outlive a reindex to an unrouted index
+        String routing = employeeRouting.of(aggregation);
+        if (routing != null) {
+            return aggregationRequest(aggregation, routing);
+        }
+        return aggregationRequests.get(aggregation, key -> aggregationRequest(key, null));
+    }
 
-        Aggregation aggregation = new Aggregation.Builder()
-                .terms(new TermsAggregation.Builder().field(aggField + ".keyword").build())
-                .aggregations(new HashMap<>() {{
-                    put(metricField, subAggregation);
-                }}).build();
+    private SearchRequest aggregationRequest(EmployeeAggregation aggregation, String routing) {
+        return SearchRequest.of(s -> {
+            s.withJson(new StringReader(aggregation.toJson()))
+                    .index(indexManager.alias())
+                    .routing(routing)
+                    .requestCache(aggregationCache.requestCache());
+            if (!aggregationCache.preference().isEmpty()) {
+                s.preference(aggregationCache.preference());
+            }
+            return s;
+        });
+    }
 
-        map.put(metricField, aggregation);
+    private List<AggregationBucket> getBuckets(SearchResponse<Void> response) {
+        metrics.took(IMPL, "aggregation", response.took());
+        Aggregate group = response.aggregations().get(EmployeeAggregation.GROUP);
+        return group != null ? getBuckets(group) : List.of();
+    }
 
-        SearchRequest request = new SearchRequest.Builder()
-                .index("employees")
-                .size(0)
-                .aggregations(map)
-                .build();
+    private static List<AggregationBucket> getBuckets(Aggregate aggregate) {
+        if (aggregate.isSterms()) {
+            return aggregate.sterms().buckets().array().stream()
+                    .map(bucket -> getBucket(bucket.key().stringValue(), bucket))
+                    .toList();
+        }
+        if (aggregate.isLterms()) {
+            return aggregate.lterms().buckets().array().stream()
+                    .map(bucket -> getBucket(keyOf(bucket.keyAsString(), bucket.key()), bucket))
+                    .toList();
+        }
+        if (aggregate.isDterms()) {
+            return aggregate.dterms().buckets().array().stream()
+                    .map(bucket -> getBucket(keyOf(bucket.keyAsString(), bucket.key()), bucket))
+                    .toList();
+        }
+        if (aggregate.isHistogram()) {
+            return aggregate.histogram().buckets().array().stream()
+                    .map(bucket -> getBucket(keyOf(bucket.keyAsString(), bucket.key()), bucket))
+                    .toList();
+        }
+        if (aggregate.isDateHistogram()) {
+            return aggregate.dateHistogram().buckets().array().stream()
+                    .map(bucket -> getBucket(keyOf(bucket.keyAsString(), bucket.key()), bucket))
+                    .toList();
+        }
+        return List.of();
+    }
 
-        SearchResponse<Void> response = client.search(request, Void.class);
+    private static AggregationBucket getBucket(String key, MultiBucketBase bucket) {
+        Aggregate stats = bucket.aggregations().get(EmployeeAggregation.STATS);
+        Aggregate group = bucket.aggregations().get(EmployeeAggregation.GROUP);
+        List<AggregationBucket> buckets = group != null ? getBuckets(group) : null;
+        if (stats == null || !stats.isStats() || stats.stats().count() == 0) {
+            return new AggregationBucket(key, bucket.docCount(), null, null, null, null, buckets);
+        }
+        StatsAggregate values = stats.stats();
+        return new AggregationBucket(key, bucket.docCount(),
+                values.min(), values.max(), values.avg(), values.sum(), buckets);
+    }
 
-        List<StringTermsBucket> buckets = response.aggregations()
-                .get(metricField)
-                .sterms()
-                .buckets()
-                .array();
+    private static String keyOf(String keyAsString, Object key) {
+        return keyAsString != null ? keyAsString : String.valueOf(key);
+    }
 
-        return buckets.stream()
-                .toList()
-                .toString();
+    private void closePointInTime(String pitId) {
+        try {
+            client.closePointInTime(c -> c.id(pitId));
+        } catch (IOException e) {
+            log.warn("Point in time can't be closed, it will expire after " + PIT_KEEP_ALIVE);
+        }
     }
 }
@@ -0,0 +1,117 @@
+package com.epam.elasticsearch.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.epam.elasticsearch.dto.Employee;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Read-through cache of employees by id shared by both service implementations.
+ * Concurrent misses for one id wait for the same in-flight load. Only employees that were found
+ * are kept, a 404 may turn into a create on another instance at any time. An employee read with
+ * one routing is a miss for a read with another, which Elasticsearch may well answer differently.
+ */
+@Component
+public class EmployeeCache {
+
+    private final boolean enabled;
+
+    // A load that completes with null leaves no entry behind
+    private final AsyncCache<String, Entry> cache;
+
+    public EmployeeCache(MeterRegistry registry,
+                         @Value("${application.cache.employee.enabled:true}") boolean enabled,
+                         @Value("${application.cache.employee.max-size:10000}") long maxSize,
+                         @Value("${application.cache.employee.ttl:5m}") Duration ttl) {
+        this.enabled = enabled;
+        // Loads run on the calling thread, the cache only shares the pending result
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .executor(Runnable::run)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(registry, cache.synchronous(), "employees");
+    }
+
+    public Optional<Employee> get(String id, String routing, Loader loader) throws IOException {
+        if (!enabled) {
+            return loader.load(id);
+        }
+        Entry entry;
+        try {
+            entry = cache.get(id, key -> {
+                try {
+                    return loader.load(key)
+                            .map(employee -> new Entry(routing, employee))
+                            .orElse(null);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException unchecked) {
+                throw unchecked.getCause();
+            }
+            throw e;
+        }
+        if (entry == null) {
+            return Optional.empty();
+        }
+        return entry.matches(routing) ? Optional.of(entry.employee()) : loader.load(id);
+    }
+
+    public CompletableFuture<Optional<Employee>> getAsync(String id,
+                                                          String routing,
+                                                          Function<String, CompletableFuture<Optional<Employee>>> loader) {
+        if (!enabled) {
+            return loader.apply(id);
+        }
+        return cache.get(id, (key, executor) -> loader.apply(key)
+                        .thenApply(employee -> employee
+                                .map(found -> new Entry(routing, found))
+                                .orElse(null)))
+                .thenCompose(entry -> {
+                    if (entry == null) {
+                        return CompletableFuture.completedFuture(Optional.empty());
+                    }
+                    return entry.matches(routing)
+                            ? CompletableFuture.completedFuture(Optional.of(entry.employee()))
+                            : loader.apply(id);
+                });
+    }
+
+    public void evict(String id) {
+        cache.synchronous().invalidate(id);
+    }
+
+    private record Entry(String routing, Employee employee) {
+
+        boolean matches(String routing) {
+            return Objects.equals(this.routing, routing);
+        }
+
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+
+        Optional<Employee> load(String id) throws IOException;
+
+    }
+
+}
@@ -0,0 +1,553 @@
+package com.epam.elasticsearch.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.RestClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.epam.elasticsearch.dto.ReindexResult;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Owns the employees index. Services read and write through an alias pointing at a versioned
+ * index (employees-1681234567890) created from an explicit mapping, so a mapping change is a
+ * reindex into a new version followed by an atomic alias swap instead of a delete and reload.
+ * Explicit initial loads and reindex targets switch the index to no refresh and no replicas and
+ * restore both when the last load ends. Loads are counted per process.
+ * The routing field an index was built for is kept in its mapping _meta and checked periodically,
+ * so every instance starts routing once a reindex has moved the alias to a routed index.
+ */
+@Component
+@Slf4j
+public class EmployeeIndexManager {
+
+    private static final String MAPPING = "elasticsearch/employees-mapping.json";
+
+    private static final long TASK_POLL_MILLIS = 1000;
+
+    private static final int PRUNE_PAGE_SIZE = 1000;
+
+    private static final String PRUNE_SCROLL = "1m";
+
+    private static final int NOT_FOUND = 404;
+
+    private final RestClient restClient;
+
+    private final ObjectMapper mapper;
+
+    private final String alias;
+
+    private final int shards;
+
+    private final int replicas;
+
+    private final String refreshInterval;
+
+    private final boolean createOnStartup;
+
+    private final boolean bulkLoadMode;
+
+    private final EmployeeRouting routing;
+
+    private final Duration routingCheckInterval;
+
+    private ScheduledExecutorService routingCheck;
+
+    private final Map<String, Integer> bulkLoads = new HashMap<>();
+
+    public EmployeeIndexManager(RestClient restClient,
+                                ObjectMapper mapper,
+                                @Value("${application.elasticsearch.index.alias:employees}") String alias,
+                                @Value("${application.elasticsearch.index.shards:1}") int shards,
+                                @Value("${application.elasticsearch.index.replicas:1}") int replicas,
+                                @Value("${application.elasticsearch.index.refresh-interval:1s}") String refreshInterval,
+                                @Value("${application.elasticsearch.index.create-on-startup:true}") boolean createOnStartup,
+                                @Value("${application.elasticsearch.index.bulk-load-mode:false}") boolean bulkLoadMode,
+                                EmployeeRouting routing,
+                                @Value("${application.elasticsearch.routing.check-interval:1m}") Duration routingCheckInterval) {
+        this.restClient = restClient;
+        this.mapper = mapper;
+        this.alias = alias;
+        this.shards = shards;
+        this.replicas = replicas;
+        this.refreshInterval = refreshInterval;
+        this.createOnStartup = createOnStartup;
+        this.bulkLoadMode = bulkLoadMode;
+        this.routing = routing;
+        this.routingCheckInterval = routingCheckInterval;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (routingCheck != null) {
+            routingCheck.shutdown();
+        }
+    }
+
+    /**
+     * Name every request goes through.
+     */
+    public String alias() {
+        return alias;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        createIfMissing();
+        routingCheck = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("index-routing-"));
+        routingCheck.scheduleWithFixedDelay(this::checkRouting, 0, routingCheckInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void createIfMissing() {
+        if (!createOnStartup) {
+            return;
+        }
+        try {
+            if (currentIndex() != null) {
+                return;
+            }
+            if (exists(alias)) {
+                log.warn("Index " + alias + " is not behind an alias and has no explicit mapping, reindex it to migrate");
+                return;
+            }
+            String index = newIndexName();
+            createIndex(index, true);
+            log.info("Created index " + index + " behind alias " + alias);
+        } catch (IOException e) {
+            log.warn("Index " + alias + " can't be created on startup", e);
+        }
+    }
+
+    /**
+     * Runs the load with refresh disabled and no replicas on the index behind the alias.
+     * Overlapping loads share the mode, settings are restored once the last one finishes.
+     */
+    public <T> T bulkLoad(ElasticsearchLimiter.Call<T> load) throws IOException {
+        if (!bulkLoadMode) {
+            return load.call();
+        }
+        beginBulkLoad(alias);
+        try {
+            return load.call();
+        } finally {
+            endBulkLoad(alias);
+        }
+    }
+
+    /**
+     * Copies the current index into a new version created from the mapping and moves the alias to it.
+     * A first pass copies while writes go on. Then the old index is write-blocked and refreshed, and a
+     * second pass with external versioning copies what changed in the meantime, and copies of
+     * documents deleted in the meantime are removed from the new index. Writes fail with a cluster
+     * block from then until the alias has moved, and none are lost.
+     * Copies are routed by the configured routing field, or unrouted when routing is disabled.
+     */
+    public synchronized ReindexResult reindex() throws IOException {
+        String source = currentIndex();
+        boolean migrating = source == null;
+        if (migrating) {
+            if (!exists(alias)) {
+                throw new IllegalStateException("Neither an index nor an alias named " + alias + " exists");
+            }
+            // An index created before the alias existed, it has to go away for the alias to take its name
+            source = alias;
+        }
+        String target = newIndexName();
+        createIndex(target, false);
+
+        long copied;
+        boolean blocked = false;
+        beginBulkLoad(target);
+        try {
+            copied = copy(source, target);
+            blockWrites(source);
+            blocked = true;
+            refresh(source);
+            copied += copy(source, target);
+            refresh(target);
+            long pruned = pruneDeleted(source, target);
+            if (pruned > 0) {
+                log.info("Removed " + pruned + " documents deleted from " + source + " during the reindex");
+            }
+        } catch (IOException | RuntimeException e) {
+            endBulkLoad(target);
+            abortReindex(source, target, blocked);
+            throw e;
+        }
+        endBulkLoad(target);
+
+        try {
+            swapAlias(source, target, migrating);
+        } catch (IOException | RuntimeException e) {
+            abortReindex(source, target, true);
+            throw e;
+        }
+        checkRouting();
+        if (!migrating) {
+            delete(source);
+        }
+        log.info("Reindexed " + source + " into " + target + " behind alias " + alias);
+        return new ReindexResult(alias, source, target, copied);
+    }
+
+    private String currentIndex() throws IOException {
+        Request request = new Request(
+                "GET",
+                "/_alias/" + alias
+        );
+        try {
+            Iterator<String> indices = readTree(restClient.performRequest(request)).fieldNames();
+            return indices.hasNext() ? indices.next() : null;
+        } catch (ResponseException e) {
+            if (e.getResponse().getStatusLine().getStatusCode() == NOT_FOUND) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private void checkRouting() {
+        try {
+            String index = currentIndex();
+            if (index != null) {
+                routing.indexRoutedBy(routingField(index));
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Routing of index " + alias + " can't be checked", e);
+        }
+    }
+
+    private String routingField(String index) throws IOException {
+        JsonNode meta = readTree(restClient.performRequest(new Request(
+                "GET",
+                "/" + index + "/_mapping"
+        ))).path(index).path("mappings").path("_meta");
+        return meta.hasNonNull("routing_field") ? meta.path("routing_field").asText() : null;
+    }
+
+    private boolean exists(String index) throws IOException {
+        Response response = restClient.performRequest(new Request(
+                "HEAD",
+                "/" + index
+        ));
+        return response.getStatusLine().getStatusCode() != NOT_FOUND;
+    }
+
+    private String newIndexName() {
+        return alias + "-" + System.currentTimeMillis();
+    }
+
+    private void createIndex(String index, boolean withAlias) throws IOException {
+        ObjectNode body = mapper.createObjectNode();
+        body.putObject("settings")
+                .put("number_of_shards", shards)
+                .put("number_of_replicas", replicas)
+                .put("refresh_interval", refreshInterval);
+        try (InputStream mapping = new ClassPathResource(MAPPING).getInputStream()) {
+            ObjectNode mappings = (ObjectNode) mapper.readTree(mapping);
+            if (routing.field() != null) {
+                mappings.putObject("_meta")
+                        .put("routing_field", routing.field());
+            }
+            body.set("mappings", mappings);
+        }
+        if (withAlias) {
+            body.putObject("aliases").putObject(alias);
+        }
+
+        Request request = new Request(
+                "PUT",
+                "/" + index
+        );
+        request.setJsonEntity(mapper.writeValueAsString(body));
+        restClient.performRequest(request);
+    }
+
+    private void beginBulkLoad(String index) throws IOException {
+        synchronized (bulkLoads) {
+            if (bulkLoads.merge(index, 1, Integer::sum) > 1) {
+                return;
+            }
+            try {
+                updateSettings(index, "-1", 0);
+            } catch (IOException | RuntimeException e) {
+                bulkLoads.remove(index);
+                throw e;
+            }
+        }
+    }
+
+    private void endBulkLoad(String index) throws IOException {
+        synchronized (bulkLoads) {
+            if (bulkLoads.merge(index, -1, Integer::sum) > 0) {
+                return;
+            }
+            bulkLoads.remove(index);
+            updateSettings(index, refreshInterval, replicas);
+        }
+        refresh(index);
+    }
+
+    /**
+     * Also waits for the writes in flight on the index, the refresh after it sees all of them.
+     */
+    private void blockWrites(String index) throws IOException {
+        restClient.performRequest(new Request(
+                "PUT",
+                "/" + index + "/_block/write"
+        ));
+    }
+
+    private void refresh(String index) throws IOException {
+        restClient.performRequest(new Request(
+                "POST",
+                "/" + index + "/_refresh"
+        ));
+    }
+
+    private void abortReindex(String source, String target, boolean blocked) {
+        if (blocked) {
+            Request request = new Request(
+                    "PUT",
+                    "/" + source + "/_settings"
+            );
+            request.setJsonEntity("{\"index.blocks.write\":false}");
+            try {
+                restClient.performRequest(request);
+            } catch (IOException e) {
+                log.error("Index " + source + " is still write-blocked, clear index.blocks.write manually", e);
+            }
+        }
+        delete(target);
+    }
+
+    private void updateSettings(String index, String refresh, int replicaCount) throws IOException {
+        ObjectNode settings = mapper.createObjectNode();
+        settings.putObject("index")
+                .put("refresh_interval", refresh)
+                .put("number_of_replicas", replicaCount);
+
+        Request request = new Request(
+                "PUT",
+                "/" + index + "/_settings"
+        );
+        request.setJsonEntity(mapper.writeValueAsString(settings));
+        restClient.performRequest(request);
+    }
+
+    /**
+     * Runs _reindex as a task and polls it, a large copy outlives the client socket timeout.
+     * External versioning keeps the source versions, so a repeated pass only overwrites
+     * documents that changed in the source since they were copied.
+     */
+    private long copy(String source, String target) throws IOException {
+        ObjectNode body = mapper.createObjectNode();
+        body.put("conflicts", "proceed");
+        body.putObject("source")
+                .put("index", source);
+        body.putObject("dest")
+                .put("index", target)
+                .put("version_type", "external");
+        if (routing.field() != null || routingField(source) != null) {
+            body.putObject("script")
+                    .put("lang", "painless")
+                    .put("source", routing.copyScript());
+        }
+
+        Request request = new Request(
+                "POST",
+                "/_reindex"
+        );
+        request.addParameter("wait_for_completion", "false");
+        request.addParameter("slices", "auto");
+        request.setJsonEntity(mapper.writeValueAsString(body));
+        String task = readTree(restClient.performRequest(request)).path("task").asText();
+
+        JsonNode status = awaitTask(task);
+        JsonNode result = status.path("response");
+        if (status.has("error") || !result.path("failures").isEmpty()) {
+            throw new IllegalStateException("Reindex from " + source + " to " + target + " failed: "
+                    + (status.has("error") ? status.path("error") : result.path("failures")));
+        }
+        return result.path("created").asLong() + result.path("updated").asLong();
+    }
+
+    /**
+     * Deletes the target documents whose ids are gone from the source. Scrolls the target a page at a
+     * time and looks the page up in the source, so only one page of ids is held. Both indices must
+     * be refreshed and the source write-blocked.
+     */
+    private long pruneDeleted(String source, String target) throws IOException {
+        Request request = new Request(
+                "POST",
+                "/" + target + "/_search"
+        );
+        request.addParameter("scroll", PRUNE_SCROLL);
+        request.setJsonEntity("{\"size\":" + PRUNE_PAGE_SIZE + ",\"_source\":false,\"sort\":[\"_doc\"]}");
+        JsonNode page = readTree(restClient.performRequest(request));
+        String scrollId = page.path("_scroll_id").asText();
+        long pruned = 0;
+        try {
+            while (!page.path("hits").path("hits").isEmpty()) {
+                pruned += deleteMissing(source, target, page.path("hits").path("hits"));
+
+                ObjectNode next = mapper.createObjectNode()
+                        .put("scroll", PRUNE_SCROLL)
+                        .put("scroll_id", scrollId);
+                Request scroll = new Request(
+                        "POST",
+                        "/_search/scroll"
+                );
+                scroll.setJsonEntity(mapper.writeValueAsString(next));
+                page = readTree(restClient.performRequest(scroll));
+                scrollId = page.path("_scroll_id").asText();
+            }
+        } finally {
+            clearScroll(scrollId);
+        }
+        return pruned;
+    }
+
+    private long deleteMissing(String source, String target, JsonNode hits) throws IOException {
+        ObjectNode lookup = mapper.createObjectNode()
+                .put("size", hits.size())
+                .put("_source", false);
+        ArrayNode ids = lookup.putObject("query").putObject("ids").putArray("values");
+        hits.forEach(hit -> ids.add(hit.path("_id").asText()));
+        Request request = new Request(
+                "POST",
+                "/" + source + "/_search"
+        );
+        request.setJsonEntity(mapper.writeValueAsString(lookup));
+        Set<String> present = new HashSet<>();
+        readTree(restClient.performRequest(request)).path("hits").path("hits")
+                .forEach(hit -> present.add(hit.path("_id").asText()));
+
+        List<String> deletes = new ArrayList<>();
+        for (JsonNode hit : hits) {
+            if (present.contains(hit.path("_id").asText())) {
+                continue;
+            }
+            ObjectNode delete = mapper.createObjectNode();
+            ObjectNode action = delete.putObject("delete")
+                    .put("_id", hit.path("_id").asText());
+            if (hit.hasNonNull("_routing")) {
+                action.put("routing", hit.path("_routing").asText());
+            }
+            deletes.add(mapper.writeValueAsString(delete));
+        }
+        if (deletes.isEmpty()) {
+            return 0;
+        }
+
+        Request bulk = new Request(
+                "POST",
+                "/" + target + "/_bulk"
+        );
+        bulk.setJsonEntity(String.join("\n", deletes) + "\n");
+        JsonNode result = readTree(restClient.performRequest(bulk));
+        if (result.path("errors").asBoolean()) {
+            throw new IllegalStateException("Removing deleted documents from " + target + " failed: " + result.path("items"));
+        }
+        return deletes.size();
+    }
+
+    private void clearScroll(String scrollId) {
+        Request request = new Request(
+                "DELETE",
+                "/_search/scroll"
+        );
+        request.setJsonEntity(mapper.createObjectNode().put("scroll_id", scrollId).toString());
+        try {
+            restClient.performRequest(request);
+        } catch (IOException e) {
+            log.warn("Scroll over the reindex target can't be cleared, it expires in " + PRUNE_SCROLL, e);
+        }
+    }
+
+    private JsonNode awaitTask(String task) throws IOException {
+        while (true) {
+            JsonNode status = readTree(restClient.performRequest(new Request(
+                    "GET",
+                    "/_tasks/" + task
+            )));
+            if (status.path("completed").asBoolean()) {
+                return status;
+            }
+            try {
+                Thread.sleep(TASK_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for reindex task " + task);
+            }
+        }
+    }
+
+    private void swapAlias(String source, String target, boolean removeSource) throws IOException {
+        ObjectNode body = mapper.createObjectNode();
+        ArrayNode actions = body.putArray("actions");
+        if (removeSource) {
+            actions.addObject().putObject("remove_index")
+                    .put("index", source);
+        } else {
+            actions.addObject().putObject("remove")
+                    .put("index", source)
+                    .put("alias", alias);
+        }
+        actions.addObject().putObject("add")
+                .put("index", target)
+                .put("alias", alias);
+
+        Request request = new Request(
+                "POST",
+                "/_aliases"
+        );
+        request.setJsonEntity(mapper.writeValueAsString(body));
+        restClient.performRequest(request);
+    }
+
+    private void delete(String index) {
+        try {
+            restClient.performRequest(new Request(
+                    "DELETE",
+                    "/" + index
+            ));
+        } catch (IOException e) {
+            log.warn("Index " + index + " can't be deleted, remove it manually", e);
+        }
+    }
+
+    private JsonNode readTree(Response response) throws IOException {
+        try (InputStream content = response.getEntity().getContent()) {
+            return mapper.readTree(content);
+        }
+    }
+
+}
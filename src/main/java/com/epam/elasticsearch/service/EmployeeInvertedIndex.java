@@ -0,0 +1,419 @@
+package com.epam.elasticsearch.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import com.epam.elasticsearch.dto.Employee;
+
+/**
+ * In-memory index of employees by int doc id. Keyword and boolean fields keep a compressed
+ * bitmap of doc ids per term, experience and salary keep their values sorted with the doc ids
+ * so a range is a binary search. Every document carries the _seq_no and _primary_term it was
+ * read or written with and older versions are ignored, so the same change may arrive from the
+ * write path and from Elasticsearch in any order. Deleted ids keep their slot as a tombstone.
+ */
+public final class EmployeeInvertedIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final RoaringBitmap NONE = new RoaringBitmap();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Integer> docIds = new HashMap<>();
+
+    private Employee[] employees = new Employee[INITIAL_CAPACITY];
+
+    private long[] seqNos = new long[INITIAL_CAPACITY];
+
+    private long[] primaryTerms = new long[INITIAL_CAPACITY];
+
+    private int maxDoc;
+
+    private final RoaringBitmap live = new RoaringBitmap();
+
+    private final Map<String, RoaringBitmap> skills = new HashMap<>();
+
+    private final Map<String, RoaringBitmap> countries = new HashMap<>();
+
+    private final RoaringBitmap verified = new RoaringBitmap();
+
+    private final RoaringBitmap unverified = new RoaringBitmap();
+
+    private final NumericColumn experience = new NumericColumn(Employee::experience);
+
+    private final NumericColumn salary = new NumericColumn(Employee::salary);
+
+    /**
+     * Adds or replaces the employee unless the index already holds this or a later version.
+     */
+    public void index(String id, Employee employee, long seqNo, long primaryTerm) {
+        lock.writeLock().lock();
+        try {
+            int doc = docIdOf(id);
+            if (!isNewer(doc, seqNo, primaryTerm)) {
+                return;
+            }
+            Employee previous = employees[doc];
+            if (previous != null) {
+                removePostings(doc, previous);
+            }
+            addPostings(doc, employee);
+            experience.set(doc, employee);
+            salary.set(doc, employee);
+            employees[doc] = employee;
+            seqNos[doc] = seqNo;
+            primaryTerms[doc] = primaryTerm;
+            live.add(doc);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the employee unless the index already holds a later version.
+     */
+    public void delete(String id, long seqNo, long primaryTerm) {
+        lock.writeLock().lock();
+        try {
+            int doc = docIdOf(id);
+            if (!isNewer(doc, seqNo, primaryTerm)) {
+                return;
+            }
+            Employee previous = employees[doc];
+            if (previous != null) {
+                removePostings(doc, previous);
+                experience.set(doc, null);
+                salary.set(doc, null);
+            }
+            employees[doc] = null;
+            seqNos[doc] = seqNo;
+            primaryTerms[doc] = primaryTerm;
+            live.remove(doc);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sorts the numeric fields again, after a load that changed most of them.
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            experience.sort();
+            salary.sort();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return live.getCardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Employees matching every field, a field matches any of its term values and all of its
+     * range bounds (gt, gte, lt, lte), in doc id order. Null when a value isn't a number or
+     * boolean where the field needs one, the search then belongs to Elasticsearch.
+     */
+    public List<Employee> search(Map<String, List<String>> terms, Map<String, Map<String, String>> ranges,
+                                 int from, int size) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap matches = live.clone();
+            for (Map.Entry<String, List<String>> term : terms.entrySet()) {
+                RoaringBitmap values = termMatches(term.getKey(), term.getValue());
+                if (values == null) {
+                    return null;
+                }
+                matches.and(values);
+            }
+            for (Map.Entry<String, Map<String, String>> range : ranges.entrySet()) {
+                matches = rangeMatches(range.getKey(), range.getValue(), matches);
+                if (matches == null) {
+                    return null;
+                }
+            }
+
+            List<Employee> page = new ArrayList<>(Math.min(size, matches.getCardinality()));
+            IntIterator docs = matches.getIntIterator();
+            for (int skipped = 0; skipped < from && docs.hasNext(); skipped++) {
+                docs.next();
+            }
+            while (page.size() < size && docs.hasNext()) {
+                page.add(employees[docs.next()]);
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private RoaringBitmap termMatches(String field, List<String> values) {
+        RoaringBitmap matches = new RoaringBitmap();
+        for (String value : values) {
+            RoaringBitmap docs = switch (field) {
+                case "skills" -> skills.getOrDefault(value, NONE);
+                case "address.country" -> countries.getOrDefault(value, NONE);
+                case "verified" -> switch (value) {
+                    case "true" -> verified;
+                    case "false" -> unverified;
+                    default -> null;
+                };
+                case "experience", "salary" -> {
+                    Integer number = parseInt(value);
+                    yield number == null ? null : column(field).range(number, number);
+                }
+                default -> throw new IllegalArgumentException("Unsupported term field " + field);
+            };
+            if (docs == null) {
+                return null;
+            }
+            matches.or(docs);
+        }
+        return matches;
+    }
+
+    private RoaringBitmap rangeMatches(String field, Map<String, String> bounds, RoaringBitmap candidates) {
+        long min = Integer.MIN_VALUE;
+        long max = Integer.MAX_VALUE;
+        for (Map.Entry<String, String> bound : bounds.entrySet()) {
+            Integer value = parseInt(bound.getValue());
+            if (value == null) {
+                return null;
+            }
+            switch (bound.getKey()) {
+                case "gt" -> min = Math.max(min, value + 1L);
+                case "gte" -> min = Math.max(min, value);
+                case "lt" -> max = Math.min(max, value - 1L);
+                case "lte" -> max = Math.min(max, value);
+                default -> throw new IllegalArgumentException("Unsupported range operator " + bound.getKey());
+            }
+        }
+        if (min > max) {
+            return new RoaringBitmap();
+        }
+        return column(field).filter(candidates, (int) min, (int) max);
+    }
+
+    private NumericColumn column(String field) {
+        return switch (field) {
+            case "experience" -> experience;
+            case "salary" -> salary;
+            default -> throw new IllegalArgumentException("Unsupported range field " + field);
+        };
+    }
+
+    private static Integer parseInt(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private int docIdOf(String id) {
+        Integer doc = docIds.get(id);
+        if (doc != null) {
+            return doc;
+        }
+        if (maxDoc == employees.length) {
+            int capacity = employees.length * 2;
+            employees = Arrays.copyOf(employees, capacity);
+            seqNos = Arrays.copyOf(seqNos, capacity);
+            primaryTerms = Arrays.copyOf(primaryTerms, capacity);
+        }
+        int newDoc = maxDoc++;
+        seqNos[newDoc] = -1;
+        primaryTerms[newDoc] = 0;
+        docIds.put(id, newDoc);
+        return newDoc;
+    }
+
+    private boolean isNewer(int doc, long seqNo, long primaryTerm) {
+        return primaryTerm > primaryTerms[doc] || (primaryTerm == primaryTerms[doc] && seqNo > seqNos[doc]);
+    }
+
+    private void addPostings(int doc, Employee employee) {
+        if (employee.skills() != null) {
+            for (String skill : employee.skills()) {
+                skills.computeIfAbsent(skill, key -> new RoaringBitmap()).add(doc);
+            }
+        }
+        if (employee.address() != null && employee.address().country() != null) {
+            countries.computeIfAbsent(employee.address().country(), key -> new RoaringBitmap()).add(doc);
+        }
+        if (employee.verified() != null) {
+            (employee.verified() ? verified : unverified).add(doc);
+        }
+    }
+
+    private void removePostings(int doc, Employee employee) {
+        if (employee.skills() != null) {
+            for (String skill : employee.skills()) {
+                removePosting(skills, skill, doc);
+            }
+        }
+        if (employee.address() != null && employee.address().country() != null) {
+            removePosting(countries, employee.address().country(), doc);
+        }
+        verified.remove(doc);
+        unverified.remove(doc);
+    }
+
+    private static void removePosting(Map<String, RoaringBitmap> postings, String term, int doc) {
+        RoaringBitmap docs = postings.get(term);
+        if (docs != null) {
+            docs.remove(doc);
+            if (docs.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+    }
+
+    /**
+     * Values of one numeric field sorted together with their doc ids. Docs whose value changed
+     * since the last sort are kept aside and checked one by one, the arrays are sorted again once
+     * there are enough of them.
+     */
+    private static final class NumericColumn {
+
+        private static final int MIN_RESORT = 1024;
+
+        private final Function<Employee, ? extends Number> field;
+
+        private int[] values = new int[INITIAL_CAPACITY];
+
+        private final RoaringBitmap present = new RoaringBitmap();
+
+        private int[] sortedValues = new int[0];
+
+        private int[] sortedDocs = new int[0];
+
+        private final RoaringBitmap changed = new RoaringBitmap();
+
+        private NumericColumn(Function<Employee, ? extends Number> field) {
+            this.field = field;
+        }
+
+        void set(int doc, Employee employee) {
+            Number value = employee == null ? null : field.apply(employee);
+            if (value == null) {
+                if (present.checkedRemove(doc)) {
+                    changed.add(doc);
+                }
+            } else {
+                if (doc >= values.length) {
+                    values = Arrays.copyOf(values, Math.max(values.length * 2, doc + 1));
+                }
+                if (!present.contains(doc) || values[doc] != value.intValue()) {
+                    values[doc] = value.intValue();
+                    present.add(doc);
+                    changed.add(doc);
+                }
+            }
+            if (changed.getCardinality() > Math.max(MIN_RESORT, sortedDocs.length / 8)) {
+                sort();
+            }
+        }
+
+        /**
+         * The candidates with a value in the range. Few candidates are checked one by one,
+         * otherwise the range is read from the sorted values.
+         */
+        RoaringBitmap filter(RoaringBitmap candidates, int min, int max) {
+            int start = lowerBound(min);
+            int end = upperBound(max);
+            if (candidates.getCardinality() > end - start + changed.getCardinality()) {
+                return RoaringBitmap.and(candidates, range(start, end, min, max));
+            }
+            RoaringBitmap matches = new RoaringBitmap();
+            candidates.forEach((int doc) -> {
+                if (present.contains(doc) && values[doc] >= min && values[doc] <= max) {
+                    matches.add(doc);
+                }
+            });
+            return matches;
+        }
+
+        RoaringBitmap range(int min, int max) {
+            return range(lowerBound(min), upperBound(max), min, max);
+        }
+
+        private RoaringBitmap range(int start, int end, int min, int max) {
+            RoaringBitmap matches = RoaringBitmap.bitmapOfUnordered(Arrays.copyOfRange(sortedDocs, start, end));
+            matches.andNot(changed);
+            changed.forEach((int doc) -> {
+                if (present.contains(doc) && values[doc] >= min && values[doc] <= max) {
+                    matches.add(doc);
+                }
+            });
+            return matches;
+        }
+
+        // First position holding the value or a greater one
+        private int lowerBound(int value) {
+            int low = 0;
+            int high = sortedValues.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (sortedValues[middle] < value) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        // First position holding a greater value
+        private int upperBound(int value) {
+            int low = 0;
+            int high = sortedValues.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (sortedValues[middle] <= value) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        void sort() {
+            // Value in the high half, doc id in the low half, one primitive sort orders both
+            long[] entries = new long[present.getCardinality()];
+            int position = 0;
+            for (IntIterator docs = present.getIntIterator(); docs.hasNext(); ) {
+                int doc = docs.next();
+                entries[position++] = ((long) values[doc] << 32) | doc;
+            }
+            Arrays.sort(entries);
+            sortedValues = new int[entries.length];
+            sortedDocs = new int[entries.length];
+            for (int i = 0; i < entries.length; i++) {
+                sortedValues[i] = (int) (entries[i] >> 32);
+                sortedDocs[i] = (int) entries[i];
+            }
+            changed.clear();
+        }
+
+    }
+
+}
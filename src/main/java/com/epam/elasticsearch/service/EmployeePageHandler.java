@@ -0,0 +1,13 @@
+package com.epam.elasticsearch.service;
+
+import com.epam.elasticsearch.dto.Employee;
+
+import java.io.IOException;
+import java.util.List;
+
+@FunctionalInterface
+public interface EmployeePageHandler {
+
+    void onPage(List<Employee> employees) throws IOException;
+
+}
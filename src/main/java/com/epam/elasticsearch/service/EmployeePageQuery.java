@@ -0,0 +1,195 @@
+package com.epam.elasticsearch.service;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Cursor pagination over EmployeeSearchQuery. Pages are fetched with search_after on a stable
+ * sort, the requested one (rating desc by default) plus _shard_doc, so a deep page costs the
+ * same as the first. No field of an employee is unique, so every cursor searches a point in time
+ * and _shard_doc breaks the ties. The cursor is an opaque token carrying the sort, the last sort
+ * values and the point in time. Clients repeat their filters and size with every page.
+ */
+@Slf4j
+public final class EmployeePageQuery {
+
+    public static final int DEFAULT_SIZE = 20;
+
+    private static final String DEFAULT_SORT_FIELD = "rating";
+
+    private static final String TIEBREAKER = "_shard_doc";
+
+    private static final String DEFAULT_KEEP_ALIVE = "1m";
+
+    private static final Pattern KEEP_ALIVE = Pattern.compile("[1-9][0-9]*[smh]");
+
+    private static final ObjectMapper CURSOR_MAPPER = new ObjectMapper();
+
+    private final EmployeeSearchQuery query;
+
+    private final String pitId;
+
+    private final String keepAlive;
+
+    private EmployeePageQuery(EmployeeSearchQuery query, String pitId, String keepAlive) {
+        this.query = query;
+        this.pitId = pitId;
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * Parses the search parameters plus cursor (token of the previous page), pit (keep alive of the
+     * point in time opened with the first page, 1m by default) and track_total_hits
+     * (true, false or a number, off for pages after the first unless asked for).
+     */
+    public static EmployeePageQuery parse(MultiValueMap<String, String> params) {
+        MultiValueMap<String, String> searchParams = new LinkedMultiValueMap<>(params);
+        String token = searchParams.getFirst("cursor");
+        String pit = searchParams.getFirst("pit");
+        String trackTotalHits = searchParams.getFirst("track_total_hits");
+        searchParams.remove("cursor");
+        searchParams.remove("pit");
+        searchParams.remove("track_total_hits");
+
+        EmployeeSearchQuery query = EmployeeSearchQuery.parse(searchParams);
+        if (query.hasFrom()) {
+            throw badRequest("from can't be combined with cursor pagination");
+        }
+        if (query.size() == null) {
+            query.size(DEFAULT_SIZE);
+        } else if (query.size() == 0) {
+            throw badRequest("size must be positive");
+        }
+        if (pit != null && !KEEP_ALIVE.matcher(pit).matches()) {
+            throw badRequest("pit must be a keep alive such as 1m");
+        }
+
+        String pitId = null;
+        String keepAlive = pit != null ? pit : DEFAULT_KEEP_ALIVE;
+        if (token != null) {
+            JsonNode cursor = decode(token);
+            JsonNode sort = cursor.path("sort");
+            if (!searchParams.containsKey("sort")) {
+                sort.fields().forEachRemaining(field -> {
+                    if (!TIEBREAKER.equals(field.getKey())) {
+                        query.sort(field.getKey(), field.getValue().asText());
+                    }
+                });
+            }
+            if (!cursor.path("pit").isTextual()) {
+                throw badRequest("Invalid cursor");
+            }
+            pitId = cursor.path("pit").asText();
+            if (pit == null && cursor.path("keep_alive").isTextual()) {
+                keepAlive = cursor.path("keep_alive").asText();
+            }
+            query.tiebreaker(TIEBREAKER);
+            if (!sortOf(query).equals(sort)) {
+                throw badRequest("sort can't change between pages");
+            }
+            query.searchAfter(cursor.path("after"));
+            query.trackTotalHits(trackTotalHits != null ? trackTotalHits : "false");
+        } else {
+            if (!searchParams.containsKey("sort")) {
+                query.sort(DEFAULT_SORT_FIELD, "desc");
+            }
+            query.tiebreaker(TIEBREAKER);
+            if (trackTotalHits != null) {
+                query.trackTotalHits(trackTotalHits);
+            }
+        }
+        return new EmployeePageQuery(query, pitId, keepAlive);
+    }
+
+    /**
+     * True for the first page, its point in time has to be opened before searching.
+     */
+    public boolean opensPointInTime() {
+        return keepAlive != null && pitId == null;
+    }
+
+    public String pitId() {
+        return pitId;
+    }
+
+    public String keepAlive() {
+        return keepAlive;
+    }
+
+    public int size() {
+        return query.size();
+    }
+
+    EmployeeSearchQuery query() {
+        return query;
+    }
+
+    /**
+     * The request body, searching the point in time when one is given.
+     */
+    public String toJson(String pointInTime) {
+        if (pointInTime != null) {
+            query.pointInTime(pointInTime, keepAlive);
+        }
+        return query.toJson();
+    }
+
+    /**
+     * Token for the page after the one that ended with these sort values, null after the last page.
+     */
+    public String next(int hits, JsonNode lastSort, String pointInTime) {
+        if (hits < size() || lastSort == null || lastSort.isEmpty()) {
+            return null;
+        }
+        ObjectNode cursor = CURSOR_MAPPER.createObjectNode();
+        cursor.set("sort", sortOf(query));
+        cursor.set("after", lastSort);
+        if (pointInTime != null) {
+            cursor.put("pit", pointInTime)
+                    .put("keep_alive", keepAlive);
+        }
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(CURSOR_MAPPER.writeValueAsBytes(cursor));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cursor can't be encoded", e);
+        }
+    }
+
+    private static ObjectNode sortOf(EmployeeSearchQuery query) {
+        ObjectNode sort = CURSOR_MAPPER.createObjectNode();
+        for (Map.Entry<String, String> field : query.sort().entrySet()) {
+            sort.put(field.getKey(), field.getValue());
+        }
+        return sort;
+    }
+
+    private static JsonNode decode(String token) {
+        JsonNode cursor;
+        try {
+            cursor = CURSOR_MAPPER.readTree(Base64.getUrlDecoder().decode(token));
+        } catch (IOException | IllegalArgumentException e) {
+            throw badRequest("Invalid cursor");
+        }
+        if (cursor == null || !cursor.path("sort").isObject() || !cursor.path("after").isArray()) {
+            throw badRequest("Invalid cursor");
+        }
+        return cursor;
+    }
+
+    private static IllegalArgumentException badRequest(String message) {
+        log.error("Bad request: " + message);
+        return new IllegalArgumentException("Bad request: " + message);
+    }
+
+}
@@ -0,0 +1,57 @@
+package com.epam.elasticsearch.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The _source fields a read returns. Elasticsearch only loads and sends these fields,
+ * an empty projection keeps whole documents.
+ */
+@Slf4j
+public record EmployeeProjection(List<String> fields) {
+
+    public static final EmployeeProjection ALL = new EmployeeProjection(List.of());
+
+    /**
+     * What list and autocomplete views show, decoded into EmployeeSummary.
+     */
+    public static final EmployeeProjection SUMMARY = new EmployeeProjection(List.of("name", "email", "address.town"));
+
+    static final Set<String> SOURCE_FIELDS = Set.of(
+            "name", "dob", "address", "address.country", "address.town", "email",
+            "skills", "experience", "rating", "description", "verified", "salary");
+
+    /**
+     * Parses a comma separated field list, name,email,address.town, null or blank keeps whole documents.
+     */
+    public static EmployeeProjection parse(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return ALL;
+        }
+        List<String> parsed = new ArrayList<>();
+        for (String field : fields.split(",")) {
+            parsed.add(validate(field.trim()));
+        }
+        return new EmployeeProjection(List.copyOf(parsed));
+    }
+
+    static String validate(String field) {
+        if (!SOURCE_FIELDS.contains(field)) {
+            log.error("Bad request: Unsupported field " + field);
+            throw new IllegalArgumentException("Bad request: Unsupported field " + field);
+        }
+        return field;
+    }
+
+    public boolean isAll() {
+        return fields.isEmpty();
+    }
+
+    public String includes() {
+        return String.join(",", fields);
+    }
+
+}
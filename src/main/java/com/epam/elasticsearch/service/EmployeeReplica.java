@@ -0,0 +1,356 @@
+package com.epam.elasticsearch.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.epam.elasticsearch.dto.Employee;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Optional local read replica of the employee index for filter-only searches on skills,
+ * address.country, verified, experience and salary. It is loaded shard by shard in _seq_no order,
+ * then kept current by the services' own writes and by a catch-up that reads every shard past
+ * the global checkpoint it saw two rounds earlier, so an operation has had a whole catch-up
+ * interval to be refreshed before it is skipped. Deletes made by other writers don't show in
+ * a catch-up, they are dropped by the next full reload, which also follows the alias to a new
+ * index. Searches fall back to Elasticsearch while the replica is loading, too far behind, or the
+ * query needs anything it can't answer.
+ */
+@Component
+@Slf4j
+public class EmployeeReplica {
+
+    private static final Set<String> TERM_FIELDS = Set.of("skills", "address.country", "verified", "experience", "salary");
+
+    private static final Set<String> RANGE_FIELDS = Set.of("experience", "salary");
+
+    // Elasticsearch's size when the request has none
+    private static final int DEFAULT_SIZE = 10;
+
+    private static final int MAX_RESULT_WINDOW = 10_000;
+
+    private static final int PAGE_SIZE = 1000;
+
+    private final RestClient restClient;
+
+    private final ObjectMapper mapper;
+
+    private final ObjectReader employeeReader;
+
+    private final EmployeeIndexManager indexManager;
+
+    private final boolean enabled;
+
+    private final Duration catchUpInterval;
+
+    private final Duration fullReloadInterval;
+
+    private final Duration maxLag;
+
+    private final long maxDocuments;
+
+    private final Counter localSearches;
+
+    private final Counter fallbackSearches;
+
+    private volatile EmployeeInvertedIndex current;
+
+    // Receives the write path alongside current while a full reload runs, guarded by this
+    private EmployeeInvertedIndex loading;
+
+    private volatile long syncedAt;
+
+    private String indexName;
+
+    private long loadedAt;
+
+    private long[] checkpoints;
+
+    private long[] nextCheckpoints;
+
+    private ScheduledExecutorService scheduler;
+
+    public EmployeeReplica(RestClient restClient,
+                           ObjectMapper mapper,
+                           EmployeeIndexManager indexManager,
+                           MeterRegistry registry,
+                           @Value("${application.replica.enabled:false}") boolean enabled,
+                           @Value("${application.replica.catch-up-interval:5s}") Duration catchUpInterval,
+                           @Value("${application.replica.full-reload-interval:15m}") Duration fullReloadInterval,
+                           @Value("${application.replica.max-lag:30s}") Duration maxLag,
+                           @Value("${application.replica.max-documents:1000000}") long maxDocuments) {
+        this.restClient = restClient;
+        this.mapper = mapper;
+        this.employeeReader = mapper.readerFor(Employee.class);
+        this.indexManager = indexManager;
+        this.enabled = enabled;
+        this.catchUpInterval = catchUpInterval;
+        this.fullReloadInterval = fullReloadInterval;
+        this.maxLag = maxLag;
+        this.maxDocuments = maxDocuments;
+        this.localSearches = Counter.builder("replica.searches")
+                .description("Searches answered by the local replica")
+                .tag("result", "local")
+                .register(registry);
+        this.fallbackSearches = Counter.builder("replica.searches")
+                .description("Searches the local replica passed on to Elasticsearch")
+                .tag("result", "fallback")
+                .register(registry);
+        Gauge.builder("replica.documents", this, replica -> replica.current != null ? replica.current.size() : 0)
+                .description("Employees in the local replica")
+                .register(registry);
+        Gauge.builder("replica.lag", this, replica -> replica.lag().toMillis() / 1000.0)
+                .description("Time since the local replica last caught up with Elasticsearch")
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("employee-replica-"));
+        scheduler.scheduleWithFixedDelay(this::sync, 0, catchUpInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * The page Elasticsearch would return for a filter-only query, empty when the query has to go
+     * to Elasticsearch. Hits come in the order employees were first loaded, which, like the order
+     * of unsorted Elasticsearch hits, is not meaningful.
+     */
+    public Optional<List<Employee>> search(EmployeeSearchQuery query) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        EmployeeInvertedIndex index = current;
+        int from = query.from() != null ? query.from() : 0;
+        int size = query.size() != null ? query.size() : DEFAULT_SIZE;
+        List<Employee> employees = null;
+        if (index != null && lag().compareTo(maxLag) <= 0 && supports(query, from, size)) {
+            employees = index.search(query.terms(), query.ranges(), from, size);
+        }
+        if (employees == null) {
+            fallbackSearches.increment();
+            return Optional.empty();
+        }
+        localSearches.increment();
+        return Optional.of(employees);
+    }
+
+    private static boolean supports(EmployeeSearchQuery query, int from, int size) {
+        return query.isFilterOnly()
+                && TERM_FIELDS.containsAll(query.terms().keySet())
+                && RANGE_FIELDS.containsAll(query.ranges().keySet())
+                // Elasticsearch rejects deeper pages, let it say so
+                && from + size <= MAX_RESULT_WINDOW;
+    }
+
+    /**
+     * Applies a write Elasticsearch acknowledged with this _seq_no and _primary_term.
+     */
+    public synchronized void indexed(String id, Employee employee, long seqNo, long primaryTerm) {
+        if (current != null) {
+            current.index(id, employee, seqNo, primaryTerm);
+        }
+        if (loading != null) {
+            loading.index(id, employee, seqNo, primaryTerm);
+        }
+    }
+
+    public synchronized void deleted(String id, long seqNo, long primaryTerm) {
+        if (current != null) {
+            current.delete(id, seqNo, primaryTerm);
+        }
+        if (loading != null) {
+            loading.delete(id, seqNo, primaryTerm);
+        }
+    }
+
+    private Duration lag() {
+        long synced = syncedAt;
+        return synced == 0 ? Duration.ZERO : Duration.ofNanos(System.nanoTime() - synced);
+    }
+
+    void sync() {
+        try {
+            Shards shards = shards();
+            if (shards == null) {
+                return;
+            }
+            if (!shards.index().equals(indexName) || System.nanoTime() - loadedAt > fullReloadInterval.toNanos()) {
+                load(shards);
+            } else if (current != null) {
+                catchUp(shards);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Employee replica can't be synced with " + indexManager.alias(), e);
+        }
+    }
+
+    private void load(Shards shards) throws IOException {
+        indexName = shards.index();
+        loadedAt = System.nanoTime();
+        if (shards.documents() > maxDocuments) {
+            log.warn("Index " + shards.index() + " holds " + shards.documents() + " employees, more than the "
+                    + maxDocuments + " the replica may load, searches go to Elasticsearch");
+            current = null;
+            return;
+        }
+
+        EmployeeInvertedIndex fresh = new EmployeeInvertedIndex();
+        synchronized (this) {
+            loading = fresh;
+        }
+        try {
+            // Makes everything up to the global checkpoints visible to the scan
+            restClient.performRequest(new Request(
+                    "POST",
+                    "/" + shards.index() + "/_refresh"
+            ));
+            for (int shard = 0; shard < shards.globalCheckpoints().length; shard++) {
+                scan(shards.index(), shard, -1, fresh);
+            }
+            fresh.compact();
+            synchronized (this) {
+                current = fresh;
+            }
+        } catch (IOException | RuntimeException e) {
+            // Retried with the next round
+            indexName = null;
+            throw e;
+        } finally {
+            synchronized (this) {
+                loading = null;
+            }
+        }
+        checkpoints = shards.globalCheckpoints();
+        nextCheckpoints = shards.globalCheckpoints();
+        syncedAt = System.nanoTime();
+        log.info("Employee replica loaded " + fresh.size() + " employees from " + shards.index());
+    }
+
+    private void catchUp(Shards shards) throws IOException {
+        for (int shard = 0; shard < checkpoints.length; shard++) {
+            scan(shards.index(), shard, checkpoints[shard], current);
+        }
+        checkpoints = nextCheckpoints;
+        nextCheckpoints = shards.globalCheckpoints();
+        syncedAt = System.nanoTime();
+    }
+
+    /**
+     * Reads the shard's documents with a _seq_no above after in _seq_no order into the index.
+     */
+    private void scan(String index, int shard, long after, EmployeeInvertedIndex target) throws IOException {
+        long last = after;
+        while (true) {
+            ObjectNode body = mapper.createObjectNode();
+            body.put("size", PAGE_SIZE);
+            body.put("seq_no_primary_term", true);
+            body.putObject("query")
+                    .putObject("range")
+                    .putObject("_seq_no")
+                    .put("gt", last);
+            body.putArray("sort")
+                    .addObject()
+                    .put("_seq_no", "asc");
+
+            Request request = new Request(
+                    "POST",
+                    "/" + index + "/_search"
+            );
+            request.addParameter("preference", "_shards:" + shard);
+            request.setJsonEntity(mapper.writeValueAsString(body));
+
+            JsonNode hits = readTree(restClient.performRequest(request)).path("hits").path("hits");
+            for (JsonNode hit : hits) {
+                last = hit.path("_seq_no").asLong();
+                Employee employee = employeeReader.readValue(hit.path("_source"));
+                target.index(hit.path("_id").asText(), employee, last, hit.path("_primary_term").asLong());
+            }
+            if (hits.size() < PAGE_SIZE) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * The index behind the alias with its document count and the global checkpoint of each
+     * shard's primary, null while there is no index.
+     */
+    private Shards shards() throws IOException {
+        Request request = new Request(
+                "GET",
+                "/" + indexManager.alias() + "/_stats/docs"
+        );
+        request.addParameter("level", "shards");
+        Iterator<Map.Entry<String, JsonNode>> indices = readTree(restClient.performRequest(request))
+                .path("indices")
+                .fields();
+        if (!indices.hasNext()) {
+            return null;
+        }
+        Map.Entry<String, JsonNode> index = indices.next();
+        JsonNode shards = index.getValue().path("shards");
+        long[] globalCheckpoints = new long[shards.size()];
+        for (int shard = 0; shard < globalCheckpoints.length; shard++) {
+            globalCheckpoints[shard] = -1;
+            for (JsonNode copy : shards.path(String.valueOf(shard))) {
+                if (copy.path("routing").path("primary").asBoolean()) {
+                    globalCheckpoints[shard] = copy.path("seq_no").path("global_checkpoint").asLong(-1);
+                }
+            }
+        }
+        long documents = index.getValue().path("primaries").path("docs").path("count").asLong();
+        return new Shards(index.getKey(), documents, globalCheckpoints);
+    }
+
+    private JsonNode readTree(Response response) throws IOException {
+        try (InputStream content = response.getEntity().getContent()) {
+            return mapper.readTree(content);
+        }
+    }
+
+    private record Shards(String index, long documents, long[] globalCheckpoints) {
+    }
+
+}
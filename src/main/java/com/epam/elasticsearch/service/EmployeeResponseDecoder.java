@@ -0,0 +1,451 @@
+package com.epam.elasticsearch.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.stereotype.Component;
+
+import com.epam.elasticsearch.dto.AggregationBucket;
+import com.epam.elasticsearch.dto.Employee;
+import com.epam.elasticsearch.dto.EmployeeLookup;
+import com.epam.elasticsearch.dto.EmployeeSummary;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.format.DataFormatDetector;
+import com.fasterxml.jackson.core.format.DataFormatMatcher;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Reads Elasticsearch responses token by token straight from the response stream,
+ * binding every _source with one cached reader and skipping everything else.
+ * Smile responses are told apart from JSON by their header and read the same way.
+ */
+@Component
+public class EmployeeResponseDecoder {
+
+    private static final String IMPL = "service";
+
+    private final ObjectMapper mapper;
+
+    private final JsonFactory factory;
+
+    private final DataFormatDetector detector;
+
+    private final ObjectReader employeeReader;
+
+    private final ElasticsearchMetrics metrics;
+
+    public EmployeeResponseDecoder(ObjectMapper mapper, ElasticsearchMetrics metrics) {
+        this.mapper = mapper;
+        this.metrics = metrics;
+        this.factory = mapper.getFactory();
+        this.detector = new DataFormatDetector(new SmileFactory(), factory);
+        this.employeeReader = mapper.readerFor(Employee.class);
+    }
+
+    public SearchPage decodeSearch(InputStream body) throws IOException {
+        List<Employee> employees = new ArrayList<>();
+        HitsTotal total = new HitsTotal();
+        JsonNode lastSort = null;
+        String pitId = null;
+
+        Timer.Sample sample = metrics.start();
+        try (JsonParser parser = createParser(body)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case "took" -> metrics.took(IMPL, "search", parser.getLongValue());
+                    case "pit_id" -> pitId = parser.getText();
+                    case "hits" -> lastSort = readHits(parser, employees, total);
+                    default -> parser.skipChildren();
+                }
+            }
+        } finally {
+            metrics.deserialized("search", sample);
+        }
+        return new SearchPage(employees, lastSort, pitId, total.value, total.relation);
+    }
+
+    /**
+     * Reads hits into summaries field by field, anything but name, email and address.town
+     * is skipped without being bound even if the request did not filter _source.
+     */
+    public List<EmployeeSummary> decodeSummaries(InputStream body) throws IOException {
+        List<EmployeeSummary> summaries = new ArrayList<>();
+        Timer.Sample sample = metrics.start();
+        try (JsonParser parser = createParser(body)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                switch (field) {
+                    case "took" -> metrics.took(IMPL, "summary", parser.getLongValue());
+                    case "hits" -> readSummaryHits(parser, summaries);
+                    default -> parser.skipChildren();
+                }
+            }
+        } finally {
+            metrics.deserialized("summary", sample);
+        }
+        return summaries;
+    }
+
+    public Optional<Employee> decodeDocument(InputStream body) throws IOException {
+        Timer.Sample sample = metrics.start();
+        try (JsonParser parser = createParser(body)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("_source".equals(field)) {
+                    return Optional.of(employeeReader.readValue(parser));
+                }
+                parser.skipChildren();
+            }
+        } finally {
+            metrics.deserialized("get", sample);
+        }
+        return Optional.empty();
+    }
+
+    public List<EmployeeLookup> decodeMultiGet(InputStream body) throws IOException {
+        List<EmployeeLookup> lookups = new ArrayList<>();
+        Timer.Sample sample = metrics.start();
+        try (JsonParser parser = createParser(body)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (!"docs".equals(field)) {
+                    parser.skipChildren();
+                    continue;
+                }
+                expect(parser, parser.currentToken(), JsonToken.START_ARRAY);
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    lookups.add(readDoc(parser));
+                }
+            }
+        } finally {
+            metrics.deserialized("mget", sample);
+        }
+        return lookups;
+    }
+
+    /**
+     * Reads search hits as lookups, for ids searched with an ids query instead of _mget.
+     */
+    public List<EmployeeLookup> decodeHitLookups(InputStream body) throws IOException {
+        List<EmployeeLookup> lookups = new ArrayList<>();
+        Timer.Sample sample = metrics.start();
+        try (JsonParser parser = createParser(body)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (!"hits".equals(field)) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String hitsField = parser.getCurrentName();
+                    parser.nextToken();
+                    if (!"hits".equals(hitsField)) {
+                        parser.skipChildren();
+                        continue;
+                    }
+                    expect(parser, parser.currentToken(), JsonToken.START_ARRAY);
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        lookups.add(readDoc(parser));
+                    }
+                }
+            }
+        } finally {
+            metrics.deserialized("mget", sample);
+        }
+        return lookups;
+    }
+
+    /**
+     * Reads the buckets of the single top-level aggregation. Inside a bucket, a sub-aggregation
+     * with buckets becomes the nested buckets and one with min/max/avg/sum fills the bucket stats.
+     */
+    public List<AggregationBucket> decodeAggregation(InputStream body) throws IOException {
+        Timer.Sample sample = metrics.start();
+        try (JsonParser parser = createParser(body)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("took".equals(field)) {
+                    metrics.took(IMPL, "aggregation", parser.getLongValue());
+                    continue;
+                }
+                if (!"aggregations".equals(field)) {
+                    parser.skipChildren();
+                    continue;
+                }
+                expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+                if (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    parser.nextToken();
+                    BucketBuilder aggregation = new BucketBuilder();
+                    readAggregate(parser, aggregation);
+                    return aggregation.buckets;
+                }
+            }
+        } finally {
+            metrics.deserialized("aggregation", sample);
+        }
+        return List.of();
+    }
+
+    /**
+     * Reads a small response, such as a write result, in either format.
+     */
+    public JsonNode readTree(InputStream body) throws IOException {
+        try (JsonParser parser = createParser(body)) {
+            return mapper.readTree(parser);
+        }
+    }
+
+    private JsonParser createParser(InputStream body) throws IOException {
+        DataFormatMatcher format = detector.findFormat(body);
+        return format.hasMatch() ? format.createParserWithMatch() : factory.createParser(format.getDataStream());
+    }
+
+    private void readAggregate(JsonParser parser, BucketBuilder bucket) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "buckets" -> {
+                    expect(parser, token, JsonToken.START_ARRAY);
+                    bucket.buckets = new ArrayList<>();
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        bucket.buckets.add(readBucket(parser));
+                    }
+                }
+                case "count" -> bucket.count = parser.getLongValue();
+                case "min" -> bucket.min = readDouble(parser, token);
+                case "max" -> bucket.max = readDouble(parser, token);
+                case "avg" -> bucket.avg = readDouble(parser, token);
+                case "sum" -> bucket.sum = readDouble(parser, token);
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    private AggregationBucket readBucket(JsonParser parser) throws IOException {
+        BucketBuilder bucket = new BucketBuilder();
+        String keyAsString = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "key" -> bucket.key = parser.getText();
+                case "key_as_string" -> keyAsString = parser.getText();
+                case "doc_count" -> bucket.docCount = parser.getLongValue();
+                default -> {
+                    if (token == JsonToken.START_OBJECT) {
+                        readAggregate(parser, bucket);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        }
+        if (keyAsString != null) {
+            bucket.key = keyAsString;
+        }
+        return bucket.build();
+    }
+
+    private static Double readDouble(JsonParser parser, JsonToken token) throws IOException {
+        return token == JsonToken.VALUE_NULL ? null : parser.getDoubleValue();
+    }
+
+    private EmployeeLookup readDoc(JsonParser parser) throws IOException {
+        String id = null;
+        Employee employee = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "_id" -> id = parser.getText();
+                case "_source" -> employee = employeeReader.readValue(parser);
+                default -> parser.skipChildren();
+            }
+        }
+        return employee != null ? new EmployeeLookup(id, true, employee) : EmployeeLookup.missing(id);
+    }
+
+    private JsonNode readHits(JsonParser parser, List<Employee> employees, HitsTotal total) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        JsonNode lastSort = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("total".equals(field) && token == JsonToken.START_OBJECT) {
+                readTotal(parser, total);
+                continue;
+            }
+            if (!"hits".equals(field)) {
+                parser.skipChildren();
+                continue;
+            }
+            expect(parser, parser.currentToken(), JsonToken.START_ARRAY);
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                lastSort = readHit(parser, employees);
+            }
+        }
+        return lastSort;
+    }
+
+    private static void readTotal(JsonParser parser, HitsTotal total) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "value" -> total.value = parser.getLongValue();
+                case "relation" -> total.relation = parser.getText();
+                default -> parser.skipChildren();
+            }
+        }
+    }
+
+    private JsonNode readHit(JsonParser parser, List<Employee> employees) throws IOException {
+        JsonNode sort = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "_source" -> employees.add(employeeReader.readValue(parser));
+                case "sort" -> sort = mapper.readTree(parser);
+                default -> parser.skipChildren();
+            }
+        }
+        return sort;
+    }
+
+    private void readSummaryHits(JsonParser parser, List<EmployeeSummary> summaries) throws IOException {
+        expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (!"hits".equals(field)) {
+                parser.skipChildren();
+                continue;
+            }
+            expect(parser, parser.currentToken(), JsonToken.START_ARRAY);
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                summaries.add(readSummaryHit(parser));
+            }
+        }
+    }
+
+    private EmployeeSummary readSummaryHit(JsonParser parser) throws IOException {
+        String id = null;
+        String name = null;
+        String email = null;
+        String town = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("_id".equals(field)) {
+                id = parser.getText();
+                continue;
+            }
+            if (!"_source".equals(field)) {
+                parser.skipChildren();
+                continue;
+            }
+            expect(parser, parser.currentToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String sourceField = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                switch (sourceField) {
+                    case "name" -> name = parser.getValueAsString();
+                    case "email" -> email = parser.getValueAsString();
+                    case "address" -> {
+                        if (token == JsonToken.START_OBJECT) {
+                            town = readTown(parser);
+                        }
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+        return new EmployeeSummary(id, name, email, town);
+    }
+
+    private static String readTown(JsonParser parser) throws IOException {
+        String town = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("town".equals(field)) {
+                town = parser.getValueAsString();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return town;
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException(parser, "Expected " + expected + " but found " + actual);
+        }
+    }
+
+    private static final class BucketBuilder {
+
+        private String key;
+
+        private long docCount;
+
+        private long count = -1;
+
+        private Double min;
+
+        private Double max;
+
+        private Double avg;
+
+        private Double sum;
+
+        private List<AggregationBucket> buckets;
+
+        private AggregationBucket build() {
+            if (count == 0) {
+                return new AggregationBucket(key, docCount, null, null, null, null, buckets);
+            }
+            return new AggregationBucket(key, docCount, min, max, avg, sum, buckets);
+        }
+
+    }
+
+    private static final class HitsTotal {
+
+        private Long value;
+
+        private String relation;
+
+    }
+
+    public record SearchPage(List<Employee> employees, JsonNode lastSort, String pitId, Long total, String totalRelation) {
+    }
+
+}
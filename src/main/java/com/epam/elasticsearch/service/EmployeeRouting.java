@@ -0,0 +1,159 @@
+package com.epam.elasticsearch.service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.epam.elasticsearch.dto.Employee;
+import com.epam.elasticsearch.dto.EmployeeEntry;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Custom shard routing by one employee field, address.country by default, so searches and
+ * aggregations pinned to a country ask one shard instead of all of them. Routing only applies
+ * once the index behind the alias was built for it (EmployeeIndexManager records the field in the
+ * mapping _meta), enabling it on an existing index takes a reindex, which also routes the copied
+ * documents. The field is part of a document's identity: a write with another value first deletes
+ * the copy indexed under the old one, a partial update can't change it.
+ */
+@Component
+@Slf4j
+public class EmployeeRouting {
+
+    private static final Map<String, Function<Employee, String>> FIELDS = Map.of(
+            "address.country", employee -> employee.address() == null ? null : employee.address().country(),
+            "address.town", employee -> employee.address() == null ? null : employee.address().town(),
+            "name", Employee::name,
+            "email", Employee::email);
+
+    private final String field;
+
+    private final Function<Employee, String> extractor;
+
+    private volatile boolean active;
+
+    private boolean checked;
+
+    public EmployeeRouting(@Value("${application.elasticsearch.routing.enabled:false}") boolean enabled,
+                           @Value("${application.elasticsearch.routing.field:address.country}") String field) {
+        if (enabled && !FIELDS.containsKey(field)) {
+            throw new IllegalStateException("Unsupported routing field " + field + ", use one of " + FIELDS.keySet());
+        }
+        this.field = enabled ? field : null;
+        this.extractor = enabled ? FIELDS.get(field) : null;
+    }
+
+    /**
+     * Field new indices are routed by, null when routing is disabled.
+     */
+    public String field() {
+        return field;
+    }
+
+    /**
+     * True when the index behind the alias is routed by the configured field.
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Called with the routing field recorded on the index behind the alias, null for an unrouted index.
+     */
+    synchronized void indexRoutedBy(String indexField) {
+        boolean routed = field != null && field.equals(indexField);
+        if (routed && !active) {
+            log.info("Routing employees by " + field);
+        } else if (!routed && (active || !checked) && (field != null || indexField != null)) {
+            log.warn("Routing is configured for " + field + " but the index is routed by " + indexField
+                    + ", requests go unrouted to all shards until it is reindexed");
+        }
+        checked = true;
+        active = routed;
+    }
+
+    public String of(Employee employee) {
+        if (!active) {
+            return null;
+        }
+        String value = extractor.apply(employee);
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    /**
+     * The written employees whose copy was located under another routing value than the one they
+     * are written with now, mapped to that value (null for a copy routed by id). The old copy has
+     * to be deleted before the write, or it stays behind on its shard next to the new one.
+     * Located maps the ids found by a search to their routing.
+     */
+    public Map<String, String> moved(List<EmployeeEntry> writes, Map<String, String> located) {
+        Map<String, String> moved = new HashMap<>();
+        if (!active) {
+            return moved;
+        }
+        for (EmployeeEntry write : writes) {
+            if (located.containsKey(write.id()) && !Objects.equals(located.get(write.id()), of(write.employee()))) {
+                moved.put(write.id(), located.get(write.id()));
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Rejects partial updates of the field, the document would have to move to another shard.
+     */
+    public void checkUpdate(Employee doc) {
+        if (active && doc != null && extractor.apply(doc) != null) {
+            log.error("Bad request: " + field + " routes the employee and can't be updated");
+            throw new IllegalArgumentException("Bad request: " + field
+                    + " routes the employee and can't be updated, delete and create it instead");
+        }
+    }
+
+    /**
+     * Routing of a search whose term filter pins the field, one shard per value.
+     */
+    public String of(EmployeeSearchQuery query) {
+        return active ? join(query.termValues(field)) : null;
+    }
+
+    public String of(EmployeeAggregation aggregation) {
+        String value = active ? aggregation.filters().get(field) : null;
+        return value == null ? null : join(List.of(value));
+    }
+
+    /**
+     * Painless that sets the routing of a document copied by _reindex from its source,
+     * or clears it when routing is disabled.
+     */
+    String copyScript() {
+        if (field == null) {
+            return "ctx._routing = null";
+        }
+        return "def value = ctx._source." + field.replace(".", "?.") + "; "
+                + "ctx._routing = value == null || value == '' ? null : value";
+    }
+
+    /**
+     * Searches split routing on commas and documents without a value are routed by id,
+     * a search for such a value goes unrouted to all shards.
+     */
+    private static String join(List<String> values) {
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        for (String value : values) {
+            if (value == null || value.isEmpty() || value.indexOf(',') >= 0) {
+                return null;
+            }
+        }
+        return String.join(",", values);
+    }
+
+}
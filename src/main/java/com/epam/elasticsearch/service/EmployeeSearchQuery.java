@@ -0,0 +1,394 @@
+package com.epam.elasticsearch.service;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.util.MultiValueMap;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Search over the Employee fields shared by both service implementations.
+ * Exact and range predicates go to filter context so Elasticsearch can cache them,
+ * only full-text matching on description is scored.
+ */
+@Slf4j
+public final class EmployeeSearchQuery {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final Set<String> TERM_FIELDS = Set.of(
+            "name", "email", "skills", "address.country", "address.town",
+            "experience", "salary", "rating", "dob", "verified");
+
+    private static final Set<String> RANGE_FIELDS = Set.of("experience", "salary", "rating", "dob");
+
+    private static final Set<String> RANGE_OPERATORS = Set.of("gt", "gte", "lt", "lte");
+
+    private static final Set<String> TEXT_FIELDS = Set.of("description");
+
+    private static final int MAX_RESULT_WINDOW = 10_000;
+
+    private final Map<String, List<String>> terms = new LinkedHashMap<>();
+
+    private final Map<String, Map<String, String>> ranges = new LinkedHashMap<>();
+
+    private final Map<String, String> matches = new LinkedHashMap<>();
+
+    private final List<String> sourceFields = new ArrayList<>();
+
+    private final Map<String, String> sort = new LinkedHashMap<>();
+
+    private Integer from;
+
+    private Integer size;
+
+    private JsonNode searchAfter;
+
+    private String pitId;
+
+    private String pitKeepAlive;
+
+    private String trackTotalHits;
+
+    /**
+     * Parses request parameters: exact values by field name (skills=java&skills=go),
+     * ranges as field_op (salary_gte=3000), full text on description,
+     * plus from, size, fields (comma separated _source includes) and sort (rating:desc).
+     */
+    public static EmployeeSearchQuery parse(MultiValueMap<String, String> params) {
+        EmployeeSearchQuery query = new EmployeeSearchQuery();
+        for (Map.Entry<String, List<String>> param : params.entrySet()) {
+            String key = param.getKey();
+            List<String> values = param.getValue();
+            if (values.isEmpty() || values.stream().anyMatch(String::isEmpty)) {
+                throw badRequest("Value(s) is empty for " + key);
+            }
+            switch (key) {
+                case "from" -> query.from(parseInt(key, values.get(0)));
+                case "size" -> query.size(parseInt(key, values.get(0)));
+                case "fields" -> values.forEach(value -> query.source(value.split(",")));
+                case "sort" -> values.forEach(value -> {
+                    String[] parts = value.split(":", 2);
+                    query.sort(parts[0], parts.length > 1 ? parts[1] : "asc");
+                });
+                default -> query.parsePredicate(key, values);
+            }
+        }
+        return query;
+    }
+
+    private void parsePredicate(String key, List<String> values) {
+        if (TEXT_FIELDS.contains(key)) {
+            match(key, String.join(" ", values));
+            return;
+        }
+        if (TERM_FIELDS.contains(key)) {
+            terms(key, values);
+            return;
+        }
+        int separator = key.lastIndexOf('_');
+        if (separator > 0) {
+            String field = key.substring(0, separator);
+            String operator = key.substring(separator + 1);
+            if (RANGE_FIELDS.contains(field) && RANGE_OPERATORS.contains(operator)) {
+                range(field, operator, values.get(0));
+                return;
+            }
+        }
+        throw badRequest("Unsupported search parameter " + key);
+    }
+
+    public EmployeeSearchQuery terms(String field, List<String> values) {
+        if (!TERM_FIELDS.contains(field)) {
+            throw badRequest("Unsupported term field " + field);
+        }
+        terms.computeIfAbsent(field, key -> new ArrayList<>()).addAll(values);
+        return this;
+    }
+
+    public EmployeeSearchQuery range(String field, String operator, String value) {
+        if (!RANGE_FIELDS.contains(field) || !RANGE_OPERATORS.contains(operator)) {
+            throw badRequest("Unsupported range " + field + " " + operator);
+        }
+        ranges.computeIfAbsent(field, key -> new LinkedHashMap<>()).put(operator, value);
+        return this;
+    }
+
+    public EmployeeSearchQuery match(String field, String text) {
+        if (!TEXT_FIELDS.contains(field)) {
+            throw badRequest("Unsupported text field " + field);
+        }
+        matches.put(field, text);
+        return this;
+    }
+
+    public EmployeeSearchQuery source(String... fields) {
+        for (String field : fields) {
+            sourceFields.add(EmployeeProjection.validate(field.trim()));
+        }
+        return this;
+    }
+
+    /**
+     * Replaces any requested fields with the projection.
+     */
+    public EmployeeSearchQuery projection(EmployeeProjection projection) {
+        sourceFields.clear();
+        sourceFields.addAll(projection.fields());
+        return this;
+    }
+
+    public EmployeeSearchQuery sort(String field, String order) {
+        if (!TERM_FIELDS.contains(field) || !("asc".equals(order) || "desc".equals(order))) {
+            throw badRequest("Unsupported sort " + field + ":" + order);
+        }
+        sort.put(field, order);
+        return this;
+    }
+
+    public EmployeeSearchQuery from(int from) {
+        if (from < 0) {
+            throw badRequest("from must not be negative");
+        }
+        this.from = from;
+        return this;
+    }
+
+    public EmployeeSearchQuery size(int size) {
+        if (size < 0 || size > MAX_RESULT_WINDOW) {
+            throw badRequest("size must be between 0 and " + MAX_RESULT_WINDOW);
+        }
+        this.size = size;
+        return this;
+    }
+
+    /**
+     * Adds a sort field that is not open to request parameters, such as the _shard_doc tiebreaker.
+     */
+    EmployeeSearchQuery tiebreaker(String field) {
+        sort.putIfAbsent(field, "asc");
+        return this;
+    }
+
+    /**
+     * Values the query filters the field by, null when it doesn't filter on it.
+     */
+    public List<String> termValues(String field) {
+        return terms.get(field);
+    }
+
+    public Map<String, String> sort() {
+        return sort;
+    }
+
+    Map<String, List<String>> terms() {
+        return terms;
+    }
+
+    Map<String, Map<String, String>> ranges() {
+        return ranges;
+    }
+
+    /**
+     * True when the query only filters: no text match, sort, source filtering, search_after or point in time.
+     */
+    boolean isFilterOnly() {
+        return matches.isEmpty() && sort.isEmpty() && sourceFields.isEmpty() && searchAfter == null && pitId == null;
+    }
+
+    public boolean hasFrom() {
+        return from != null;
+    }
+
+    Integer from() {
+        return from;
+    }
+
+    public Integer size() {
+        return size;
+    }
+
+    /**
+     * Sort values of the last hit of the previous page, an array of scalars.
+     */
+    public EmployeeSearchQuery searchAfter(JsonNode values) {
+        this.searchAfter = values;
+        return this;
+    }
+
+    /**
+     * Searches a point in time instead of the index, the request must then not name an index.
+     */
+    public EmployeeSearchQuery pointInTime(String id, String keepAlive) {
+        this.pitId = id;
+        this.pitKeepAlive = keepAlive;
+        return this;
+    }
+
+    /**
+     * true, false or a number of hits to count exactly.
+     */
+    public EmployeeSearchQuery trackTotalHits(String value) {
+        if (!"true".equals(value) && !"false".equals(value)) {
+            parseInt("track_total_hits", value);
+        }
+        this.trackTotalHits = value;
+        return this;
+    }
+
+    public String toJson() {
+        StringWriter writer = new StringWriter(256);
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+            writeTo(generator);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    public void writeTo(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        if (from != null) {
+            generator.writeNumberField("from", from);
+        }
+        if (size != null) {
+            generator.writeNumberField("size", size);
+        }
+        if (!sourceFields.isEmpty()) {
+            // Object form, the typed client rejects a bare array here
+            generator.writeObjectFieldStart("_source");
+            generator.writeArrayFieldStart("includes");
+            for (String field : sourceFields) {
+                generator.writeString(field);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        if (trackTotalHits != null) {
+            if ("true".equals(trackTotalHits) || "false".equals(trackTotalHits)) {
+                generator.writeBooleanField("track_total_hits", Boolean.parseBoolean(trackTotalHits));
+            } else {
+                generator.writeNumberField("track_total_hits", Integer.parseInt(trackTotalHits));
+            }
+        }
+        if (pitId != null) {
+            generator.writeObjectFieldStart("pit");
+            generator.writeStringField("id", pitId);
+            generator.writeStringField("keep_alive", pitKeepAlive);
+            generator.writeEndObject();
+        }
+        generator.writeFieldName("query");
+        writeQuery(generator);
+        if (!sort.isEmpty()) {
+            generator.writeArrayFieldStart("sort");
+            for (Map.Entry<String, String> field : sort.entrySet()) {
+                generator.writeStartObject();
+                generator.writeObjectFieldStart(field.getKey());
+                generator.writeStringField("order", field.getValue());
+                generator.writeEndObject();
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+        if (searchAfter != null) {
+            generator.writeArrayFieldStart("search_after");
+            for (JsonNode value : searchAfter) {
+                writeScalar(generator, value);
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeScalar(JsonGenerator generator, JsonNode value) throws IOException {
+        if (value.isIntegralNumber()) {
+            generator.writeNumber(value.bigIntegerValue());
+        } else if (value.isNumber()) {
+            generator.writeNumber(value.doubleValue());
+        } else if (value.isBoolean()) {
+            generator.writeBoolean(value.booleanValue());
+        } else if (value.isTextual()) {
+            generator.writeString(value.textValue());
+        } else if (value.isNull()) {
+            generator.writeNull();
+        } else {
+            throw badRequest("Unsupported search_after value " + value);
+        }
+    }
+
+    private void writeQuery(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        if (terms.isEmpty() && ranges.isEmpty() && matches.isEmpty()) {
+            generator.writeObjectFieldStart("match_all");
+            generator.writeEndObject();
+            generator.writeEndObject();
+            return;
+        }
+
+        generator.writeObjectFieldStart("bool");
+        if (!matches.isEmpty()) {
+            generator.writeArrayFieldStart("must");
+            for (Map.Entry<String, String> match : matches.entrySet()) {
+                generator.writeStartObject();
+                generator.writeObjectFieldStart("match");
+                generator.writeStringField(match.getKey(), match.getValue());
+                generator.writeEndObject();
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+        if (!terms.isEmpty() || !ranges.isEmpty()) {
+            generator.writeArrayFieldStart("filter");
+            for (Map.Entry<String, List<String>> term : terms.entrySet()) {
+                generator.writeStartObject();
+                generator.writeObjectFieldStart("terms");
+                generator.writeArrayFieldStart(term.getKey());
+                for (String value : term.getValue()) {
+                    generator.writeString(value);
+                }
+                generator.writeEndArray();
+                generator.writeEndObject();
+                generator.writeEndObject();
+            }
+            for (Map.Entry<String, Map<String, String>> range : ranges.entrySet()) {
+                generator.writeStartObject();
+                generator.writeObjectFieldStart("range");
+                generator.writeObjectFieldStart(range.getKey());
+                for (Map.Entry<String, String> bound : range.getValue().entrySet()) {
+                    generator.writeStringField(bound.getKey(), bound.getValue());
+                }
+                generator.writeEndObject();
+                generator.writeEndObject();
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    private static int parseInt(String key, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw badRequest(key + " must be a number");
+        }
+    }
+
+    private static IllegalArgumentException badRequest(String message) {
+        log.error("Bad request: " + message);
+        return new IllegalArgumentException("Bad request: " + message);
+    }
+
+}
@@ -1,25 +1,72 @@
 package com.epam.elasticsearch.service;
 
+import com.epam.elasticsearch.dto.AggregationBucket;
+import com.epam.elasticsearch.dto.BulkResult;
 import com.epam.elasticsearch.dto.Employee;
+import com.epam.elasticsearch.dto.EmployeeEntry;
+import com.epam.elasticsearch.dto.EmployeeLookup;
+import com.epam.elasticsearch.dto.EmployeePage;
+import com.epam.elasticsearch.dto.EmployeePatch;
+import com.epam.elasticsearch.dto.EmployeeSummary;
+import com.epam.elasticsearch.dto.UpdateResult;
 import org.springframework.util.MultiValueMap;
 
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 public interface EmployeeService {
 
-    List<Employee> getAll() throws IOException;
+    /**
+     * Every employee in one list, throws TooManyEmployeesException as soon as there are more than
+     * maxSize of them. exportAll is the way to read a large index.
+     */
+    List<Employee> getAll(EmployeeProjection projection, int maxSize) throws IOException;
 
-    Optional<Employee> getById(String id) throws IOException;
+    void exportAll(int pageSize, EmployeeProjection projection, EmployeePageHandler handler) throws IOException;
+
+    /**
+     * routing is the value the employee was indexed with, see EmployeeRouting. Without it a routed
+     * index is asked on every shard first.
+     */
+    Optional<Employee> getById(String id, String routing) throws IOException;
+
+    List<EmployeeLookup> getByIds(List<String> ids, EmployeeProjection projection) throws IOException;
 
     void createWithId(Employee employee, String id) throws IOException;
 
-    void deleteById(String id) throws IOException;
+    /**
+     * Applies the patch through _update, empty when the employee doesn't exist.
+     * Throws IllegalStateException when if_seq_no and if_primary_term no longer match.
+     */
+    Optional<UpdateResult> update(String id, String routing, EmployeePatch patch) throws IOException;
+
+    void deleteById(String id, String routing) throws IOException;
+
+    /**
+     * An explicit initial load, switches the index to bulk-load mode when it's enabled.
+     * The mode changes the live index for every instance, so a load should go through one instance only.
+     */
+    BulkResult bulkCreate(Iterator<EmployeeEntry> entries) throws IOException;
+
+    /**
+     * Same as bulkCreate without switching the index to bulk-load mode, for regular client batches.
+     */
+    BulkResult bulkIndex(Iterator<EmployeeEntry> entries) throws IOException;
 
     List<Employee> search(MultiValueMap<String, String> params) throws IOException;
 
-    String aggregate(Map<String, String> params) throws IOException;
+    /**
+     * A page of search results in a stable order with the cursor to the next one, see EmployeePageQuery.
+     */
+    EmployeePage searchPage(MultiValueMap<String, String> params) throws IOException;
+
+    List<EmployeeSummary> searchSummaries(MultiValueMap<String, String> params) throws IOException;
+
+    List<EmployeeSummary> suggest(String prefix, Integer size) throws IOException;
+
+    List<AggregationBucket> aggregate(Map<String, String> params) throws IOException;
 
 }
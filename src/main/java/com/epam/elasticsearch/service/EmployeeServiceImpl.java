@@ -1,26 +1,43 @@
 package com.epam.elasticsearch.service;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
-import org.apache.http.util.EntityUtils;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.HttpAsyncResponseConsumerFactory;
 import org.elasticsearch.client.Request;
 import org.elasticsearch.client.Response;
 import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.ResponseListener;
 import org.elasticsearch.client.RestClient;
 import org.springframework.stereotype.Service;
 import org.springframework.util.MultiValueMap;
 
+import com.epam.elasticsearch.dto.AggregationBucket;
+import com.epam.elasticsearch.dto.BulkResult;
 import com.epam.elasticsearch.dto.Employee;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.epam.elasticsearch.dto.EmployeeEntry;
+import com.epam.elasticsearch.dto.EmployeeLookup;
+import com.epam.elasticsearch.dto.EmployeePage;
+import com.epam.elasticsearch.dto.EmployeePatch;
+import com.epam.elasticsearch.dto.EmployeeSummary;
+import com.epam.elasticsearch.dto.UpdateResult;
+import com.epam.elasticsearch.service.ElasticsearchLimiter.Budget;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -28,211 +45,819 @@ import lombok.extern.slf4j.Slf4j;
 @Service("service")
 @RequiredArgsConstructor
 @Slf4j
-public class EmployeeServiceImpl implements EmployeeService {
+public class EmployeeServiceImpl implements EmployeeService, AsyncEmployeeService {
+
+    private static final ContentType NDJSON = ContentType.create("application/x-ndjson");
+
+    private static final String IMPL = "service";
+
+    private static final int PAGE_SIZE = 1000;
+
+    private static final String PIT_KEEP_ALIVE = "1m";
+
+    private static final int NOT_FOUND = 404;
+
+    private static final int CONFLICT = 409;
 
     private final RestClient restClient;
 
     private final ObjectMapper mapper;
 
-    private static String getResponseBody(Response response) throws IOException {
-        return EntityUtils.toString(response.getEntity());
+    private final EmployeeResponseDecoder decoder;
+
+    private final BulkIngestionPipeline bulkPipeline;
+
+    private final EmployeeCache cache;
+
+    private final AggregationCache aggregationCache;
+
+    private final SuggestionCache suggestionCache;
+
+    private final MultiGetSplitter multiGetSplitter;
+
+    private final ElasticsearchLimiter limiter;
+
+    private final EmployeeIndexManager indexManager;
+
+    private final ElasticsearchWireFormat wireFormat;
+
+    private final EmployeeRouting employeeRouting;
+
+    private final EmployeeReplica replica;
+
+    private final HedgedReads hedgedReads;
+
+    private final HttpAsyncResponseConsumerFactory responseConsumerFactory;
+
+    @Override
+    public List<Employee> getAll(EmployeeProjection projection, int maxSize) throws IOException {
+        List<Employee> employees = new ArrayList<>();
+        // One more than maxSize is enough to tell that the index holds too many
+        exportAll(Math.min(PAGE_SIZE, maxSize + 1), projection, page -> {
+            if (employees.size() + page.size() > maxSize) {
+                throw new TooManyEmployeesException(maxSize);
+            }
+            employees.addAll(page);
+        });
+        return employees;
     }
 
     @Override
-    public List<Employee> getAll() throws IOException {
-        Request request = new Request(
-                "GET",
-                "/employees/_search"
-        );
+    public void exportAll(int pageSize, EmployeeProjection projection, EmployeePageHandler handler) throws IOException {
+        String pitId = openPointInTime(PIT_KEEP_ALIVE, null);
+        try {
+            JsonNode searchAfter = null;
+            while (true) {
+                ObjectNode query = mapper.createObjectNode();
+                query.put("size", pageSize);
+                query.putObject("pit")
+                        .put("id", pitId)
+                        .put("keep_alive", PIT_KEEP_ALIVE);
+                query.putArray("sort")
+                        .addObject()
+                        .put("_shard_doc", "asc");
+                if (searchAfter != null) {
+                    query.set("search_after", searchAfter);
+                }
+                if (!projection.isAll()) {
+                    ArrayNode source = query.putArray("_source");
+                    projection.fields().forEach(source::add);
+                }
 
-        Response response = restClient.performRequest(request);
-        String responseBody = getResponseBody(response);
+                // Point-in-time searches must not name the index in the path
+                Request request = new Request(
+                        "POST",
+                        "/_search"
+                );
+                request.setJsonEntity(mapper.writeValueAsString(query));
+                wireFormat.accept(request);
+
+                Response response = performRequest(Budget.READ, request);
+                EmployeeResponseDecoder.SearchPage page = decoder.decodeSearch(response.getEntity().getContent());
+                if (page.pitId() != null) {
+                    pitId = page.pitId();
+                }
 
-        return getEmployeesFromResponse(responseBody);
+                if (page.employees().isEmpty()) {
+                    return;
+                }
+                handler.onPage(page.employees());
+                if (page.employees().size() < pageSize) {
+                    return;
+                }
+                searchAfter = page.lastSort();
+            }
+        } finally {
+            closePointInTime(pitId);
+        }
     }
 
     @Override
-    public Optional<Employee> getById(String id) throws IOException {
-        String path = String.format("/employees/_doc/%s", id);
-        Request request = new Request(
-                "GET",
-                path
-        );
+    public Optional<Employee> getById(String id, String routing) throws IOException {
+        return cache.get(id, routing, key -> loadById(key, routing));
+    }
 
+    @Override
+    public CompletableFuture<Optional<Employee>> getByIdAsync(String id, String routing) {
+        return cache.getAsync(id, routing, key -> loadByIdAsync(key, routing));
+    }
+
+    private Optional<Employee> loadById(String id, String routing) throws IOException {
         Response response;
         try {
-            response = restClient.performRequest(request);
+            response = performRequest(Budget.READ, getRequest(id, resolveRouting(id, routing), null));
         } catch (ResponseException e) {
             log.warn("Employee not found by index: " + id);
             return Optional.empty();
         }
 
-        String responseBody = getResponseBody(response);
+        return decoder.decodeDocument(response.getEntity().getContent());
+    }
+
+    private CompletableFuture<Optional<Employee>> loadByIdAsync(String id, String routing) {
+        return resolveRoutingAsync(id, routing)
+                .thenCompose(route -> hedgedReads.execute(IMPL, "get",
+                        preference -> performRequestAsync(Budget.READ, getRequest(id, route, preference))))
+                .thenApplyAsync(response -> Futures.uncheck(decoder::decodeDocument, contentOf(response)))
+                .exceptionally(e -> {
+                    if (Futures.unwrap(e) instanceof ResponseException) {
+                        log.warn("Employee not found by index: " + id);
+                        return Optional.empty();
+                    }
+                    throw e instanceof CompletionException completion ? completion : new CompletionException(e);
+                });
+    }
+
+    @Override
+    public List<EmployeeLookup> getByIds(List<String> ids, EmployeeProjection projection) throws IOException {
+        return multiGetSplitter.getByIds(ids, batch -> multiGet(batch, projection));
+    }
+
+    private List<EmployeeLookup> multiGet(List<String> ids, EmployeeProjection projection) throws IOException {
+        if (employeeRouting.isActive()) {
+            return routedMultiGet(ids, projection);
+        }
+        Request request = new Request(
+                "POST",
+                "/" + indexManager.alias() + "/_mget"
+        );
+        if (!projection.isAll()) {
+            request.addParameter("_source_includes", projection.includes());
+        }
+        request.setJsonEntity(mapper.writeValueAsString(Map.of("ids", ids)));
+        wireFormat.accept(request);
+
+        Response response = performRequest(Budget.READ, request);
+        return decoder.decodeMultiGet(response.getEntity().getContent());
+    }
+
+    /**
+     * _mget only finds routed documents with their routing, an ids query asks every shard instead.
+     * Like every search it sees writes after the next refresh.
+     */
+    private List<EmployeeLookup> routedMultiGet(List<String> ids, EmployeeProjection projection) throws IOException {
+        ObjectNode query = mapper.createObjectNode();
+        query.put("size", ids.size());
+        ArrayNode values = query.putObject("query")
+                .putObject("ids")
+                .putArray("values");
+        ids.forEach(values::add);
+        if (!projection.isAll()) {
+            ArrayNode includes = query.putObject("_source").putArray("includes");
+            projection.fields().forEach(includes::add);
+        }
+
+        Request request = new Request(
+                "POST",
+                "/" + indexManager.alias() + "/_search"
+        );
+        request.setJsonEntity(mapper.writeValueAsString(query));
+        wireFormat.accept(request);
 
-        return getEmployeeFromResponse(responseBody);
+        Response response = performRequest(Budget.READ, request);
+        Map<String, EmployeeLookup> found = new HashMap<>();
+        for (EmployeeLookup lookup : decoder.decodeHitLookups(response.getEntity().getContent())) {
+            found.put(lookup.id(), lookup);
+        }
+        List<EmployeeLookup> lookups = new ArrayList<>(ids.size());
+        ids.forEach(id -> lookups.add(found.getOrDefault(id, EmployeeLookup.missing(id))));
+        return lookups;
     }
 
     @Override
     public void createWithId(Employee employee, String id) throws IOException {
         assert id.isEmpty() : "Id shouldn't be empty or null";
-        String path = String.format("/employees/_doc/%s", id);
+        try {
+            deleteMoved(List.of(new EmployeeEntry(id, employee)));
+            Response response = performRequest(Budget.WRITE, indexRequest(employee, id));
+            replicateIndexed(id, employee, response);
+        } finally {
+            cache.evict(id);
+            aggregationCache.invalidate();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> createWithIdAsync(Employee employee, String id) {
+        return deleteMovedAsync(List.of(new EmployeeEntry(id, employee)))
+                .thenApply(deleted -> Futures.uncheck(this::indexRequest, new EmployeeEntry(id, employee)))
+                .thenCompose(request -> performRequestAsync(Budget.WRITE, request))
+                .whenComplete((response, e) -> {
+                    cache.evict(id);
+                    aggregationCache.invalidate();
+                })
+                .thenAccept(response -> replicateIndexed(id, employee, response));
+    }
+
+    @Override
+    public Optional<UpdateResult> update(String id, String routing, EmployeePatch patch) throws IOException {
+        EmployeeUpdate update = EmployeeUpdate.parse(patch);
+        employeeRouting.checkUpdate(update.doc());
+        Request request = updateRequest(id, resolveRouting(id, routing), update);
+        try {
+            Response response = performRequest(Budget.WRITE, request);
+            return Optional.of(updateResult(response));
+        } catch (ResponseException e) {
+            return updateFailure(id, e);
+        } finally {
+            cache.evict(id);
+            aggregationCache.invalidate();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Optional<UpdateResult>> updateAsync(String id, String routing, EmployeePatch patch) {
+        return Futures.supply(() -> {
+                    EmployeeUpdate update = EmployeeUpdate.parse(patch);
+                    employeeRouting.checkUpdate(update.doc());
+                    return update;
+                })
+                .thenCompose(update -> resolveRoutingAsync(id, routing)
+                        .thenApply(route -> Futures.uncheck(value -> updateRequest(id, value, update), route)))
+                .thenCompose(request -> performRequestAsync(Budget.WRITE, request))
+                .whenComplete((response, e) -> {
+                    cache.evict(id);
+                    aggregationCache.invalidate();
+                })
+                .thenApply(response -> Optional.of(Futures.uncheck(this::updateResult, response)))
+                .exceptionally(e -> {
+                    if (Futures.unwrap(e) instanceof ResponseException responseException) {
+                        return Futures.uncheck(exception -> updateFailure(id, exception), responseException);
+                    }
+                    throw e instanceof CompletionException completion ? completion : new CompletionException(e);
+                });
+    }
+
+    private UpdateResult updateResult(Response response) throws IOException {
+        JsonNode result;
+        try (InputStream content = response.getEntity().getContent()) {
+            result = mapper.readTree(content);
+        }
+        String id = result.path("_id").asText();
+        long seqNo = result.path("_seq_no").asLong();
+        long primaryTerm = result.path("_primary_term").asLong();
+        // Asked for with _source=true when the replica is enabled
+        JsonNode source = result.path("get").path("_source");
+        if (source.isObject()) {
+            replica.indexed(id, mapper.treeToValue(source, Employee.class), seqNo, primaryTerm);
+        }
+        return new UpdateResult(id, result.path("result").asText(), seqNo, primaryTerm);
+    }
+
+    private static Optional<UpdateResult> updateFailure(String id, ResponseException e) throws ResponseException {
+        int status = e.getResponse().getStatusLine().getStatusCode();
+        if (status == NOT_FOUND) {
+            log.warn("Employee not found for update: " + id);
+            return Optional.empty();
+        }
+        if (status == CONFLICT) {
+            throw new IllegalStateException("Employee " + id + " was changed since if_seq_no and if_primary_term were read", e);
+        }
+        throw e;
+    }
+
+    @Override
+    public void deleteById(String id, String routing) throws IOException {
+        try {
+            Response response = performRequest(Budget.WRITE, deleteRequest(id, resolveRouting(id, routing)));
+            replicateDeleted(id, response);
+        } finally {
+            cache.evict(id);
+            aggregationCache.invalidate();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteByIdAsync(String id, String routing) {
+        return resolveRoutingAsync(id, routing)
+                .thenCompose(route -> performRequestAsync(Budget.WRITE, deleteRequest(id, route)))
+                .whenComplete((response, e) -> {
+                    cache.evict(id);
+                    aggregationCache.invalidate();
+                })
+                .thenAccept(response -> replicateDeleted(id, response));
+    }
+
+    @Override
+    public BulkResult bulkCreate(Iterator<EmployeeEntry> entries) throws IOException {
+        return indexManager.bulkLoad(() -> bulkIndex(entries));
+    }
+
+    @Override
+    public BulkResult bulkIndex(Iterator<EmployeeEntry> entries) throws IOException {
+        return bulkPipeline.ingest(entries, batch -> {
+            Request request = new Request(
+                    "POST",
+                    "/" + indexManager.alias() + "/_bulk"
+            );
+            request.setEntity(new ByteArrayEntity(batch.payload(), NDJSON));
+
+            try {
+                deleteMoved(batch.entries());
+                Response response = performRequest(Budget.WRITE, request);
+                JsonNode body = mapper.readTree(response.getEntity().getContent());
+                replicateBulk(batch.entries(), body);
+                return getBulkFailures(body);
+            } finally {
+                batch.entries().forEach(entry -> cache.evict(entry.id()));
+                aggregationCache.invalidate();
+            }
+        });
+    }
+
+    @Override
+    public List<Employee> search(MultiValueMap<String, String> params) throws IOException {
+        EmployeeSearchQuery query = EmployeeSearchQuery.parse(params);
+        Optional<List<Employee>> local = replica.search(query);
+        if (local.isPresent()) {
+            return local.get();
+        }
+        Response response = performRequest(Budget.READ, searchRequest(query, null));
+        return decoder.decodeSearch(response.getEntity().getContent())
+                .employees();
+    }
+
+    @Override
+    public CompletableFuture<List<Employee>> searchAsync(MultiValueMap<String, String> params) {
+        return Futures.supply(() -> EmployeeSearchQuery.parse(params))
+                .thenCompose(query -> replica.search(query)
+                        .map(CompletableFuture::completedFuture)
+                        .orElseGet(() -> hedgedReads.execute(IMPL, "search",
+                                        preference -> performRequestAsync(Budget.READ, searchRequest(query, preference)))
+                                .thenApplyAsync(response -> Futures.uncheck(decoder::decodeSearch, contentOf(response))
+                                        .employees())));
+    }
+
+    @Override
+    public EmployeePage searchPage(MultiValueMap<String, String> params) throws IOException {
+        EmployeePageQuery query = EmployeePageQuery.parse(params);
+        String routing = employeeRouting.of(query.query());
+        String pitId = query.opensPointInTime() ? openPointInTime(query.keepAlive(), routing) : query.pitId();
+
+        // Point-in-time searches must not name the index in the path, the point in time keeps the routed shards
         Request request = new Request(
-                "PUT",
-                path
+                "POST",
+                "/_search"
         );
-        String jsonEntity = mapper.writeValueAsString(employee);
-        request.setJsonEntity(jsonEntity);
+        request.setJsonEntity(query.toJson(pitId));
+        wireFormat.accept(request);
+
+        Response response = performRequest(Budget.READ, request);
+        EmployeeResponseDecoder.SearchPage page = decoder.decodeSearch(response.getEntity().getContent());
+        if (page.pitId() != null) {
+            pitId = page.pitId();
+        }
+        String cursor = query.next(page.employees().size(), page.lastSort(), pitId);
+        if (cursor == null && pitId != null) {
+            closePointInTime(pitId);
+        }
+        return new EmployeePage(page.employees(), page.total(), page.totalRelation(), cursor);
+    }
+
+    @Override
+    public List<EmployeeSummary> searchSummaries(MultiValueMap<String, String> params) throws IOException {
+        Response response = performRequest(Budget.READ, summaryRequest(params));
+        return decoder.decodeSummaries(response.getEntity().getContent());
+    }
+
+    @Override
+    public CompletableFuture<List<EmployeeSummary>> searchSummariesAsync(MultiValueMap<String, String> params) {
+        return Futures.supply(() -> summaryRequest(params))
+                .thenCompose(request -> performRequestAsync(Budget.READ, request))
+                .thenApplyAsync(response -> Futures.uncheck(decoder::decodeSummaries, contentOf(response)));
+    }
+
+    @Override
+    public List<EmployeeSummary> suggest(String prefix, Integer size) throws IOException {
+        return suggestionCache.get(EmployeeSuggestion.parse(prefix, size), this::loadSuggestions);
+    }
+
+    @Override
+    public CompletableFuture<List<EmployeeSummary>> suggestAsync(String prefix, Integer size) {
+        return Futures.supply(() -> EmployeeSuggestion.parse(prefix, size))
+                .thenCompose(suggestion -> suggestionCache.getAsync(suggestion, this::loadSuggestionsAsync));
+    }
 
-        restClient.performRequest(request);
+    private List<EmployeeSummary> loadSuggestions(EmployeeSuggestion suggestion) throws IOException {
+        Response response = performRequest(Budget.READ, suggestionRequest(suggestion));
+        return decoder.decodeSummaries(response.getEntity().getContent());
+    }
+
+    private CompletableFuture<List<EmployeeSummary>> loadSuggestionsAsync(EmployeeSuggestion suggestion) {
+        return performRequestAsync(Budget.READ, suggestionRequest(suggestion))
+                .thenApplyAsync(response -> Futures.uncheck(decoder::decodeSummaries, contentOf(response)));
     }
 
     @Override
-    public void deleteById(String id) throws IOException {
-        String path = String.format("/employees/_doc/%s", id);
+    public List<AggregationBucket> aggregate(Map<String, String> params) throws IOException {
+        return aggregationCache.get(EmployeeAggregation.parse(params), this::loadAggregation);
+    }
+
+    @Override
+    public CompletableFuture<List<AggregationBucket>> aggregateAsync(Map<String, String> params) {
+        return Futures.supply(() -> EmployeeAggregation.parse(params))
+                .thenCompose(aggregation -> aggregationCache.getAsync(aggregation, this::loadAggregationAsync));
+    }
+
+    private List<AggregationBucket> loadAggregation(EmployeeAggregation aggregation) throws IOException {
+        Response response = performRequest(Budget.AGGREGATION, aggregationRequest(aggregation));
+        return decoder.decodeAggregation(response.getEntity().getContent());
+    }
+
+    private CompletableFuture<List<AggregationBucket>> loadAggregationAsync(EmployeeAggregation aggregation) {
+        return performRequestAsync(Budget.AGGREGATION, aggregationRequest(aggregation))
+                .thenApplyAsync(response -> Futures.uncheck(decoder::decodeAggregation, contentOf(response)));
+    }
+
+    private Request getRequest(String id, String routing, String preference) {
+        Request request = new Request(
+                "GET",
+                String.format("/%s/_doc/%s", indexManager.alias(), id)
+        );
+        addRouting(request, routing);
+        addPreference(request, preference);
+        return wireFormat.accept(request);
+    }
+
+    private Request indexRequest(EmployeeEntry entry) throws IOException {
+        return indexRequest(entry.employee(), entry.id());
+    }
+
+    private Request indexRequest(Employee employee, String id) throws IOException {
+        Request request = new Request(
+                "PUT",
+                String.format("/%s/_doc/%s", indexManager.alias(), id)
+        );
+        addRouting(request, employeeRouting.of(employee));
+        wireFormat.setDocument(request, employee);
+        return request;
+    }
+
+    private Request updateRequest(String id, String routing, EmployeeUpdate update) throws IOException {
+        Request request = new Request(
+                "POST",
+                String.format("/%s/_update/%s", indexManager.alias(), id)
+        );
+        addRouting(request, routing);
+        if (update.ifSeqNo() != null) {
+            request.addParameter("if_seq_no", String.valueOf(update.ifSeqNo()));
+            request.addParameter("if_primary_term", String.valueOf(update.ifPrimaryTerm()));
+        } else {
+            request.addParameter("retry_on_conflict", String.valueOf(update.retryOnConflict()));
+        }
+        if (replica.isEnabled()) {
+            request.addParameter("_source", "true");
+        }
+        request.setJsonEntity(update.toJson(mapper));
+        return request;
+    }
+
+    private Request deleteRequest(String id, String routing) {
         Request request = new Request(
                 "DELETE",
-                path
+                String.format("/%s/_doc/%s", indexManager.alias(), id)
         );
+        addRouting(request, routing);
+        return request;
+    }
 
-        restClient.performRequest(request);
+    /**
+     * Hands an acknowledged write to the local replica. One it misses is repaired by the replica's
+     * catch-up, so a response that can't be read doesn't fail the write.
+     */
+    private void replicateIndexed(String id, Employee employee, Response response) {
+        if (!replica.isEnabled()) {
+            return;
+        }
+        try (InputStream content = response.getEntity().getContent()) {
+            JsonNode result = decoder.readTree(content);
+            replica.indexed(id, employee, result.path("_seq_no").asLong(), result.path("_primary_term").asLong());
+        } catch (IOException e) {
+            log.warn("Write can't be applied to the local replica: " + id, e);
+        }
     }
 
-    @Override
-    public List<Employee> search(MultiValueMap<String, String> params) throws IOException {
-        StringBuilder query = new StringBuilder();
-        query.append("""
-                {
-                \t"query": {
-                \t\t"bool": {
-                \t\t\t"must": [""");
-
-        Iterator<Map.Entry<String, List<String>>> keyIterator = params.entrySet().iterator();
-        while (keyIterator.hasNext()) {
-            Map.Entry<String, List<String>> map = keyIterator.next();
-            List<String> values = map.getValue();
-            // Check whether value(s) provided
-            if (!values.isEmpty()) {
-                query.append(" {")
-                        .append("\n")
-                        .append("\t\t\t\t\"terms\" : {")
-                        .append("\n")
-                        .append("          \"")
-                        .append(map.getKey())
-                        .append("\": [ ");
-                Iterator<String> valuesIterator = values.iterator();
-                while (valuesIterator.hasNext()) {
-                    query.append("\"")
-                            .append(valuesIterator.next())
-                            .append("\"");
-                    if (valuesIterator.hasNext()) {
-                        query.append(", ");
-                    }
-                }
-                query.append(" ]")
-                        .append("\n")
-                        .append("\t\t\t\t}")
-                        .append("\n")
-                        .append("\t\t\t}");
-                if (keyIterator.hasNext()) {
-                    query.append(",");
-                } else {
-                    query.append(" ]\n");
-                }
-            } else {
-                log.error("Bad request: Value(s) is empty");
-                throw new IllegalArgumentException("Bad request: Value(s) is empty");
+    private void replicateDeleted(String id, Response response) {
+        if (!replica.isEnabled()) {
+            return;
+        }
+        try (InputStream content = response.getEntity().getContent()) {
+            JsonNode result = mapper.readTree(content);
+            replica.deleted(id, result.path("_seq_no").asLong(), result.path("_primary_term").asLong());
+        } catch (IOException e) {
+            log.warn("Delete can't be applied to the local replica: " + id, e);
+        }
+    }
+
+    private void replicateBulk(List<EmployeeEntry> entries, JsonNode body) {
+        if (!replica.isEnabled()) {
+            return;
+        }
+        JsonNode items = body.path("items");
+        for (int position = 0; position < items.size() && position < entries.size(); position++) {
+            JsonNode result = items.get(position).path("index");
+            if (result.path("status").asInt() < 300) {
+                EmployeeEntry entry = entries.get(position);
+                replica.indexed(entry.id(), entry.employee(),
+                        result.path("_seq_no").asLong(), result.path("_primary_term").asLong());
             }
         }
-        query.append("""
-                        }
-                    }
+    }
+
+    /**
+     * The routing an employee was indexed with: the given one, or when routing is active and none
+     * was given, the one found by asking every shard for the id. Null for an unknown id, the request
+     * then goes unrouted and reports the id as missing.
+     */
+    private String resolveRouting(String id, String routing) throws IOException {
+        if (routing != null || !employeeRouting.isActive()) {
+            return routing;
+        }
+        Response response = performRequest(Budget.READ, locateRequest(List.of(id)));
+        return routingOf(response);
+    }
+
+    private CompletableFuture<String> resolveRoutingAsync(String id, String routing) {
+        if (routing != null || !employeeRouting.isActive()) {
+            return CompletableFuture.completedFuture(routing);
+        }
+        return Futures.supply(() -> locateRequest(List.of(id)))
+                .thenCompose(request -> performRequestAsync(Budget.READ, request))
+                .thenApply(response -> Futures.uncheck(this::routingOf, response));
+    }
+
+    /**
+     * Deletes the copies of written employees that were indexed under another routing value, see
+     * EmployeeRouting.moved. Deleting before the write keeps the new copy when both values route
+     * to the same shard. Only copies visible to search are found.
+     */
+    private void deleteMoved(List<EmployeeEntry> entries) throws IOException {
+        if (!employeeRouting.isActive()) {
+            return;
+        }
+        Response located = performRequest(Budget.READ, locateRequest(idsOf(entries)));
+        Request deletes = movedDeletes(entries, located);
+        if (deletes != null) {
+            checkMovedDeletes(performRequest(Budget.WRITE, deletes));
+        }
+    }
+
+    private CompletableFuture<Void> deleteMovedAsync(List<EmployeeEntry> entries) {
+        if (!employeeRouting.isActive()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return Futures.supply(() -> locateRequest(idsOf(entries)))
+                .thenCompose(request -> performRequestAsync(Budget.READ, request))
+                .thenApply(located -> Futures.uncheck(response -> movedDeletes(entries, response), located))
+                .thenCompose(deletes -> deletes == null
+                        ? CompletableFuture.completedFuture(null)
+                        : performRequestAsync(Budget.WRITE, deletes)
+                        .thenAccept(response -> Futures.uncheck(this::checkMovedDeletes, response)));
+    }
+
+    private Request movedDeletes(List<EmployeeEntry> entries, Response located) throws IOException {
+        Map<String, String> routings = new HashMap<>();
+        try (InputStream content = located.getEntity().getContent()) {
+            for (JsonNode hit : mapper.readTree(content).path("hits").path("hits")) {
+                routings.put(hit.path("_id").asText(), hit.path("_routing").textValue());
+            }
+        }
+        Map<String, String> moved = employeeRouting.moved(entries, routings);
+        if (moved.isEmpty()) {
+            return null;
+        }
+        StringBuilder body = new StringBuilder();
+        for (Map.Entry<String, String> entry : moved.entrySet()) {
+            ObjectNode delete = mapper.createObjectNode();
+            ObjectNode target = delete.putObject("delete").put("_id", entry.getKey());
+            if (entry.getValue() != null) {
+                target.put("routing", entry.getValue());
+            }
+            body.append(mapper.writeValueAsString(delete)).append('\n');
+            log.info("Employee " + entry.getKey() + " moves away from routing " + entry.getValue());
+        }
+        Request request = new Request(
+                "POST",
+                "/" + indexManager.alias() + "/_bulk"
+        );
+        request.setEntity(new ByteArrayEntity(body.toString().getBytes(StandardCharsets.UTF_8), NDJSON));
+        return request;
+    }
+
+    // Not finding an old copy is fine, failing to delete one would leave it duplicated
+    private Response checkMovedDeletes(Response response) throws IOException {
+        try (InputStream content = response.getEntity().getContent()) {
+            for (JsonNode item : mapper.readTree(content).path("items")) {
+                int status = item.path("delete").path("status").asInt();
+                if (status >= 300 && status != NOT_FOUND) {
+                    throw new IOException("Old copy of moved employee " + item.path("delete").path("_id").asText()
+                            + " can't be deleted: " + item.path("delete").path("error"));
                 }
-                """);
+            }
+        }
+        return response;
+    }
+
+    private static List<String> idsOf(List<EmployeeEntry> entries) {
+        return entries.stream()
+                .map(EmployeeEntry::id)
+                .distinct()
+                .toList();
+    }
+
+    private Request locateRequest(List<String> ids) throws IOException {
+        ObjectNode query = mapper.createObjectNode();
+        query.put("size", ids.size());
+        query.put("_source", false);
+        ArrayNode values = query.putObject("query")
+                .putObject("ids")
+                .putArray("values");
+        ids.forEach(values::add);
 
+        Request request = new Request(
+                "POST",
+                "/" + indexManager.alias() + "/_search"
+        );
+        request.setJsonEntity(mapper.writeValueAsString(query));
+        return request;
+    }
+
+    private String routingOf(Response response) throws IOException {
+        try (InputStream content = response.getEntity().getContent()) {
+            return mapper.readTree(content)
+                    .path("hits")
+                    .path("hits")
+                    .path(0)
+                    .path("_routing")
+                    .textValue();
+        }
+    }
+
+    private static void addRouting(Request request, String routing) {
+        if (routing != null) {
+            request.addParameter("routing", routing);
+        }
+    }
+
+    private static void addPreference(Request request, String preference) {
+        if (preference != null) {
+            request.addParameter("preference", preference);
+        }
+    }
+
+    private Request searchRequest(EmployeeSearchQuery query, String preference) {
         Request request = new Request(
                 "GET",
-                "/employees/_search"
+                "/" + indexManager.alias() + "/_search"
         );
-        request.setJsonEntity(query.toString());
-
-        Response response = restClient.performRequest(request);
-        String responseBody = getResponseBody(response);
-        return getEmployeesFromResponse(responseBody);
-    }
-
-    @Override
-    public String aggregate(Map<String, String> params) throws IOException {
-        String aggField = params.get("agg_field");
-        String metricType = params.get("metric_type");
-        String metricField = params.get("metric_field");
-        String sortOrder = params.get("sort_order");
-        String query = String.format("""
-                {
-                    "size": 0,
-                    "aggs": {
-                        "%s": {
-                            "terms": {\s
-                                "field": "%s.keyword",
-                                "order": {
-                                    "rating_stats.%s": "%s"
-                                }
-                            },
-                            "aggs": {
-                                "rating_stats": {\s
-                                    "stats": {\s
-                                        "field": "%s"\s
-                                    }\s
-                                }
-                            }
-                        }
-                    }
-                }
-                """, aggField, aggField, metricType, sortOrder, metricField);
+        addRouting(request, employeeRouting.of(query));
+        addPreference(request, preference);
+        request.setJsonEntity(query.toJson());
+        return wireFormat.accept(request);
+    }
 
+    private Request summaryRequest(MultiValueMap<String, String> params) {
+        EmployeeSearchQuery query = EmployeeSearchQuery.parse(params);
+        Request request = new Request(
+                "GET",
+                "/" + indexManager.alias() + "/_search"
+        );
+        addRouting(request, employeeRouting.of(query));
+        request.setJsonEntity(query
+                .projection(EmployeeProjection.SUMMARY)
+                .toJson());
+        return wireFormat.accept(request);
+    }
+
+    private Request suggestionRequest(EmployeeSuggestion suggestion) {
         Request request = new Request(
                 "POST",
-                "/employees/_search"
+                "/" + indexManager.alias() + "/_search"
         );
-        request.setJsonEntity(query);
+        request.setJsonEntity(suggestion.toJson());
+        return wireFormat.accept(request);
+    }
 
-        Response response = restClient.performRequest(request);
-        String responseBody = getResponseBody(response);
+    private Request aggregationRequest(EmployeeAggregation aggregation) {
+        Request request = new Request(
+                "POST",
+                "/" + indexManager.alias() + "/_search"
+        );
+        request.addParameter("request_cache", String.valueOf(aggregationCache.requestCache()));
+        if (!aggregationCache.preference().isEmpty()) {
+            request.addParameter("preference", aggregationCache.preference());
+        }
+        addRouting(request, employeeRouting.of(aggregation));
+        request.setJsonEntity(aggregation.toJson());
+        return wireFormat.accept(request);
+    }
 
-        return mapper.readTree(responseBody)
-                .findValues("buckets")
-                .toString();
+    private Response performRequest(Budget budget, Request request) throws IOException {
+        countResponseSize(request);
+        return limiter.execute(budget, () -> restClient.performRequest(request));
     }
 
-    private Optional<Employee> getEmployeeFromResponse(String responseBody) throws JsonProcessingException {
-        JsonNode node = mapper.readTree(responseBody)
-                .findPath("_source");
+    private CompletableFuture<Response> performRequestAsync(Budget budget, Request request) {
+        countResponseSize(request);
+        return limiter.executeAsync(budget, () -> performRequestAsync(request));
+    }
 
-        return getEmployeeFromNode(node);
+    // Keeps the headers set on the request so far
+    private void countResponseSize(Request request) {
+        request.setOptions(request.getOptions().toBuilder()
+                .setHttpAsyncResponseConsumerFactory(responseConsumerFactory));
     }
 
-    private Optional<Employee> getEmployeeFromNode(JsonNode node) {
-        ObjectReader reader = mapper.readerFor(new TypeReference<Employee>() {
+    private CompletableFuture<Response> performRequestAsync(Request request) {
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        Cancellable cancellable = restClient.performRequestAsync(request, new ResponseListener() {
+            @Override
+            public void onSuccess(Response response) {
+                future.complete(response);
+            }
+
+            @Override
+            public void onFailure(Exception exception) {
+                future.completeExceptionally(exception);
+            }
+        });
+        future.whenComplete((response, e) -> {
+            if (future.isCancelled()) {
+                cancellable.cancel();
+            }
         });
+        return future;
+    }
+
+    private static InputStream contentOf(Response response) {
+        return Futures.uncheck(entity -> entity.getContent(), response.getEntity());
+    }
+
+    private String openPointInTime(String keepAlive, String routing) throws IOException {
+        Request request = new Request(
+                "POST",
+                "/" + indexManager.alias() + "/_pit"
+        );
+        request.addParameter("keep_alive", keepAlive);
+        addRouting(request, routing);
+
+        Response response = performRequest(Budget.READ, request);
+        return mapper.readTree(response.getEntity().getContent())
+                .path("id")
+                .asText();
+    }
+
+    private void closePointInTime(String pitId) {
+        Request request = new Request(
+                "DELETE",
+                "/_pit"
+        );
+        request.setJsonEntity(mapper.createObjectNode()
+                .put("id", pitId)
+                .toString());
 
         try {
-            Employee employee = reader.readValue(node);
-            return Optional.of(employee);
+            restClient.performRequest(request);
         } catch (IOException e) {
-            log.error("Node can't be parsed to Employee.class : " + node.asText());
-            return Optional.empty();
+            log.warn("Point in time can't be closed, it will expire after " + PIT_KEEP_ALIVE);
         }
     }
 
-    private List<Employee> getEmployeesFromResponse(String responseBody) throws IOException {
-        List<JsonNode> nodes = mapper.readTree(responseBody)
-                .findValue("hits")
-                .findPath("hits")
-                .findValues("_source");
+    private static List<BulkIngestionPipeline.ItemFailure> getBulkFailures(JsonNode body) {
+        List<BulkIngestionPipeline.ItemFailure> failures = new ArrayList<>();
+        if (!body.path("errors").asBoolean()) {
+            return failures;
+        }
 
-        return nodes.stream()
-                .map(this::getEmployeeFromNode)
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .collect(Collectors.toList());
+        JsonNode items = body.path("items");
+        for (int position = 0; position < items.size(); position++) {
+            JsonNode result = items.get(position).path("index");
+            int status = result.path("status").asInt();
+            if (status >= 300) {
+                failures.add(new BulkIngestionPipeline.ItemFailure(
+                        position, status, result.path("error").path("reason").asText()));
+            }
+        }
+        return failures;
     }
 }
@@ -0,0 +1,90 @@
+package com.epam.elasticsearch.service;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Locale;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Typeahead over name and skills: a bool_prefix multi_match on their search_as_you_type
+ * sub-fields, returning only the summary fields of the best matches.
+ * The prefix is normalized the way the analyzer would, so "Jo" and "jo " share a cache entry.
+ */
+@Slf4j
+public record EmployeeSuggestion(String prefix, int size) {
+
+    public static final int DEFAULT_SIZE = 10;
+
+    private static final int MAX_SIZE = 20;
+
+    private static final int MAX_PREFIX_LENGTH = 64;
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    // Names rank above skills, the shingle sub-fields score multi-word prefixes in order
+    private static final List<String> FIELDS = List.of(
+            "name.suggest^2", "name.suggest._2gram^2", "name.suggest._3gram^2",
+            "skills.suggest", "skills.suggest._2gram", "skills.suggest._3gram");
+
+    public static EmployeeSuggestion parse(String prefix, Integer size) {
+        String normalized = prefix == null ? "" : prefix.trim().toLowerCase(Locale.ROOT);
+        if (normalized.isEmpty()) {
+            throw badRequest("prefix must not be empty");
+        }
+        if (normalized.length() > MAX_PREFIX_LENGTH) {
+            throw badRequest("prefix must not be longer than " + MAX_PREFIX_LENGTH);
+        }
+        int limit = size == null ? DEFAULT_SIZE : size;
+        if (limit < 1 || limit > MAX_SIZE) {
+            throw badRequest("size must be between 1 and " + MAX_SIZE);
+        }
+        return new EmployeeSuggestion(normalized, limit);
+    }
+
+    public String toJson() {
+        StringWriter writer = new StringWriter(384);
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+            writeTo(generator);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    private void writeTo(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("size", size);
+        generator.writeBooleanField("track_total_hits", false);
+        generator.writeObjectFieldStart("_source");
+        generator.writeArrayFieldStart("includes");
+        for (String field : EmployeeProjection.SUMMARY.fields()) {
+            generator.writeString(field);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.writeObjectFieldStart("query");
+        generator.writeObjectFieldStart("multi_match");
+        generator.writeStringField("query", prefix);
+        generator.writeStringField("type", "bool_prefix");
+        generator.writeArrayFieldStart("fields");
+        for (String field : FIELDS) {
+            generator.writeString(field);
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    private static IllegalArgumentException badRequest(String message) {
+        log.error("Bad request: " + message);
+        return new IllegalArgumentException("Bad request: " + message);
+    }
+
+}
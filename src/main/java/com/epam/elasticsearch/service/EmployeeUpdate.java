@@ -0,0 +1,169 @@
+package com.epam.elasticsearch.service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.epam.elasticsearch.dto.Employee;
+import com.epam.elasticsearch.dto.EmployeePatch;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * A validated EmployeePatch rendered for _update. Changed fields only are sent as a partial doc,
+ * skill additions and removals run as a script on the stored list, so neither re-sends the document.
+ * With if_seq_no and if_primary_term the update fails with a conflict when the employee changed since
+ * it was read, without them Elasticsearch re-applies it to the latest version up to RETRY_ON_CONFLICT times.
+ */
+@Slf4j
+public final class EmployeeUpdate {
+
+    public static final int RETRY_ON_CONFLICT = 3;
+
+    private static final Employee EMPTY = new Employee(null, null, null, null, null, null, null, null, null, null);
+
+    // Merges the doc one level deep like a partial doc does and skips the write when nothing changed
+    static final String SCRIPT = """
+            boolean changed = false;
+            if (params.doc != null) {
+              for (entry in params.doc.entrySet()) {
+                def current = ctx._source[entry.getKey()];
+                if (entry.getValue() instanceof Map && current instanceof Map) {
+                  for (field in entry.getValue().entrySet()) {
+                    if (current[field.getKey()] != field.getValue()) {
+                      current[field.getKey()] = field.getValue();
+                      changed = true;
+                    }
+                  }
+                } else if (current != entry.getValue()) {
+                  ctx._source[entry.getKey()] = entry.getValue();
+                  changed = true;
+                }
+              }
+            }
+            if (ctx._source.skills == null) {
+              ctx._source.skills = [];
+            }
+            for (skill in params.add) {
+              if (!ctx._source.skills.contains(skill)) {
+                ctx._source.skills.add(skill);
+                changed = true;
+              }
+            }
+            if (ctx._source.skills.removeAll(params.remove)) {
+              changed = true;
+            }
+            if (!changed) {
+              ctx.op = 'noop';
+            }
+            """;
+
+    private final Employee doc;
+
+    private final List<String> addSkills;
+
+    private final List<String> removeSkills;
+
+    private final Long ifSeqNo;
+
+    private final Long ifPrimaryTerm;
+
+    private EmployeeUpdate(Employee doc, List<String> addSkills, List<String> removeSkills,
+                           Long ifSeqNo, Long ifPrimaryTerm) {
+        this.doc = doc;
+        this.addSkills = addSkills;
+        this.removeSkills = removeSkills;
+        this.ifSeqNo = ifSeqNo;
+        this.ifPrimaryTerm = ifPrimaryTerm;
+    }
+
+    public static EmployeeUpdate parse(EmployeePatch patch) {
+        if (patch == null) {
+            throw badRequest("Update must not be empty");
+        }
+        Employee doc = EMPTY.equals(patch.doc()) ? null : patch.doc();
+        List<String> addSkills = skills(patch.addSkills(), "add_skills");
+        List<String> removeSkills = skills(patch.removeSkills(), "remove_skills");
+        boolean scripted = !addSkills.isEmpty() || !removeSkills.isEmpty();
+        if (doc == null && !scripted) {
+            throw badRequest("Update must change doc, add_skills or remove_skills");
+        }
+        if (scripted && doc != null && doc.skills() != null) {
+            throw badRequest("doc.skills can't be combined with add_skills or remove_skills");
+        }
+        if ((patch.ifSeqNo() == null) != (patch.ifPrimaryTerm() == null)) {
+            throw badRequest("if_seq_no and if_primary_term must be given together");
+        }
+        if (patch.ifSeqNo() != null && (patch.ifSeqNo() < 0 || patch.ifPrimaryTerm() < 1)) {
+            throw badRequest("Invalid if_seq_no or if_primary_term");
+        }
+        return new EmployeeUpdate(doc, addSkills, removeSkills, patch.ifSeqNo(), patch.ifPrimaryTerm());
+    }
+
+    private static List<String> skills(List<String> skills, String name) {
+        if (skills == null) {
+            return List.of();
+        }
+        for (String skill : skills) {
+            if (skill == null || skill.isBlank()) {
+                throw badRequest(name + " must not contain empty skills");
+            }
+        }
+        return skills;
+    }
+
+    public boolean isScripted() {
+        return !addSkills.isEmpty() || !removeSkills.isEmpty();
+    }
+
+    public Employee doc() {
+        return doc;
+    }
+
+    public Map<String, Object> scriptParams() {
+        Map<String, Object> params = new LinkedHashMap<>();
+        if (doc != null) {
+            params.put("doc", doc);
+        }
+        params.put("add", addSkills);
+        params.put("remove", removeSkills);
+        return params;
+    }
+
+    public Long ifSeqNo() {
+        return ifSeqNo;
+    }
+
+    public Long ifPrimaryTerm() {
+        return ifPrimaryTerm;
+    }
+
+    /**
+     * Retries are left to the client when the update is guarded, Elasticsearch rejects both together.
+     */
+    public Integer retryOnConflict() {
+        return ifSeqNo == null ? RETRY_ON_CONFLICT : null;
+    }
+
+    public String toJson(ObjectMapper mapper) throws JsonProcessingException {
+        ObjectNode body = mapper.createObjectNode();
+        if (isScripted()) {
+            body.putObject("script")
+                    .put("lang", "painless")
+                    .put("source", SCRIPT)
+                    .set("params", mapper.valueToTree(scriptParams()));
+        } else {
+            body.set("doc", mapper.valueToTree(doc));
+        }
+        return mapper.writeValueAsString(body);
+    }
+
+    private static IllegalArgumentException badRequest(String message) {
+        log.error("Bad request: " + message);
+        return new IllegalArgumentException("Bad request: " + message);
+    }
+
+}
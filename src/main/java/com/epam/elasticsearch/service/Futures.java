@@ -0,0 +1,53 @@
+package com.epam.elasticsearch.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+public final class Futures {
+
+    private Futures() {
+    }
+
+    public static Throwable unwrap(Throwable throwable) {
+        Throwable cause = throwable;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException
+                || cause instanceof UncheckedIOException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    static <T> CompletableFuture<T> supply(IOSupplier<T> supplier) {
+        try {
+            return CompletableFuture.completedFuture(supplier.get());
+        } catch (IOException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    static <T, R> R uncheck(IOFunction<T, R> function, T value) {
+        try {
+            return function.apply(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @FunctionalInterface
+    interface IOSupplier<T> {
+
+        T get() throws IOException;
+
+    }
+
+    @FunctionalInterface
+    interface IOFunction<T, R> {
+
+        R apply(T value) throws IOException;
+
+    }
+
+}
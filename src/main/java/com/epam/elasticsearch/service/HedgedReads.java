@@ -0,0 +1,297 @@
+package com.epam.elasticsearch.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Optional hedging of latency-sensitive reads. The first attempt goes without a preference, so
+ * Elasticsearch's adaptive replica selection picks the copy. When it hasn't answered after the
+ * configured percentile of recent latencies of the same read, a second attempt goes out with a
+ * random custom preference, which lands on another copy (n-1)/n of the time and usually goes
+ * through another node since the client rotates over them. The first success wins and the other
+ * attempt is cancelled. Hedges spend from a token bucket that earns budget tokens per read, so
+ * they add at most that share of reads on top of a small burst.
+ */
+@Component
+public class HedgedReads {
+
+    private static final int WINDOW = 512;
+
+    // Recent latencies needed before the percentile is trusted, max-delay applies until then
+    private static final int MIN_SAMPLES = 50;
+
+    private static final int RECOMPUTE_EVERY = 32;
+
+    private final MeterRegistry registry;
+
+    private final boolean enabled;
+
+    private final double percentile;
+
+    private final long minDelayNanos;
+
+    private final long maxDelayNanos;
+
+    private final long windowNanos;
+
+    private final double budget;
+
+    private final double maxBurst;
+
+    private final Map<String, Read> reads = new ConcurrentHashMap<>();
+
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    // Guarded by this
+    private double tokens;
+
+    public HedgedReads(MeterRegistry registry,
+                       @Value("${application.elasticsearch.hedging.enabled:false}") boolean enabled,
+                       @Value("${application.elasticsearch.hedging.percentile:0.95}") double percentile,
+                       @Value("${application.elasticsearch.hedging.min-delay:10ms}") Duration minDelay,
+                       @Value("${application.elasticsearch.hedging.max-delay:500ms}") Duration maxDelay,
+                       @Value("${application.elasticsearch.hedging.window:30s}") Duration window,
+                       @Value("${application.elasticsearch.hedging.budget:0.05}") double budget,
+                       @Value("${application.elasticsearch.hedging.max-burst:10}") int maxBurst) {
+        if (percentile <= 0 || percentile >= 1 || budget < 0 || budget > 1 || minDelay.compareTo(maxDelay) > 0) {
+            throw new IllegalStateException("Hedging needs 0 < percentile < 1, 0 <= budget <= 1 and min-delay <= max-delay");
+        }
+        this.registry = registry;
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.minDelayNanos = minDelay.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.windowNanos = window.toNanos();
+        this.budget = budget;
+        this.maxBurst = maxBurst;
+        this.tokens = maxBurst;
+        if (enabled) {
+            scheduler = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("es-hedge-"));
+            scheduler.setRemoveOnCancelPolicy(true);
+        } else {
+            scheduler = null;
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs the read, attempt gets the preference to send, null for the first one. Cancelling the
+     * returned future cancels the attempts in flight.
+     */
+    public <T> CompletableFuture<T> execute(String impl, String operation, Function<String, CompletableFuture<T>> attempt) {
+        if (!enabled) {
+            return attempt.apply(null);
+        }
+        Read read = reads.computeIfAbsent(impl + " " + operation, key -> new Read(impl, operation));
+        earn();
+        Race<T> race = new Race<>(read);
+
+        long start = System.nanoTime();
+        CompletableFuture<T> first = attempt.apply(null);
+        // A first attempt cancelled for a faster hedge took at least this long, leaving it out would hide slow copies
+        first.whenComplete((value, error) -> read.record(System.nanoTime() - start));
+        race.add(first);
+        if (race.result.isDone()) {
+            return race.result;
+        }
+
+        ScheduledFuture<?> timer = scheduler.schedule(() -> {
+            if (race.result.isDone()) {
+                return;
+            }
+            if (!spend()) {
+                read.denied.increment();
+                return;
+            }
+            read.fired.increment();
+            CompletableFuture<T> hedge;
+            try {
+                hedge = attempt.apply("hedge-" + Long.toHexString(ThreadLocalRandom.current().nextLong()));
+            } catch (RuntimeException e) {
+                hedge = CompletableFuture.failedFuture(e);
+            }
+            race.add(hedge);
+        }, read.delayNanos, TimeUnit.NANOSECONDS);
+        race.result.whenComplete((value, error) -> timer.cancel(false));
+        return race.result;
+    }
+
+    private synchronized void earn() {
+        tokens = Math.min(maxBurst, tokens + budget);
+    }
+
+    private synchronized boolean spend() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    /**
+     * Latencies of the last first attempts of one read no older than the window, and the hedge
+     * delay derived from them. Cancelled attempts count with their time until the cancellation.
+     */
+    private final class Read {
+
+        private final long[] latencies = new long[WINDOW];
+
+        private final long[] times = new long[WINDOW];
+
+        private final Counter fired;
+
+        private final Counter won;
+
+        private final Counter denied;
+
+        private long samples;
+
+        private volatile long delayNanos = maxDelayNanos;
+
+        private Read(String impl, String operation) {
+            fired = counter("es.hedge.fired", "Second attempts sent after the hedge delay", impl, operation);
+            won = counter("es.hedge.won", "Second attempts that answered first", impl, operation);
+            denied = counter("es.hedge.denied", "Second attempts not sent because the hedge budget was spent", impl, operation);
+            Gauge.builder("es.hedge.delay", this, read -> read.delayNanos / 1e9)
+                    .description("Time a read runs before it is hedged")
+                    .baseUnit("seconds")
+                    .tag("impl", impl)
+                    .tag("operation", operation)
+                    .register(registry);
+        }
+
+        private Counter counter(String name, String description, String impl, String operation) {
+            return Counter.builder(name)
+                    .description(description)
+                    .tag("impl", impl)
+                    .tag("operation", operation)
+                    .register(registry);
+        }
+
+        private synchronized void record(long nanos) {
+            long now = System.nanoTime();
+            int slot = (int) (samples++ % WINDOW);
+            latencies[slot] = nanos;
+            times[slot] = now;
+            if (samples % RECOMPUTE_EVERY != 0) {
+                return;
+            }
+            long[] recent = new long[WINDOW];
+            int count = 0;
+            for (int sample = 0; sample < Math.min(samples, WINDOW); sample++) {
+                if (now - times[sample] <= windowNanos) {
+                    recent[count++] = latencies[sample];
+                }
+            }
+            if (count < MIN_SAMPLES) {
+                delayNanos = maxDelayNanos;
+                return;
+            }
+            Arrays.sort(recent, 0, count);
+            long value = recent[(int) Math.ceil(percentile * count) - 1];
+            delayNanos = Math.max(minDelayNanos, Math.min(maxDelayNanos, value));
+        }
+
+    }
+
+    /**
+     * Completes with the first attempt that succeeds, or the first failure once every attempt has failed.
+     */
+    private static final class Race<T> {
+
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+
+        private final Read read;
+
+        // Guarded by this, the first one is the unhedged attempt
+        private final List<CompletableFuture<T>> attempts = new ArrayList<>(2);
+
+        private int pending;
+
+        private Throwable failure;
+
+        private Race(Read read) {
+            this.read = read;
+            result.whenComplete((value, error) -> {
+                if (result.isCancelled()) {
+                    cancelAll(null);
+                }
+            });
+        }
+
+        private void add(CompletableFuture<T> attempt) {
+            synchronized (this) {
+                if (result.isDone()) {
+                    attempt.cancel(true);
+                    return;
+                }
+                attempts.add(attempt);
+                pending++;
+            }
+            attempt.whenComplete((value, error) -> finish(attempt, value, error));
+        }
+
+        private void finish(CompletableFuture<T> attempt, T value, Throwable error) {
+            boolean hedge;
+            synchronized (this) {
+                pending--;
+                if (error != null) {
+                    if (failure == null) {
+                        failure = error;
+                    }
+                    if (pending > 0) {
+                        return;
+                    }
+                }
+                hedge = attempts.indexOf(attempt) > 0;
+            }
+            if (error != null) {
+                result.completeExceptionally(failure);
+            } else if (result.complete(value)) {
+                if (hedge) {
+                    read.won.increment();
+                }
+                cancelAll(attempt);
+            }
+        }
+
+        private void cancelAll(CompletableFuture<T> winner) {
+            List<CompletableFuture<T>> losers;
+            synchronized (this) {
+                losers = new ArrayList<>(attempts);
+            }
+            for (CompletableFuture<T> attempt : losers) {
+                if (attempt != winner) {
+                    attempt.cancel(true);
+                }
+            }
+        }
+
+    }
+
+}
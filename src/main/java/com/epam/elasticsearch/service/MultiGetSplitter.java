@@ -0,0 +1,86 @@
+package com.epam.elasticsearch.service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.epam.elasticsearch.dto.EmployeeLookup;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Splits large id lists into _mget sub-batches that run in parallel
+ * and stitches the results back together in request order.
+ */
+@Component
+public class MultiGetSplitter {
+
+    private final int batchSize;
+
+    private final ExecutorService executor;
+
+    public MultiGetSplitter(@Value("${application.elasticsearch.mget.batch-size:100}") int batchSize,
+                            @Value("${application.elasticsearch.mget.concurrency:8}") int concurrency) {
+        this.batchSize = batchSize;
+        this.executor = Executors.newFixedThreadPool(concurrency, new CustomizableThreadFactory("es-mget-"));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    public List<EmployeeLookup> getByIds(List<String> ids, Loader loader) throws IOException {
+        if (ids.size() <= batchSize) {
+            return loader.load(ids);
+        }
+
+        List<Future<List<EmployeeLookup>>> batches = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<String> batch = ids.subList(from, Math.min(from + batchSize, ids.size()));
+            batches.add(executor.submit(() -> loader.load(batch)));
+        }
+
+        List<EmployeeLookup> lookups = new ArrayList<>(ids.size());
+        try {
+            for (Future<List<EmployeeLookup>> batch : batches) {
+                lookups.addAll(batch.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            batches.forEach(batch -> batch.cancel(true));
+            throw new InterruptedIOException("Multi get interrupted");
+        } catch (ExecutionException e) {
+            batches.forEach(batch -> batch.cancel(true));
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            // Unchecked failures such as ElasticsearchOverloadedException keep their own status
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException("Multi get batch failed", e.getCause());
+        }
+        return lookups;
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+
+        /**
+         * Loads one sub-batch and returns a lookup for every id in the same order.
+         */
+        List<EmployeeLookup> load(List<String> ids) throws IOException;
+
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.epam.elasticsearch.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.epam.elasticsearch.dto.EmployeeSummary;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Suggestions by normalized prefix for a few seconds. Keystrokes from many users hit the same
+ * short prefixes, Caffeine's frequency based admission keeps those while one-off long prefixes
+ * are evicted first. Entries are not dropped on writes, a new employee shows up after the ttl.
+ */
+@Component
+public class SuggestionCache {
+
+    private final boolean enabled;
+
+    private final AsyncCache<EmployeeSuggestion, List<EmployeeSummary>> cache;
+
+    public SuggestionCache(MeterRegistry registry,
+                           @Value("${application.cache.suggestion.enabled:true}") boolean enabled,
+                           @Value("${application.cache.suggestion.max-size:10000}") long maxSize,
+                           @Value("${application.cache.suggestion.ttl:30s}") Duration ttl) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .executor(Runnable::run)
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(registry, cache.synchronous(), "suggestions");
+    }
+
+    public List<EmployeeSummary> get(EmployeeSuggestion suggestion, Loader loader) throws IOException {
+        if (!enabled) {
+            return loader.load(suggestion);
+        }
+        try {
+            return cache.get(suggestion, key -> {
+                try {
+                    return loader.load(key);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException unchecked) {
+                throw unchecked.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public CompletableFuture<List<EmployeeSummary>> getAsync(
+            EmployeeSuggestion suggestion,
+            Function<EmployeeSuggestion, CompletableFuture<List<EmployeeSummary>>> loader) {
+        if (!enabled) {
+            return loader.apply(suggestion);
+        }
+        return cache.get(suggestion, (key, executor) -> loader.apply(key));
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+
+        List<EmployeeSummary> load(EmployeeSuggestion suggestion) throws IOException;
+
+    }
+
+}
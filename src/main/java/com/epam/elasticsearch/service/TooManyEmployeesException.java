@@ -0,0 +1,15 @@
+package com.epam.elasticsearch.service;
+
+/**
+ * Thrown by getAll once the index holds more employees than the caller is willing to buffer,
+ * the export streams them instead.
+ */
+public class TooManyEmployeesException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public TooManyEmployeesException(int maxSize) {
+        super("More than " + maxSize + " employees, use the export");
+    }
+
+}
@@ -0,0 +1,421 @@
+package com.epam.elasticsearch.service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.epam.elasticsearch.dto.BulkFailure;
+import com.epam.elasticsearch.dto.BulkResult;
+import com.epam.elasticsearch.dto.Employee;
+import com.epam.elasticsearch.dto.EmployeeEntry;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Optional write-behind for single employee writes. Writes wait in memory keyed by id, so a burst
+ * of updates to one employee becomes one document in the next _bulk, sent when flush-size writes
+ * are pending or every flush-interval. New ids that find the queue full, and everything still
+ * pending on shutdown, are appended to an NDJSON spill file that is replayed once the queue has
+ * room again, including right after startup. The replay skips ids written or deleted since they
+ * were spilled. Writes being sent stay visible to readers, a delete
+ * of one of them waits for its batch and keeps it from being requeued.
+ */
+@Component
+@Slf4j
+public class WriteBehindQueue {
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private static final int INTERNAL_ERROR = 500;
+
+    private final EmployeeService service;
+
+    private final ObjectReader entryReader;
+
+    private final ObjectWriter entryWriter;
+
+    private final boolean enabled;
+
+    private final int maxEntries;
+
+    private final int flushSize;
+
+    private final Duration flushInterval;
+
+    private final Path spillFile;
+
+    private final Path replayFile;
+
+    private final Object spillLock = new Object();
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final Counter coalesced;
+
+    private final Counter spilled;
+
+    private final Counter failed;
+
+    private LinkedHashMap<String, Employee> pending = new LinkedHashMap<>();
+
+    private Map<String, Employee> inFlight = new HashMap<>();
+
+    private CompletableFuture<Void> flight = CompletableFuture.completedFuture(null);
+
+    private final Set<String> discarded = new HashSet<>();
+
+    // Ids written again after being spilled, replay must not send the older spilled write over the newer one
+    private final Set<String> superseded = new HashSet<>();
+
+    // Guarded by this, true while a spill or replay file may hold writes
+    private boolean spillHoldsWrites;
+
+    private OutputStream spillOutput;
+
+    private ScheduledExecutorService scheduler;
+
+    public WriteBehindQueue(@Qualifier("service") EmployeeService service,
+                            ObjectMapper mapper,
+                            MeterRegistry registry,
+                            @Value("${application.write-behind.enabled:false}") boolean enabled,
+                            @Value("${application.write-behind.max-entries:10000}") int maxEntries,
+                            @Value("${application.write-behind.flush-size:1000}") int flushSize,
+                            @Value("${application.write-behind.flush-interval:1s}") Duration flushInterval,
+                            @Value("${application.write-behind.spill-file:write-behind.ndjson}") Path spillFile) {
+        this.service = service;
+        this.entryReader = mapper.readerFor(EmployeeEntry.class);
+        this.entryWriter = mapper.writerFor(EmployeeEntry.class);
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.flushSize = flushSize;
+        this.flushInterval = flushInterval;
+        this.spillFile = spillFile;
+        this.replayFile = spillFile.resolveSibling(spillFile.getFileName() + ".replay");
+        this.spillHoldsWrites = Files.exists(spillFile) || Files.exists(replayFile);
+        this.coalesced = Counter.builder("write.behind.coalesced")
+                .description("Writes replaced by a newer write to the same id before being flushed")
+                .register(registry);
+        this.spilled = Counter.builder("write.behind.spilled")
+                .description("Writes appended to the spill file")
+                .register(registry);
+        this.failed = Counter.builder("write.behind.failed")
+                .description("Writes Elasticsearch rejected permanently")
+                .register(registry);
+        Gauge.builder("write.behind.pending", this, queue -> queue.size())
+                .description("Writes waiting in memory for the next flush")
+                .register(registry);
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("write-behind-"));
+        scheduler.scheduleWithFixedDelay(this::flush, 0, flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdown();
+        scheduler.awaitTermination(flushInterval.toMillis() * 10, TimeUnit.MILLISECONDS);
+        Map<String, Employee> remaining = drain();
+        try {
+            if (!remaining.isEmpty()) {
+                spill(remaining);
+                log.info("Spilled " + remaining.size() + " pending writes to " + spillFile);
+            }
+        } catch (IOException e) {
+            log.error("Pending writes can't be spilled, " + remaining.size() + " writes are lost", e);
+        } finally {
+            closeSpill();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Accepts the write, it reaches Elasticsearch with the next flush.
+     */
+    public void enqueue(String id, Employee employee) throws IOException {
+        boolean full;
+        int size;
+        synchronized (this) {
+            discarded.remove(id);
+            full = pending.size() >= maxEntries && !pending.containsKey(id);
+            if (!full && pending.put(id, employee) != null) {
+                coalesced.increment();
+            }
+            if (!full && spillHoldsWrites) {
+                superseded.add(id);
+            }
+            size = pending.size();
+        }
+        if (full) {
+            spill(Map.of(id, employee));
+        }
+        if (size >= flushSize && !scheduler.isShutdown() && flushRequested.compareAndSet(false, true)) {
+            scheduler.execute(this::flush);
+        }
+    }
+
+    /**
+     * A write that has been accepted but not acknowledged yet, so readers see their own writes.
+     */
+    public synchronized Optional<Employee> pending(String id) {
+        Employee employee = pending.get(id);
+        return Optional.ofNullable(employee != null ? employee : inFlight.get(id));
+    }
+
+    /**
+     * Drops a pending write, a delete must not be followed by the flush of an older write.
+     * Completes once a batch sending the id has finished, so the delete reaches Elasticsearch
+     * after it, and the batch doesn't requeue the id if it fails.
+     * Spilled writes of the id are skipped by the next replay of this instance.
+     */
+    public synchronized CompletableFuture<Void> discard(String id) {
+        pending.remove(id);
+        boolean sending = inFlight.remove(id) != null;
+        if (sending || spillHoldsWrites) {
+            discarded.add(id);
+        }
+        return sending ? flight : CompletableFuture.completedFuture(null);
+    }
+
+    private synchronized int size() {
+        return pending.size();
+    }
+
+    private synchronized Map<String, Employee> drain() {
+        Map<String, Employee> drained = pending;
+        pending = new LinkedHashMap<>();
+        return drained;
+    }
+
+    private synchronized void takeOff(Map<String, Employee> batch) {
+        inFlight = new HashMap<>(batch);
+        flight = new CompletableFuture<>();
+    }
+
+    private void land() {
+        CompletableFuture<Void> landed;
+        synchronized (this) {
+            inFlight = new HashMap<>();
+            landed = flight;
+            if (Files.notExists(spillFile) && Files.notExists(replayFile)) {
+                spillHoldsWrites = false;
+                discarded.clear();
+                superseded.clear();
+            }
+        }
+        landed.complete(null);
+    }
+
+    void flush() {
+        flushRequested.set(false);
+        Map<String, Employee> batch;
+        synchronized (this) {
+            batch = drain();
+            takeOff(batch);
+        }
+        try {
+            if (!batch.isEmpty()) {
+                send(batch);
+            }
+        } finally {
+            land();
+        }
+        if (size() < maxEntries / 2) {
+            replay();
+        }
+    }
+
+    private void send(Map<String, Employee> batch) {
+        synchronized (this) {
+            batch.keySet().retainAll(inFlight.keySet());
+        }
+        List<EmployeeEntry> entries = new ArrayList<>(batch.size());
+        batch.forEach((id, employee) -> entries.add(new EmployeeEntry(id, employee)));
+        try {
+            BulkResult result = service.bulkIndex(entries.iterator());
+            Map<String, Employee> retryable = rejected(result, batch);
+            if (!retryable.isEmpty()) {
+                requeue(retryable);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Write-behind flush of " + batch.size() + " writes failed, keeping them for the next one", e);
+            requeue(batch);
+        }
+    }
+
+    /**
+     * Counts and logs rejected writes, returning those worth another attempt: rejections for load
+     * that outlasted the pipeline retries and server errors. Mapping errors are dropped.
+     */
+    private Map<String, Employee> rejected(BulkResult result, Map<String, Employee> sent) {
+        Map<String, Employee> retryable = new LinkedHashMap<>();
+        for (BulkFailure failure : result.failures()) {
+            if (failure.status() == TOO_MANY_REQUESTS || failure.status() >= INTERNAL_ERROR) {
+                retryable.put(failure.id(), sent.get(failure.id()));
+            } else {
+                failed.increment();
+                log.warn("Write-behind write of " + failure.id() + " rejected with " + failure.status()
+                        + ": " + failure.reason());
+            }
+        }
+        return retryable;
+    }
+
+    // Newer writes that arrived during the flush win, deleted ones are dropped, whatever does not fit is spilled
+    private void requeue(Map<String, Employee> batch) {
+        Map<String, Employee> overflow = new LinkedHashMap<>();
+        synchronized (this) {
+            LinkedHashMap<String, Employee> merged = new LinkedHashMap<>(batch);
+            merged.keySet().removeAll(discarded);
+            merged.putAll(pending);
+            pending = new LinkedHashMap<>();
+            merged.forEach((id, employee) -> {
+                if (pending.size() < maxEntries) {
+                    pending.put(id, employee);
+                } else {
+                    overflow.put(id, employee);
+                }
+            });
+        }
+        if (!overflow.isEmpty()) {
+            try {
+                spill(overflow);
+            } catch (IOException e) {
+                log.error("Writes can't be spilled, " + overflow.size() + " writes are lost", e);
+            }
+        }
+    }
+
+    private void spill(Map<String, Employee> entries) throws IOException {
+        if (entries.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            spillHoldsWrites = true;
+            // The spill now holds the newest write of these ids, unless a newer one waits in memory
+            for (String id : entries.keySet()) {
+                if (!pending.containsKey(id)) {
+                    superseded.remove(id);
+                }
+            }
+        }
+        synchronized (spillLock) {
+            if (spillOutput == null) {
+                Path directory = spillFile.toAbsolutePath().getParent();
+                if (directory != null) {
+                    Files.createDirectories(directory);
+                }
+                spillOutput = new BufferedOutputStream(Files.newOutputStream(spillFile,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+            }
+            for (Map.Entry<String, Employee> entry : entries.entrySet()) {
+                spillOutput.write(entryWriter.writeValueAsBytes(new EmployeeEntry(entry.getKey(), entry.getValue())));
+                spillOutput.write('\n');
+            }
+            spillOutput.flush();
+            spilled.increment(entries.size());
+        }
+    }
+
+    private void closeSpill() {
+        synchronized (spillLock) {
+            if (spillOutput == null) {
+                return;
+            }
+            try {
+                spillOutput.close();
+            } catch (IOException e) {
+                log.warn("Spill file " + spillFile + " can't be closed", e);
+            }
+            spillOutput = null;
+        }
+    }
+
+    /**
+     * Moves the spill file aside so new spills start a fresh file, then sends its newest write
+     * per id unless memory already holds a newer one. A replay file left by a failed attempt
+     * or a crash is retried before the spill file is moved again.
+     */
+    private void replay() {
+        try {
+            synchronized (spillLock) {
+                if (Files.notExists(replayFile)) {
+                    if (Files.notExists(spillFile)) {
+                        return;
+                    }
+                    closeSpill();
+                    Files.move(spillFile, replayFile, StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+            LinkedHashMap<String, Employee> spilledWrites = new LinkedHashMap<>();
+            try (MappingIterator<EmployeeEntry> entries = entryReader.readValues(replayFile.toFile())) {
+                while (entries.hasNext()) {
+                    EmployeeEntry entry = entries.next();
+                    spilledWrites.remove(entry.id());
+                    spilledWrites.put(entry.id(), entry.employee());
+                }
+            }
+            List<EmployeeEntry> entries = new ArrayList<>(spilledWrites.size());
+            synchronized (this) {
+                spilledWrites.keySet().removeAll(pending.keySet());
+                spilledWrites.keySet().removeAll(discarded);
+                spilledWrites.keySet().removeAll(superseded);
+                spilledWrites.forEach((id, employee) -> entries.add(new EmployeeEntry(id, employee)));
+                takeOff(spilledWrites);
+            }
+            try {
+                BulkResult result = service.bulkIndex(entries.iterator());
+                spill(rejected(result, spilledWrites));
+                Files.delete(replayFile);
+                log.info("Replayed " + result.total() + " spilled writes from " + replayFile);
+            } finally {
+                land();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Spilled writes in " + replayFile + " can't be replayed yet", e);
+        }
+    }
+
+}
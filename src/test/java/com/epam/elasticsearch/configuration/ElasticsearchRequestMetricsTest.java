@@ -0,0 +1,88 @@
+package com.epam.elasticsearch.configuration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ElasticsearchRequestMetricsTest {
+
+    private static final String BODY = "{\"hits\":{\"hits\":[" + "{\"_id\":\"1\"},".repeat(500) + "{\"_id\":\"2\"}]}}";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final ElasticsearchRequestMetrics metrics = new ElasticsearchRequestMetrics(registry);
+
+    private HttpServer server;
+
+    private RestClient client;
+
+    private byte[] compressed;
+
+    @BeforeEach
+    void start() throws Exception {
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(gzip)) {
+            out.write(BODY.getBytes(StandardCharsets.UTF_8));
+        }
+        compressed = gzip.toByteArray();
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            // Length 0 sends the body chunked, without Content-Length
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(compressed);
+            }
+        });
+        server.start();
+        client = RestClient.builder(new HttpHost("localhost", server.getAddress().getPort(), "http"))
+                .setHttpClientConfigCallback(httpClient -> httpClient
+                        .addInterceptorFirst((HttpRequestInterceptor) metrics)
+                        .addInterceptorLast((HttpResponseInterceptor) metrics))
+                .build();
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    void countsChunkedCompressedResponses() throws Exception {
+        Request request = new Request("POST", "/employees/_search");
+        request.setOptions(request.getOptions().toBuilder().setHttpAsyncResponseConsumerFactory(metrics));
+
+        Response response = client.performRequest(request);
+
+        assertThat(EntityUtils.toString(response.getEntity())).isEqualTo(BODY);
+        DistributionSummary size = registry.get("es.client.response.size").tag("endpoint", "POST _search").summary();
+        assertThat(size.count()).isEqualTo(1);
+        assertThat(size.totalAmount()).isEqualTo(compressed.length);
+        assertThat(registry.get("es.client.requests").tag("status", "200").timer().count()).isEqualTo(1);
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.epam.elasticsearch.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.groups.Tuple.tuple;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import com.epam.elasticsearch.dto.BulkFailure;
+import com.epam.elasticsearch.dto.BulkResult;
+import com.epam.elasticsearch.dto.EmployeeEntry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class BulkIngestionPipelineTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final BulkIngestionPipeline pipeline = new BulkIngestionPipeline(
+            mapper, new EmployeeRouting(false, "address.country"), 2, 1 << 20, 2, 3, 1);
+
+    private final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+
+    @AfterEach
+    void shutdown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    void reportsEntriesWithoutIdAndIndexesTheRest() throws Exception {
+        BulkResult result = pipeline.ingest(entries("""
+                {"id":"1","employee":{"name":"a"}}
+                {"employee":{"name":"b"}}
+                {"id":"3","employee":{"name":"c"}}
+                {"id":"4"}
+                """), this::send);
+
+        assertThat(sent).containsExactlyInAnyOrder("1", "3");
+        assertThat(result.total()).isEqualTo(4);
+        assertThat(result.indexed()).isEqualTo(2);
+        assertThat(result.failures()).extracting(BulkFailure::id, BulkFailure::status)
+                .containsExactly(tuple(null, 400),
+                        tuple("4", 400));
+    }
+
+    @Test
+    void awaitsTheBatchesReadBeforeAnUnreadableEntry() throws Exception {
+        BulkResult result = pipeline.ingest(entries("""
+                {"id":"1","employee":{"name":"a"}}
+                {"id":"2","employee":{"name":"b"}}
+                {"id":"3","employee":{"name":"c"}}
+                {"id":"4",
+                {"id":"5","employee":{"name":"e"}}
+                """), this::send);
+
+        assertThat(sent).containsExactlyInAnyOrder("1", "2", "3");
+        assertThat(result.indexed()).isEqualTo(3);
+        assertThat(result.failures()).singleElement()
+                .satisfies(failure -> assertThat(failure.status()).isEqualTo(400));
+    }
+
+    @Test
+    void retriesItemsRejectedWithTooManyRequests() throws Exception {
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        BulkResult result = pipeline.ingest(entries("""
+                {"id":"1","employee":{"name":"a"}}
+                {"id":"2","employee":{"name":"b"}}
+                """), batch -> {
+            batchSizes.add(batch.size());
+            return batch.size() == 2
+                    ? List.of(new BulkIngestionPipeline.ItemFailure(1, 429, "rejected"))
+                    : List.of();
+        });
+
+        assertThat(batchSizes).containsExactly(2, 1);
+        assertThat(result.retried()).isEqualTo(1);
+        assertThat(result.indexed()).isEqualTo(2);
+        assertThat(result.failures()).isEmpty();
+    }
+
+    private Iterator<EmployeeEntry> entries(String ndjson) throws Exception {
+        return mapper.readerFor(EmployeeEntry.class).readValues(ndjson);
+    }
+
+    private List<BulkIngestionPipeline.ItemFailure> send(BulkIngestionPipeline.Batch batch) {
+        batch.entries().forEach(entry -> sent.add(entry.id()));
+        return List.of();
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.epam.elasticsearch.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.offset;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.epam.elasticsearch.service.ElasticsearchLimiter.Budget;
+
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.ErrorResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ElasticsearchLimiterTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void growsByAboutOnePermitPerFullWindow() {
+        ElasticsearchLimiter limiter = limiter(10, 100, Duration.ofSeconds(1));
+        List<CompletableFuture<String>> calls = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            CompletableFuture<String> call = new CompletableFuture<>();
+            calls.add(call);
+            limiter.executeAsync(Budget.READ, () -> call);
+        }
+        assertThat(gauge("es.limiter.in.flight")).isEqualTo(10);
+
+        calls.forEach(call -> call.complete("done"));
+
+        // The first 5 responses arrive with at least half the limit in use and add about 0.1 each
+        assertThat(gauge("es.limiter.limit")).isBetween(10.4, 10.6);
+        assertThat(gauge("es.limiter.in.flight")).isZero();
+    }
+
+    @Test
+    void shrinksAndRetriesOnTooManyRequests() throws Exception {
+        ElasticsearchLimiter limiter = limiter(10, 100, Duration.ofSeconds(1));
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = limiter.execute(Budget.READ, () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw rejected();
+            }
+            return "done";
+        });
+
+        assertThat(result).isEqualTo("done");
+        assertThat(attempts).hasValue(3);
+        assertThat(gauge("es.limiter.limit")).isCloseTo(8.1, offset(0.001));
+    }
+
+    @Test
+    void shedsOnceRetriesRunOut() {
+        ElasticsearchLimiter limiter = limiter(10, 100, Duration.ofSeconds(1));
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> limiter.execute(Budget.WRITE, () -> {
+            attempts.incrementAndGet();
+            throw rejected();
+        })).isInstanceOf(ElasticsearchOverloadedException.class);
+        assertThat(attempts).hasValue(3);
+        assertThat(registry.get("es.limiter.rejected").tag("budget", "write").counter().count()).isEqualTo(1);
+
+        assertThat(limiter.executeAsync(Budget.WRITE, () -> CompletableFuture.<String>failedFuture(rejected())))
+                .failsWithin(Duration.ofSeconds(5))
+                .withThrowableOfType(ExecutionException.class)
+                .withCauseInstanceOf(ElasticsearchOverloadedException.class);
+    }
+
+    @Test
+    void releasesThePermitWhenTheCallThrowsAnError() throws Exception {
+        ElasticsearchLimiter limiter = limiter(1, 1, Duration.ofMillis(100));
+
+        assertThatThrownBy(() -> limiter.execute(Budget.READ, () -> {
+            throw new AssertionError("boom");
+        })).isInstanceOf(AssertionError.class);
+
+        assertThat(limiter.execute(Budget.READ, () -> "done")).isEqualTo("done");
+        assertThat(gauge("es.limiter.in.flight")).isZero();
+    }
+
+    @Test
+    void queuesUpToMaxQueueAndShedsTheRest() {
+        ElasticsearchLimiter limiter = limiter(1, 1, Duration.ofSeconds(5));
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> held = limiter.executeAsync(Budget.READ, () -> first);
+        CompletableFuture<String> queued = limiter.executeAsync(Budget.READ, () -> CompletableFuture.completedFuture("queued"));
+        CompletableFuture<String> shed = limiter.executeAsync(Budget.READ, () -> CompletableFuture.completedFuture("shed"));
+
+        assertThat(shed).isCompletedExceptionally();
+        assertThat(queued).isNotDone();
+
+        first.complete("first");
+        assertThat(held).isCompletedWithValue("first");
+        assertThat(queued).isCompletedWithValue("queued");
+    }
+
+    @Test
+    void cancellingTheResultCancelsTheCallInFlight() {
+        ElasticsearchLimiter limiter = limiter(1, 1, Duration.ofSeconds(1));
+        CompletableFuture<String> call = new CompletableFuture<>();
+
+        limiter.executeAsync(Budget.READ, () -> call).cancel(true);
+
+        assertThat(call).isCancelled();
+        assertThat(gauge("es.limiter.in.flight")).isZero();
+    }
+
+    private ElasticsearchLimiter limiter(int initial, int maxQueue, Duration queueTimeout) {
+        return new ElasticsearchLimiter(registry, true, initial, 200, initial, 200, initial, 200, 0.9,
+                Duration.ofSeconds(2), queueTimeout, maxQueue, 2, 1, Duration.ofSeconds(1));
+    }
+
+    private double gauge(String name) {
+        return registry.get(name).tag("budget", "read").gauge().value();
+    }
+
+    private static ElasticsearchException rejected() {
+        return new ElasticsearchException("search", ErrorResponse.of(response -> response
+                .status(429)
+                .error(error -> error.type("es_rejected_execution_exception").reason("queue full"))));
+    }
+
+}
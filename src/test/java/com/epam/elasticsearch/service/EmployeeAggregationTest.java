@@ -0,0 +1,83 @@
+package com.epam.elasticsearch.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class EmployeeAggregationTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void ordersTermsBucketsByTheMetricWithDefaults() throws Exception {
+        EmployeeAggregation aggregation = EmployeeAggregation.parse(Map.of("agg_field", "skills"));
+        JsonNode body = mapper.readTree(aggregation.toJson());
+
+        assertThat(body.path("size").asInt(-1)).isZero();
+        assertThat(body.has("query")).isFalse();
+        assertThat(body.path("aggs").path(EmployeeAggregation.GROUP)).isEqualTo(mapper.readTree("""
+                {"terms":{"field":"skills","order":{"stats.avg":"desc"}},
+                 "aggs":{"stats":{"stats":{"field":"rating"}}}}"""));
+    }
+
+    @Test
+    void splitsBucketsByTheNestedFieldOverFilteredEmployees() throws Exception {
+        EmployeeAggregation aggregation = EmployeeAggregation.parse(Map.of(
+                "agg_field", "address.town", "sub_agg_field", "skills", "metric_field", "salary",
+                "metric_type", "max", "sort_order", "asc", "address.country", "Germany"));
+        JsonNode body = mapper.readTree(aggregation.toJson());
+        JsonNode nested = body.path("aggs").path(EmployeeAggregation.GROUP).path("aggs").path(EmployeeAggregation.GROUP);
+
+        assertThat(body.path("query")).isEqualTo(mapper.readTree(
+                "{\"bool\":{\"filter\":[{\"term\":{\"address.country\":\"Germany\"}}]}}"));
+        assertThat(nested.path("terms")).isEqualTo(mapper.readTree(
+                "{\"field\":\"skills\",\"order\":{\"stats.max\":\"asc\"}}"));
+        assertThat(nested.path("aggs").path("stats").path("stats").path("field").asText()).isEqualTo("salary");
+    }
+
+    @Test
+    void rendersHistogramIntervals() throws Exception {
+        JsonNode histogram = mapper.readTree(EmployeeAggregation.parse(Map.of(
+                "agg_type", "histogram", "agg_field", "salary", "interval", "1000")).toJson());
+        JsonNode dateHistogram = mapper.readTree(EmployeeAggregation.parse(Map.of(
+                "agg_type", "date_histogram", "agg_field", "dob", "interval", "year")).toJson());
+
+        assertThat(histogram.path("aggs").path(EmployeeAggregation.GROUP).path("histogram")).isEqualTo(
+                mapper.readTree("{\"field\":\"salary\",\"interval\":1000}"));
+        assertThat(dateHistogram.path("aggs").path(EmployeeAggregation.GROUP).path("date_histogram")).isEqualTo(
+                mapper.readTree("{\"field\":\"dob\",\"calendar_interval\":\"year\"}"));
+    }
+
+    @Test
+    void rejectsUnsupportedShapes() {
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> EmployeeAggregation.parse(Map.of("agg_field", "skills", "size", "5")))
+                .withMessageContaining("Unsupported aggregation parameter size");
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> EmployeeAggregation.parse(Map.of("agg_field", "description")));
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> EmployeeAggregation.parse(Map.of("agg_type", "histogram", "agg_field", "rating", "interval", "1")));
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> EmployeeAggregation.parse(Map.of("agg_type", "date_histogram", "agg_field", "dob", "interval", "hour")));
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> EmployeeAggregation.parse(Map.of("agg_field", "skills", "interval", "10")));
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> EmployeeAggregation.parse(Map.of("agg_field", "skills", "metric_type", "median")));
+    }
+
+    @Test
+    void equalShapesShareTheRenderedBody() {
+        EmployeeAggregation first = EmployeeAggregation.parse(Map.of("agg_field", "skills", "address.country", "Germany"));
+        EmployeeAggregation second = EmployeeAggregation.parse(Map.of("address.country", "Germany", "agg_field", "skills"));
+
+        assertThat(second).isEqualTo(first);
+        assertThat(second.toJson()).isSameAs(first.toJson());
+    }
+
+}
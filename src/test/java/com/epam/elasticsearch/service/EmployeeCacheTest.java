@@ -0,0 +1,64 @@
+package com.epam.elasticsearch.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.epam.elasticsearch.dto.Employee;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class EmployeeCacheTest {
+
+    private static final Employee EMPLOYEE = new Employee("Ann", null, null, null, null, null, null, null, null, null);
+
+    private final EmployeeCache cache = new EmployeeCache(new SimpleMeterRegistry(), true, 100, Duration.ofMinutes(5));
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void keepsEmployeesThatWereFound() throws Exception {
+        assertThat(cache.get("1", null, this::found)).contains(EMPLOYEE);
+        assertThat(cache.get("1", null, this::found)).contains(EMPLOYEE);
+        assertThat(loads).hasValue(1);
+
+        cache.evict("1");
+        assertThat(cache.get("1", null, this::found)).contains(EMPLOYEE);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void doesNotKeepEmployeesThatWereNotFound() throws Exception {
+        assertThat(cache.get("1", null, this::missing)).isEmpty();
+        assertThat(cache.get("1", null, this::found)).contains(EMPLOYEE);
+        assertThat(cache.getAsync("2", null, id -> CompletableFuture.completedFuture(missing(id))).join()).isEmpty();
+        assertThat(cache.getAsync("2", null, id -> CompletableFuture.completedFuture(found(id))).join()).contains(EMPLOYEE);
+        assertThat(loads).hasValue(4);
+    }
+
+    @Test
+    void readsWithAnotherRoutingMiss() throws Exception {
+        assertThat(cache.get("1", "Germany", this::found)).contains(EMPLOYEE);
+        assertThat(cache.get("1", "France", this::missing)).isEmpty();
+        assertThat(cache.getAsync("1", "France", id -> CompletableFuture.completedFuture(missing(id))).join()).isEmpty();
+        assertThat(cache.getAsync("1", "Germany", id -> CompletableFuture.completedFuture(missing(id))).join())
+                .contains(EMPLOYEE);
+        assertThat(loads).hasValue(3);
+    }
+
+    private Optional<Employee> found(String id) {
+        loads.incrementAndGet();
+        return Optional.of(EMPLOYEE);
+    }
+
+    private Optional<Employee> missing(String id) {
+        loads.incrementAndGet();
+        return Optional.empty();
+    }
+
+}
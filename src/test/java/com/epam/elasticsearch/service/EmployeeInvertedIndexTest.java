@@ -0,0 +1,77 @@
+package com.epam.elasticsearch.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.epam.elasticsearch.dto.Address;
+import com.epam.elasticsearch.dto.Employee;
+
+class EmployeeInvertedIndexTest {
+
+    private final EmployeeInvertedIndex index = new EmployeeInvertedIndex();
+
+    @Test
+    void matchesAnyValueOfATermAndEveryField() {
+        index.index("1", employee("a", "Germany", List.of("java", "go"), true, 3000), 1, 1);
+        index.index("2", employee("b", "France", List.of("java"), false, 4000), 2, 1);
+        index.index("3", employee("c", "Spain", List.of("rust"), true, 5000), 3, 1);
+
+        assertThat(names(Map.of("skills", List.of("java")), Map.of())).containsExactly("a", "b");
+        assertThat(names(Map.of("address.country", List.of("France", "Spain")), Map.of())).containsExactly("b", "c");
+        assertThat(names(Map.of("skills", List.of("java"), "verified", List.of("true")), Map.of())).containsExactly("a");
+        assertThat(names(Map.of("skills", List.of("python")), Map.of())).isEmpty();
+    }
+
+    @Test
+    void filtersNumericRanges() {
+        for (int i = 0; i < 100; i++) {
+            index.index(String.valueOf(i), employee("e" + i, "Germany", List.of(), true, i * 100), i, 1);
+        }
+        index.compact();
+        index.index("5", employee("moved", "Germany", List.of(), true, 9050), 200, 1);
+
+        assertThat(names(Map.of(), Map.of("salary", Map.of("gt", "9000", "lt", "9100")))).containsExactly("moved");
+        assertThat(names(Map.of(), Map.of("salary", Map.of("gt", "9800")))).containsExactly("e99");
+        assertThat(index.search(Map.of(), Map.of("salary", Map.of("gt", "many")), 0, 10)).isNull();
+    }
+
+    @Test
+    void keepsTheLatestVersionOfEachEmployee() {
+        index.index("1", employee("new", "Germany", List.of("java"), true, 3000), 5, 1);
+        index.index("1", employee("old", "France", List.of("go"), true, 3000), 4, 1);
+        assertThat(names(Map.of("address.country", List.of("Germany")), Map.of())).containsExactly("new");
+
+        index.delete("1", 3, 1);
+        assertThat(index.size()).isEqualTo(1);
+        index.delete("1", 6, 1);
+        assertThat(index.size()).isZero();
+
+        index.index("1", employee("stale", "Germany", List.of("java"), true, 3000), 6, 1);
+        assertThat(index.size()).isZero();
+        index.index("1", employee("term", "Germany", List.of("java"), true, 3000), 1, 2);
+        assertThat(names(Map.of("skills", List.of("java")), Map.of())).containsExactly("term");
+    }
+
+    @Test
+    void pagesInDocOrder() {
+        for (int i = 0; i < 5; i++) {
+            index.index(String.valueOf(i), employee("e" + i, "Germany", List.of(), true, 1000), i, 1);
+        }
+
+        assertThat(index.search(Map.of(), Map.of(), 1, 2)).extracting(Employee::name).containsExactly("e1", "e2");
+        assertThat(index.search(Map.of(), Map.of(), 4, 2)).extracting(Employee::name).containsExactly("e4");
+    }
+
+    private List<String> names(Map<String, List<String>> terms, Map<String, Map<String, String>> ranges) {
+        return index.search(terms, ranges, 0, 100).stream().map(Employee::name).toList();
+    }
+
+    static Employee employee(String name, String country, List<String> skills, boolean verified, int salary) {
+        return new Employee(name, null, new Address(country, null), null, skills, null, null, null, verified, salary);
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.epam.elasticsearch.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.assertj.core.api.Assertions.entry;
+
+import java.util.Base64;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class EmployeePageQueryTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void firstPageOpensAPointInTimeAndBreaksTiesOnShardDoc() {
+        EmployeePageQuery query = EmployeePageQuery.parse(params());
+
+        assertThat(query.opensPointInTime()).isTrue();
+        assertThat(query.keepAlive()).isEqualTo("1m");
+        assertThat(query.size()).isEqualTo(EmployeePageQuery.DEFAULT_SIZE);
+        assertThat(query.query().sort()).containsExactly(entry("rating", "desc"), entry("_shard_doc", "asc"));
+    }
+
+    @Test
+    void nextPageSearchesAfterTheLastSortValuesOfThePointInTime() throws Exception {
+        EmployeePageQuery first = EmployeePageQuery.parse(params("sort", "name:asc", "size", "2", "pit", "5m"));
+        String cursor = first.next(2, mapper.readTree("[\"Ann\",17]"), "pit-1");
+
+        EmployeePageQuery second = EmployeePageQuery.parse(params("size", "2", "cursor", cursor));
+        JsonNode body = mapper.readTree(second.toJson(second.pitId()));
+
+        assertThat(second.opensPointInTime()).isFalse();
+        assertThat(second.pitId()).isEqualTo("pit-1");
+        assertThat(second.keepAlive()).isEqualTo("5m");
+        assertThat(second.query().sort()).containsExactly(entry("name", "asc"), entry("_shard_doc", "asc"));
+        assertThat(body.path("search_after")).isEqualTo(mapper.readTree("[\"Ann\",17]"));
+        assertThat(body.path("pit").path("id").asText()).isEqualTo("pit-1");
+        assertThat(body.path("track_total_hits").asBoolean(true)).isFalse();
+    }
+
+    @Test
+    void endsAfterAShortPage() throws Exception {
+        EmployeePageQuery query = EmployeePageQuery.parse(params("size", "2"));
+
+        assertThat(query.next(1, mapper.readTree("[4.5,3]"), "pit-1")).isNull();
+        assertThat(query.next(2, null, "pit-1")).isNull();
+    }
+
+    @Test
+    void rejectsASortChangeBetweenPages() throws Exception {
+        String cursor = EmployeePageQuery.parse(params()).next(20, mapper.readTree("[4.5,3]"), "pit-1");
+
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> EmployeePageQuery.parse(params("cursor", cursor, "sort", "name:asc")))
+                .withMessageContaining("sort can't change");
+    }
+
+    @Test
+    void rejectsInvalidCursors() {
+        String withoutPit = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString("{\"sort\":{\"email\":\"asc\"},\"after\":[\"a@b.c\"]}".getBytes());
+
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> EmployeePageQuery.parse(params("cursor", "not a cursor")));
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> EmployeePageQuery.parse(params("cursor", withoutPit)));
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> EmployeePageQuery.parse(params("from", "20")));
+    }
+
+    private static MultiValueMap<String, String> params(String... keysAndValues) {
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            params.add(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return params;
+    }
+
+}
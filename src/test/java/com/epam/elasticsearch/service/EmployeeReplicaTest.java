@@ -0,0 +1,152 @@
+package com.epam.elasticsearch.service;
+
+import static com.epam.elasticsearch.service.EmployeeInvertedIndexTest.employee;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import com.epam.elasticsearch.dto.Employee;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class EmployeeReplicaTest {
+
+    private static final String INDEX = "employees-1";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    // Operations of the single shard in _seq_no order
+    private final List<ObjectNode> operations = new CopyOnWriteArrayList<>();
+
+    private HttpServer server;
+
+    private RestClient client;
+
+    private EmployeeReplica replica;
+
+    @BeforeEach
+    void start() throws Exception {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/employees/_stats/docs", this::stats);
+        server.createContext("/" + INDEX + "/_refresh", exchange -> respond(exchange, mapper.createObjectNode()));
+        server.createContext("/" + INDEX + "/_search", this::search);
+        server.start();
+        client = RestClient.builder(new HttpHost("localhost", server.getAddress().getPort(), "http")).build();
+
+        EmployeeIndexManager indexManager = new EmployeeIndexManager(client, mapper, "employees", 1, 0, "1s",
+                false, false, new EmployeeRouting(false, "address.country"), Duration.ofMinutes(1));
+        replica = new EmployeeReplica(client, mapper, indexManager, new SimpleMeterRegistry(), true,
+                Duration.ofSeconds(5), Duration.ofHours(1), Duration.ofSeconds(30), 1000);
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    void catchesUpWithWritesOfOtherWriters() {
+        write("1", employee("a", "Germany", List.of("java"), true, 3000));
+        write("2", employee("b", "France", List.of("go"), true, 3000));
+        assertThat(search()).isEmpty();
+
+        replica.sync();
+        assertThat(search()).hasValueSatisfying(employees -> assertThat(employees).extracting(Employee::name)
+                .containsExactly("a"));
+
+        write("3", employee("c", "Spain", List.of("java"), true, 3000));
+        write("1", employee("a", "Germany", List.of("go"), true, 3000));
+        replica.sync();
+        assertThat(search()).hasValueSatisfying(employees -> assertThat(employees).extracting(Employee::name)
+                .containsExactly("c"));
+    }
+
+    @Test
+    void appliesTheServicesOwnWritesAndDeletes() {
+        write("1", employee("a", "Germany", List.of("java"), true, 3000));
+        replica.sync();
+
+        replica.indexed("2", employee("b", "France", List.of("java"), true, 3000), 7, 1);
+        replica.deleted("1", 8, 1);
+        assertThat(search()).hasValueSatisfying(employees -> assertThat(employees).extracting(Employee::name)
+                .containsExactly("b"));
+
+        // The catch-up reading an older copy doesn't bring the deleted employee back
+        replica.sync();
+        assertThat(search()).hasValueSatisfying(employees -> assertThat(employees).extracting(Employee::name)
+                .containsExactly("b"));
+    }
+
+    private Optional<List<Employee>> search() {
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        params.add("skills", "java");
+        return replica.search(EmployeeSearchQuery.parse(params));
+    }
+
+    private void write(String id, Employee employee) {
+        ObjectNode operation = mapper.createObjectNode()
+                .put("_id", id)
+                .put("_seq_no", operations.size())
+                .put("_primary_term", 1);
+        operation.set("_source", mapper.valueToTree(employee));
+        operations.add(operation);
+    }
+
+    private void stats(HttpExchange exchange) throws IOException {
+        ObjectNode index = mapper.createObjectNode();
+        index.putObject("primaries").putObject("docs").put("count", operations.size());
+        index.putObject("shards").putArray("0").addObject()
+                .<ObjectNode>set("routing", mapper.createObjectNode().put("primary", true))
+                .putObject("seq_no")
+                .put("global_checkpoint", operations.size() - 1);
+        ObjectNode body = mapper.createObjectNode();
+        body.putObject("indices").set(INDEX, index);
+        respond(exchange, body);
+    }
+
+    private void search(HttpExchange exchange) throws IOException {
+        JsonNode request = mapper.readTree(exchange.getRequestBody());
+        long after = request.path("query").path("range").path("_seq_no").path("gt").asLong();
+        int size = request.path("size").asInt();
+        ObjectNode body = mapper.createObjectNode();
+        ArrayNode hits = body.putObject("hits").putArray("hits");
+        for (ObjectNode operation : operations) {
+            if (operation.path("_seq_no").asLong() > after && hits.size() < size) {
+                hits.add(operation);
+            }
+        }
+        respond(exchange, body);
+    }
+
+    private void respond(HttpExchange exchange, JsonNode body) throws IOException {
+        byte[] bytes = mapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.epam.elasticsearch.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.groups.Tuple.tuple;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.epam.elasticsearch.dto.AggregationBucket;
+import com.epam.elasticsearch.dto.Employee;
+import com.epam.elasticsearch.dto.EmployeeLookup;
+import com.epam.elasticsearch.dto.EmployeeSummary;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class EmployeeResponseDecoderTest {
+
+    private static final String SEARCH = """
+            {"took":3,"timed_out":false,"_shards":{"total":1,"successful":1},"pit_id":"pit-1",
+             "hits":{"total":{"value":42,"relation":"gte"},"max_score":null,
+              "hits":[
+               {"_id":"1","_score":null,"_source":{"name":"Ann","address":{"country":"Germany","town":"Berlin"},"skills":["java"]},
+                "highlight":{"name":["<em>Ann</em>"]},"sort":[4.5,0]},
+               {"_id":"2","_score":null,"_source":{"name":"Bob","email":"bob@example.com"},"sort":[4.0,1]}]}}
+            """;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final EmployeeResponseDecoder decoder = new EmployeeResponseDecoder(mapper, new ElasticsearchMetrics(registry));
+
+    @Test
+    void decodesSearchHitsWithTotalLastSortAndPointInTime() throws Exception {
+        EmployeeResponseDecoder.SearchPage page = decoder.decodeSearch(json(SEARCH));
+
+        assertThat(page.employees()).extracting(Employee::name).containsExactly("Ann", "Bob");
+        assertThat(page.employees().get(0).address().town()).isEqualTo("Berlin");
+        assertThat(page.lastSort()).isEqualTo(mapper.readTree("[4.0,1]"));
+        assertThat(page.pitId()).isEqualTo("pit-1");
+        assertThat(page.total()).isEqualTo(42);
+        assertThat(page.totalRelation()).isEqualTo("gte");
+        assertThat(registry.get("es.took").tag("operation", "search").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void decodesSmileLikeJson() throws Exception {
+        byte[] smile = new ObjectMapper(new SmileFactory()).writeValueAsBytes(mapper.readTree(SEARCH));
+
+        EmployeeResponseDecoder.SearchPage page = decoder.decodeSearch(new ByteArrayInputStream(smile));
+
+        assertThat(page.employees()).extracting(Employee::name).containsExactly("Ann", "Bob");
+        assertThat(page.lastSort()).isEqualTo(mapper.readTree("[4.0,1]"));
+    }
+
+    @Test
+    void readsOnlySummaryFields() throws Exception {
+        assertThat(decoder.decodeSummaries(json(SEARCH)))
+                .containsExactly(new EmployeeSummary("1", "Ann", null, "Berlin"),
+                        new EmployeeSummary("2", "Bob", "bob@example.com", null));
+    }
+
+    @Test
+    void decodesDocumentsAndLookups() throws Exception {
+        assertThat(decoder.decodeDocument(json("""
+                {"_index":"employees-1","_id":"1","found":true,"_source":{"name":"Ann"}}
+                """))).hasValueSatisfying(employee -> assertThat(employee.name()).isEqualTo("Ann"));
+        assertThat(decoder.decodeDocument(json("""
+                {"_index":"employees-1","_id":"1","found":false}
+                """))).isEmpty();
+        assertThat(decoder.decodeMultiGet(json("""
+                {"docs":[{"_id":"1","found":true,"_source":{"name":"Ann"}},{"_id":"2","found":false}]}
+                """))).extracting(EmployeeLookup::id, EmployeeLookup::found)
+                .containsExactly(tuple("1", true), tuple("2", false));
+        assertThat(decoder.decodeHitLookups(json(SEARCH))).extracting(EmployeeLookup::id).containsExactly("1", "2");
+    }
+
+    @Test
+    void decodesNestedBucketsAndStats() throws Exception {
+        assertThat(decoder.decodeAggregation(json("""
+                {"took":1,"aggregations":{"group":{"buckets":[
+                  {"key":"Germany","doc_count":2,"stats":{"count":2,"min":1.0,"max":3.0,"avg":2.0,"sum":4.0}},
+                  {"key":1672531200000,"key_as_string":"2023-01-01","doc_count":0,"stats":{"count":0,"min":null,"max":null,"avg":null,"sum":0.0}}]}}}
+                """))).containsExactly(
+                new AggregationBucket("Germany", 2, 1.0, 3.0, 2.0, 4.0, null),
+                new AggregationBucket("2023-01-01", 0, null, null, null, null, null));
+    }
+
+    @Test
+    void rejectsAResponseThatIsNotAnObject() {
+        assertThatExceptionOfType(JsonParseException.class).isThrownBy(() -> decoder.decodeSearch(json("[1,2]")));
+    }
+
+    private static InputStream json(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
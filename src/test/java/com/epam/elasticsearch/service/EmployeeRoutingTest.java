@@ -0,0 +1,93 @@
+package com.epam.elasticsearch.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import com.epam.elasticsearch.dto.Address;
+import com.epam.elasticsearch.dto.Employee;
+import com.epam.elasticsearch.dto.EmployeeEntry;
+
+class EmployeeRoutingTest {
+
+    private final EmployeeRouting routing = new EmployeeRouting(true, "address.country");
+
+    @Test
+    void routesOnlyOnceTheIndexIsRoutedByTheField() {
+        assertThat(routing.of(employee("Germany"))).isNull();
+
+        routing.indexRoutedBy("address.country");
+        assertThat(routing.of(employee("Germany"))).isEqualTo("Germany");
+        assertThat(routing.of(employee(""))).isNull();
+
+        routing.indexRoutedBy(null);
+        assertThat(routing.of(employee("Germany"))).isNull();
+    }
+
+    @Test
+    void routesSearchesPinningTheField() {
+        routing.indexRoutedBy("address.country");
+
+        assertThat(routing.of(search("Germany", "France"))).isEqualTo("Germany,France");
+        assertThat(routing.of(search())).isNull();
+        assertThat(routing.of(EmployeeAggregation.parse(Map.of("agg_field", "skills", "address.country", "Germany"))))
+                .isEqualTo("Germany");
+    }
+
+    @Test
+    void searchesValuesContainingCommasUnrouted() {
+        routing.indexRoutedBy("address.country");
+
+        assertThat(routing.of(search("Germany", "Korea, Republic of"))).isNull();
+        assertThat(routing.of(EmployeeAggregation.parse(
+                Map.of("agg_field", "skills", "address.country", "Korea, Republic of")))).isNull();
+    }
+
+    @Test
+    void rejectsUpdatesOfTheField() {
+        routing.indexRoutedBy("address.country");
+
+        assertThatIllegalArgumentException().isThrownBy(() -> routing.checkUpdate(employee("France")));
+        routing.checkUpdate(new Employee("Ann", null, null, null, null, null, null, null, null, null));
+    }
+
+    @Test
+    void findsWritesMovingAwayFromTheLocatedRouting() {
+        List<EmployeeEntry> writes = List.of(
+                new EmployeeEntry("1", employee("France")),
+                new EmployeeEntry("2", employee("Germany")),
+                new EmployeeEntry("3", employee("France")),
+                new EmployeeEntry("4", employee("")));
+        Map<String, String> located = Map.of("1", "Germany", "2", "Germany", "4", "Germany");
+
+        assertThat(routing.moved(writes, located)).isEmpty();
+
+        routing.indexRoutedBy("address.country");
+        assertThat(routing.moved(writes, located)).isEqualTo(Map.of("1", "Germany", "4", "Germany"));
+    }
+
+    @Test
+    void copyScriptSetsTheRoutingFromTheSource() {
+        assertThat(routing.copyScript()).contains("ctx._source.address?.country");
+        assertThat(new EmployeeRouting(false, "address.country").copyScript()).isEqualTo("ctx._routing = null");
+    }
+
+    private static Employee employee(String country) {
+        return new Employee("Ann", null, new Address(country, null), null, null, null, null, null, null, null);
+    }
+
+    private static EmployeeSearchQuery search(String... countries) {
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        for (String country : countries) {
+            params.add("address.country", country);
+        }
+        return EmployeeSearchQuery.parse(params);
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.epam.elasticsearch.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.assertj.core.api.Assertions.entry;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class EmployeeSearchQueryTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void parsesTermsRangesAndSort() {
+        EmployeeSearchQuery query = EmployeeSearchQuery.parse(params(
+                "skills", "java", "skills", "go", "salary_gte", "3000", "salary_lt", "5000",
+                "sort", "rating:desc", "sort", "name"));
+
+        assertThat(query.terms()).containsExactly(entry("skills", List.of("java", "go")));
+        assertThat(query.ranges()).containsExactly(entry("salary", Map.of("gte", "3000", "lt", "5000")));
+        assertThat(query.sort()).containsExactly(entry("rating", "desc"), entry("name", "asc"));
+        assertThat(query.isFilterOnly()).isFalse();
+    }
+
+    @Test
+    void rejectsUnknownParametersAndBadValues() {
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> EmployeeSearchQuery.parse(params("nickname", "Ann")))
+                .withMessageContaining("Unsupported search parameter nickname");
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> EmployeeSearchQuery.parse(params("name_gte", "A")))
+                .withMessageContaining("Unsupported search parameter");
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> EmployeeSearchQuery.parse(params("sort", "rating:up")))
+                .withMessageContaining("Unsupported sort");
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> EmployeeSearchQuery.parse(params("size", "10001")));
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> EmployeeSearchQuery.parse(params("from", "one")))
+                .withMessageContaining("from must be a number");
+    }
+
+    @Test
+    void filtersExactAndRangePredicatesAndScoresOnlyText() throws Exception {
+        EmployeeSearchQuery query = EmployeeSearchQuery.parse(params(
+                "address.country", "Germany", "experience_gt", "2", "description", "team lead"));
+        JsonNode bool = mapper.readTree(query.toJson()).path("query").path("bool");
+
+        assertThat(bool.path("must")).isEqualTo(mapper.readTree(
+                "[{\"match\":{\"description\":\"team lead\"}}]"));
+        assertThat(bool.path("filter")).isEqualTo(mapper.readTree(
+                "[{\"terms\":{\"address.country\":[\"Germany\"]}},{\"range\":{\"experience\":{\"gt\":\"2\"}}}]"));
+    }
+
+    @Test
+    void filterOnlyQueryHasNoMustClause() throws Exception {
+        EmployeeSearchQuery query = EmployeeSearchQuery.parse(params("verified", "true", "size", "5"));
+        JsonNode body = mapper.readTree(query.toJson());
+
+        assertThat(query.isFilterOnly()).isTrue();
+        assertThat(body.path("size").asInt()).isEqualTo(5);
+        assertThat(body.path("query").path("bool").has("must")).isFalse();
+        assertThat(body.path("query").path("bool").path("filter")).hasSize(1);
+    }
+
+    @Test
+    void rendersSourceSortAndMatchAll() throws Exception {
+        EmployeeSearchQuery query = EmployeeSearchQuery.parse(params("fields", "name, email", "sort", "rating:desc"));
+        JsonNode body = mapper.readTree(query.toJson());
+
+        assertThat(body.path("query")).isEqualTo(mapper.readTree("{\"match_all\":{}}"));
+        assertThat(body.path("_source").path("includes")).isEqualTo(mapper.readTree("[\"name\",\"email\"]"));
+        assertThat(body.path("sort")).isEqualTo(mapper.readTree("[{\"rating\":{\"order\":\"desc\"}}]"));
+    }
+
+    private static MultiValueMap<String, String> params(String... keysAndValues) {
+        MultiValueMap<String, String> params = new LinkedMultiValueMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            params.add(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return params;
+    }
+
+}
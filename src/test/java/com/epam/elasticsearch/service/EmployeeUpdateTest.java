@@ -0,0 +1,87 @@
+package com.epam.elasticsearch.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.epam.elasticsearch.dto.Address;
+import com.epam.elasticsearch.dto.Employee;
+import com.epam.elasticsearch.dto.EmployeePatch;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class EmployeeUpdateTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void sendsChangedFieldsAsAPartialDoc() throws Exception {
+        EmployeeUpdate update = EmployeeUpdate.parse(new EmployeePatch(
+                employee("Ann", new Address("Germany", null), null), null, null, null, null));
+        JsonNode body = mapper.readTree(update.toJson(mapper));
+
+        assertThat(update.isScripted()).isFalse();
+        assertThat(body.has("script")).isFalse();
+        assertThat(body.path("doc")).isEqualTo(mapper.readTree(
+                "{\"name\":\"Ann\",\"address\":{\"country\":\"Germany\"}}"));
+        assertThat(update.retryOnConflict()).isEqualTo(EmployeeUpdate.RETRY_ON_CONFLICT);
+    }
+
+    @Test
+    void runsSkillChangesAsAScriptThatSkipsUnchangedDocuments() throws Exception {
+        EmployeeUpdate update = EmployeeUpdate.parse(new EmployeePatch(
+                employee("Ann", null, null), List.of("Java"), List.of("Cobol"), null, null));
+        JsonNode script = mapper.readTree(update.toJson(mapper)).path("script");
+
+        assertThat(update.isScripted()).isTrue();
+        assertThat(script.path("lang").asText()).isEqualTo("painless");
+        assertThat(script.path("source").asText()).isEqualTo(EmployeeUpdate.SCRIPT).contains("ctx.op = 'noop'");
+        assertThat(script.path("params")).isEqualTo(mapper.readTree(
+                "{\"doc\":{\"name\":\"Ann\"},\"add\":[\"Java\"],\"remove\":[\"Cobol\"]}"));
+    }
+
+    @Test
+    void rejectsDocSkillsCombinedWithSkillChanges() {
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> EmployeeUpdate.parse(new EmployeePatch(
+                        employee(null, null, List.of("Java")), List.of("Go"), null, null, null)))
+                .withMessageContaining("doc.skills");
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> EmployeeUpdate.parse(new EmployeePatch(null, null, List.of(" "), null, null)))
+                .withMessageContaining("remove_skills");
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> EmployeeUpdate.parse(new EmployeePatch(employee(null, null, null), null, null, null, null)))
+                .withMessageContaining("must change");
+    }
+
+    @Test
+    void guardsOnSeqNoAndPrimaryTermInsteadOfRetrying() {
+        EmployeeUpdate update = EmployeeUpdate.parse(new EmployeePatch(
+                null, List.of("Java"), null, 7L, 1L));
+
+        assertThat(update.ifSeqNo()).isEqualTo(7L);
+        assertThat(update.ifPrimaryTerm()).isEqualTo(1L);
+        assertThat(update.retryOnConflict()).isNull();
+    }
+
+    @Test
+    void rejectsMismatchedSeqNoAndPrimaryTerm() {
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> EmployeeUpdate.parse(new EmployeePatch(null, List.of("Java"), null, 7L, null)))
+                .withMessageContaining("together");
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> EmployeeUpdate.parse(new EmployeePatch(null, List.of("Java"), null, null, 1L)))
+                .withMessageContaining("together");
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> EmployeeUpdate.parse(new EmployeePatch(null, List.of("Java"), null, 7L, 0L)))
+                .withMessageContaining("Invalid");
+    }
+
+    private static Employee employee(String name, Address address, List<String> skills) {
+        return new Employee(name, null, address, null, skills, null, null, null, null, null);
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.epam.elasticsearch.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class HedgedReadsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private HedgedReads hedgedReads;
+
+    @AfterEach
+    void shutdown() {
+        hedgedReads.shutdown();
+    }
+
+    @Test
+    void sendsOneAttemptWithoutPreferenceWhenDisabled() {
+        hedgedReads = hedgedReads(false, 1, 10);
+        List<String> preferences = new ArrayList<>();
+
+        String result = hedgedReads.<String>execute("service", "get", preference -> {
+            preferences.add(preference);
+            return CompletableFuture.completedFuture("a");
+        }).join();
+
+        assertThat(result).isEqualTo("a");
+        assertThat(preferences).containsExactly((String) null);
+    }
+
+    @Test
+    void hedgeThatAnswersFirstWinsAndCancelsTheFirstAttempt() throws Exception {
+        hedgedReads = hedgedReads(true, 1, 10);
+        List<CompletableFuture<String>> attempts = Collections.synchronizedList(new ArrayList<>());
+
+        String result = hedgedReads.<String>execute("service", "get", preference -> {
+            CompletableFuture<String> attempt = preference == null
+                    ? new CompletableFuture<>()
+                    : CompletableFuture.completedFuture(preference);
+            attempts.add(attempt);
+            return attempt;
+        }).get(5, TimeUnit.SECONDS);
+
+        assertThat(result).startsWith("hedge-");
+        assertThat(attempts).hasSize(2);
+        // The loser is cancelled right after the result completes
+        await(() -> attempts.get(0).isCancelled());
+        assertThat(registry.counter("es.hedge.won", "impl", "service", "operation", "get").count()).isEqualTo(1);
+    }
+
+    @Test
+    void hedgesNoMoreThanTheBudget() throws Exception {
+        hedgedReads = hedgedReads(true, 0, 1);
+        CompletableFuture<String> slow = new CompletableFuture<>();
+
+        CompletableFuture<String> hedged = hedgedReads.execute("service", "search",
+                preference -> preference == null ? new CompletableFuture<>() : CompletableFuture.completedFuture("b"));
+        assertThat(hedged.get(5, TimeUnit.SECONDS)).isEqualTo("b");
+
+        CompletableFuture<String> denied = hedgedReads.execute("service", "search",
+                preference -> preference == null ? slow : CompletableFuture.completedFuture("b"));
+        while (registry.counter("es.hedge.denied", "impl", "service", "operation", "search").count() == 0) {
+            Thread.sleep(5);
+        }
+        slow.complete("a");
+
+        assertThat(denied.get(5, TimeUnit.SECONDS)).isEqualTo("a");
+        assertThat(registry.counter("es.hedge.fired", "impl", "service", "operation", "search").count()).isEqualTo(1);
+    }
+
+    @Test
+    void countsCancelledFirstAttemptsTowardsTheDelay() throws Exception {
+        hedgedReads = hedgedReads(true, 1, 200);
+        for (int i = 0; i < 64; i++) {
+            hedgedReads.execute("service", "get", preference -> CompletableFuture.completedFuture("a")).join();
+        }
+        assertThat(delaySeconds()).isEqualTo(0.001);
+
+        // Every first attempt loses to a hedge answering 20ms later and is cancelled
+        List<CompletableFuture<String>> reads = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            reads.add(hedgedReads.execute("service", "get", preference -> preference == null
+                    ? new CompletableFuture<>()
+                    : CompletableFuture.supplyAsync(() -> "b", CompletableFuture.delayedExecutor(20, TimeUnit.MILLISECONDS))));
+        }
+        reads.forEach(CompletableFuture::join);
+
+        await(() -> delaySeconds() >= 0.02);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("Condition not met within 5s").isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private double delaySeconds() {
+        return registry.get("es.hedge.delay").tag("operation", "get").gauge().value();
+    }
+
+    private HedgedReads hedgedReads(boolean enabled, double budget, int maxBurst) {
+        return new HedgedReads(registry, enabled, 0.9, Duration.ofMillis(1), Duration.ofMillis(50),
+                Duration.ofSeconds(30), budget, maxBurst);
+    }
+
+}
@@ -0,0 +1,154 @@
+package com.epam.elasticsearch.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.epam.elasticsearch.dto.BulkResult;
+import com.epam.elasticsearch.dto.Employee;
+import com.epam.elasticsearch.dto.EmployeeEntry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class WriteBehindQueueTest {
+
+    @TempDir
+    Path directory;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final EmployeeService service = mock(EmployeeService.class);
+
+    private final List<List<EmployeeEntry>> batches = new ArrayList<>();
+
+    @Test
+    void sendsTheNewestWritePerId() throws Exception {
+        WriteBehindQueue queue = queue(10);
+        acceptBatches();
+
+        queue.enqueue("1", employee("a"));
+        queue.enqueue("2", employee("b"));
+        queue.enqueue("1", employee("c"));
+        assertThat(queue.pending("1")).contains(employee("c"));
+        queue.flush();
+
+        assertThat(batches).singleElement().asList()
+                .containsExactly(new EmployeeEntry("1", employee("c")), new EmployeeEntry("2", employee("b")));
+        assertThat(registry.counter("write.behind.coalesced").count()).isEqualTo(1);
+        assertThat(queue.pending("1")).isEmpty();
+    }
+
+    @Test
+    void replaysWritesSpilledWhileTheQueueWasFull() throws Exception {
+        WriteBehindQueue queue = queue(2);
+        acceptBatches();
+
+        queue.enqueue("1", employee("a"));
+        queue.enqueue("2", employee("b"));
+        queue.enqueue("3", employee("c"));
+        queue.enqueue("3", employee("d"));
+        assertThat(registry.counter("write.behind.spilled").count()).isEqualTo(2);
+        queue.flush();
+
+        assertThat(batches).extracting(List::size).containsExactly(2, 1);
+        assertThat(batches.get(1)).containsExactly(new EmployeeEntry("3", employee("d")));
+        assertThat(directory).isEmptyDirectory();
+    }
+
+    @Test
+    void skipsSpilledWritesOfDeletedIds() throws Exception {
+        WriteBehindQueue queue = queue(2);
+        acceptBatches();
+
+        queue.enqueue("1", employee("a"));
+        queue.enqueue("2", employee("b"));
+        queue.enqueue("3", employee("c"));
+        assertThat(queue.discard("3")).isDone();
+        queue.flush();
+
+        assertThat(batches).flatExtracting(batch -> batch).extracting(EmployeeEntry::id).containsExactly("1", "2");
+        assertThat(directory).isEmptyDirectory();
+    }
+
+    @Test
+    void skipsSpilledWritesOfIdsWrittenAgain() throws Exception {
+        WriteBehindQueue queue = queue(2);
+        AtomicInteger calls = new AtomicInteger();
+        when(service.bulkIndex(any())).thenAnswer(invocation -> {
+            List<EmployeeEntry> batch = new ArrayList<>();
+            invocation.<Iterator<EmployeeEntry>>getArgument(0).forEachRemaining(batch::add);
+            // The replay after the first flush finds Elasticsearch down
+            if (calls.incrementAndGet() == 2) {
+                throw new IOException("Connection refused");
+            }
+            batches.add(batch);
+            return new BulkResult(batch.size(), batch.size(), 0, List.of());
+        });
+
+        queue.enqueue("1", employee("a"));
+        queue.enqueue("2", employee("b"));
+        queue.enqueue("3", employee("old"));
+        queue.flush();
+        queue.enqueue("3", employee("new"));
+        queue.flush();
+
+        assertThat(batches).flatExtracting(batch -> batch)
+                .filteredOn(entry -> entry.id().equals("3"))
+                .containsExactly(new EmployeeEntry("3", employee("new")));
+        assertThat(directory).isEmptyDirectory();
+    }
+
+    @Test
+    void keepsAFailedBatchVisibleAndRequeuesItWithoutDeletedIds() throws Exception {
+        WriteBehindQueue queue = queue(10);
+        List<CompletableFuture<Void>> deletes = new ArrayList<>();
+        when(service.bulkIndex(any())).thenAnswer(invocation -> {
+            assertThat(queue.pending("1")).contains(employee("a"));
+            deletes.add(queue.discard("1"));
+            assertThat(queue.pending("1")).isEmpty();
+            assertThat(deletes.get(0)).isNotDone();
+            throw new IOException("Connection reset");
+        });
+
+        queue.enqueue("1", employee("a"));
+        queue.enqueue("2", employee("b"));
+        queue.flush();
+
+        assertThat(deletes).singleElement().satisfies(delete -> assertThat(delete).isDone());
+        assertThat(queue.pending("1")).isEmpty();
+        assertThat(queue.pending("2")).contains(employee("b"));
+    }
+
+    private WriteBehindQueue queue(int maxEntries) {
+        return new WriteBehindQueue(service, new ObjectMapper(), registry, false, maxEntries, 100,
+                Duration.ofSeconds(1), directory.resolve("write-behind.ndjson"));
+    }
+
+    private void acceptBatches() throws IOException {
+        when(service.bulkIndex(any())).thenAnswer(invocation -> {
+            List<EmployeeEntry> batch = new ArrayList<>();
+            invocation.<Iterator<EmployeeEntry>>getArgument(0).forEachRemaining(batch::add);
+            batches.add(batch);
+            return new BulkResult(batch.size(), batch.size(), 0, List.of());
+        });
+    }
+
+    private static Employee employee(String name) {
+        return new Employee(name, null, null, null, null, null, null, null, null, null);
+    }
+
+}